@@ -27,6 +27,8 @@ public class MergeRequestDTO {
 
     private List<CommitDTO> commits;
 
+    private Integer commitCount;
+
     public static Boolean isValid(MergeRequestDTO mergeRequestDTO) {
         return (mergeRequestDTO != null && mergeRequestDTO.getId() != null);
     }
@@ -55,6 +57,14 @@ public class MergeRequestDTO {
         this.commits = commits;
     }
 
+    public Integer getCommitCount() {
+        return commitCount;
+    }
+
+    public void setCommitCount(Integer commitCount) {
+        this.commitCount = commitCount;
+    }
+
     public Date getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,240 @@
+package io.choerodon.devops.api.eventhandler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.infra.common.util.enums.HelmType;
+import io.choerodon.devops.infra.config.AgentMsgDispatchProperties;
+
+/**
+ * 将agent消息按环境id散列到固定数量的单线程队列：
+ * 同一环境的消息按到达顺序处理，不同环境之间并行处理。
+ * 各队列的长度、处理数、丢弃数以及耗时通过actuator的/metrics暴露，最大耗时为最近一到两个统计窗口内的最大值，读取不会重置。
+ * 关闭时不再接收新消息，在限定时间内处理完已排队的消息，超时未处理的消息记录丢弃数量。
+ */
+@Component
+public class AgentMsgLaneDispatcher implements PublicMetrics, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentMsgLaneDispatcher.class);
+    private static final String METRIC_PREFIX = "agent.dispatch.lane.";
+    private static final long POLL_MILLIS = 500L;
+
+    private final AgentMsgDispatchProperties properties;
+    private final Lane[] lanes;
+
+    @Autowired
+    public AgentMsgLaneDispatcher(AgentMsgDispatchProperties properties) {
+        this.properties = properties;
+        int laneCount = Boolean.TRUE.equals(properties.getEnabled()) ? Math.max(1, properties.getLanes()) : 0;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i, Math.max(1, properties.getQueueCapacity()),
+                    TimeUnit.MILLISECONDS.toNanos(Math.max(1L, properties.getLatencyWindowMillis())));
+        }
+    }
+
+    /**
+     * 分发消息处理任务
+     *
+     * @param envId    环境id
+     * @param helmType 消息类型
+     * @param task     处理任务
+     * @return 任务是否被接收，队列已满被丢弃时返回false
+     */
+    public boolean dispatch(Long envId, HelmType helmType, Runnable task) {
+        if (lanes.length == 0) {
+            task.run();
+            return true;
+        }
+        Lane lane = lanes[Math.floorMod(envId == null ? 0 : envId.hashCode(), lanes.length)];
+        boolean droppable = helmType == HelmType.RESOURCE_UPDATE
+                && Boolean.TRUE.equals(properties.getDropResourceUpdateWhenFull());
+        return lane.submit(task, droppable);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        for (Lane lane : lanes) {
+            String prefix = METRIC_PREFIX + lane.index;
+            long processed = lane.processed.get();
+            metrics.add(new Metric<>(prefix + ".queue", lane.queue.size()));
+            metrics.add(new Metric<>(prefix + ".processed", processed));
+            metrics.add(new Metric<>(prefix + ".dropped", lane.dropped.get()));
+            metrics.add(new Metric<>(prefix + ".failed", lane.failed.get()));
+            metrics.add(new Metric<>(prefix + ".wait.avg",
+                    processed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(lane.waitNanos.get() / processed)));
+            metrics.add(new Metric<>(prefix + ".latency.avg",
+                    processed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(lane.latencyNanos.get() / processed)));
+            metrics.add(new Metric<>(prefix + ".latency.max",
+                    TimeUnit.NANOSECONDS.toMillis(lane.maxLatency.get(System.nanoTime()))));
+        }
+        return metrics;
+    }
+
+    @Override
+    public void destroy() {
+        for (Lane lane : lanes) {
+            lane.stopping = true;
+        }
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, properties.getShutdownTimeoutMillis()));
+        for (Lane lane : lanes) {
+            try {
+                TimeUnit.NANOSECONDS.timedJoin(lane.worker, Math.max(1L, deadline - System.nanoTime()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (Lane lane : lanes) {
+            lane.worker.interrupt();
+            int remaining = lane.queue.size();
+            lane.queue.clear();
+            if (remaining > 0) {
+                lane.dropped.addAndGet(remaining);
+                logger.warn("agent msg lane {} shutdown, {} queued messages dropped", lane.index, remaining);
+            }
+        }
+    }
+
+    private static final class Lane implements Runnable {
+
+        private final int index;
+        private final BlockingQueue<Task> queue;
+        private final Thread worker;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong latencyNanos = new AtomicLong();
+        private final WindowedMax maxLatency;
+        private volatile boolean stopping;
+
+        Lane(int index, int capacity, long windowNanos) {
+            this.index = index;
+            this.maxLatency = new WindowedMax(windowNanos);
+            this.queue = new LinkedBlockingQueue<>(capacity);
+            this.worker = new Thread(this, "agent-msg-lane-" + index);
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        boolean submit(Runnable runnable, boolean droppable) {
+            if (stopping) {
+                dropped.incrementAndGet();
+                logger.warn("agent msg lane {} is shutting down, message dropped", index);
+                return false;
+            }
+            Task task = new Task(runnable);
+            if (droppable) {
+                if (!queue.offer(task)) {
+                    dropped.incrementAndGet();
+                    logger.warn("agent msg lane {} is full, resource update dropped", index);
+                    return false;
+                }
+                return true;
+            }
+            try {
+                queue.put(task);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("interrupted while waiting for agent msg lane {}", index);
+                return false;
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                Task task;
+                try {
+                    task = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (task == null) {
+                    //关闭时队列已处理完
+                    if (stopping) {
+                        return;
+                    }
+                    continue;
+                }
+                long start = System.nanoTime();
+                try {
+                    task.runnable.run();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    logger.error("agent msg lane " + index + " handle message error", e);
+                }
+                long end = System.nanoTime();
+                long latency = end - task.enqueueTime;
+                processed.incrementAndGet();
+                waitNanos.addAndGet(start - task.enqueueTime);
+                latencyNanos.addAndGet(latency);
+                maxLatency.record(latency, end);
+            }
+        }
+    }
+
+    /**
+     * 按固定窗口统计最大值，保留上一窗口的结果，读取时返回两个窗口中的较大值
+     */
+    private static final class WindowedMax {
+
+        private final long windowNanos;
+        private long windowStart = System.nanoTime();
+        private long current;
+        private long previous;
+
+        WindowedMax(long windowNanos) {
+            this.windowNanos = windowNanos;
+        }
+
+        synchronized void record(long value, long now) {
+            roll(now);
+            current = Math.max(current, value);
+        }
+
+        synchronized long get(long now) {
+            roll(now);
+            return Math.max(current, previous);
+        }
+
+        private void roll(long now) {
+            long elapsed = now - windowStart;
+            if (elapsed < windowNanos) {
+                return;
+            }
+            //跳过了整个窗口时上一窗口内没有记录
+            previous = elapsed < 2 * windowNanos ? current : 0L;
+            current = 0L;
+            windowStart = now - elapsed % windowNanos;
+        }
+    }
+
+    private static final class Task {
+
+        private final Runnable runnable;
+        private final long enqueueTime = System.nanoTime();
+
+        Task(Runnable runnable) {
+            this.runnable = runnable;
+        }
+    }
+}
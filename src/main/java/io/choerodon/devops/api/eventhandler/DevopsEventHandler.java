@@ -18,6 +18,7 @@ import io.choerodon.devops.domain.application.event.HarborPayload;
 import io.choerodon.devops.domain.application.event.OrganizationEventPayload;
 import io.choerodon.devops.domain.application.event.ProjectEvent;
 import io.choerodon.devops.infra.common.util.TypeUtil;
+import io.choerodon.devops.infra.persistence.impl.CachedIamRepositoryImpl;
 import io.choerodon.event.consumer.annotation.EventListener;
 
 /**
@@ -50,6 +51,8 @@ public class DevopsEventHandler {
     private GitlabUserService gitlabUserService;
     @Autowired
     private OrganizationService organizationService;
+    @Autowired
+    private CachedIamRepositoryImpl cachedIamRepository;
 
     private void loggerInfo(Object o) {
         LOGGER.info("data: {}", o);
@@ -62,9 +65,20 @@ public class DevopsEventHandler {
     public void handleProjectCreateEvent(EventPayload<ProjectEvent> payload) {
         ProjectEvent projectEvent = payload.getData();
         loggerInfo(projectEvent);
+        cachedIamRepository.evictProject(projectEvent.getProjectId());
         projectService.createProject(projectEvent);
     }
 
+    /**
+     * 更新项目事件
+     */
+    @EventListener(topic = IAM_SERVICE, businessType = "updateProject")
+    public void handleProjectUpdateEvent(EventPayload<ProjectEvent> payload) {
+        ProjectEvent projectEvent = payload.getData();
+        loggerInfo(projectEvent);
+        cachedIamRepository.evictProject(projectEvent.getProjectId());
+    }
+
     /**
      * 创建组织事件
      */
@@ -72,6 +86,7 @@ public class DevopsEventHandler {
     public void handleOrganizationCreateEvent(EventPayload<OrganizationEventPayload> payload) {
         OrganizationEventPayload organizationEventPayload = payload.getData();
         loggerInfo(organizationEventPayload);
+        cachedIamRepository.evictOrganization(organizationEventPayload.getId());
         organizationService.create(organizationEventPayload);
     }
 
@@ -148,6 +163,7 @@ public class DevopsEventHandler {
         gitlabUserReqDTO.setCanCreateGroup(true);
         gitlabUserReqDTO.setProjectsLimit(100);
 
+        cachedIamRepository.evictUser(TypeUtil.objToLong(gitlabUserDTO.getId()));
         gitlabUserService.createGitlabUser(gitlabUserReqDTO);
     }
 
@@ -169,6 +185,7 @@ public class DevopsEventHandler {
         gitlabUserReqDTO.setCanCreateGroup(true);
         gitlabUserReqDTO.setProjectsLimit(100);
 
+        cachedIamRepository.evictUser(TypeUtil.objToLong(gitlabUserDTO.getId()));
         gitlabUserService.updateGitlabUser(gitlabUserReqDTO);
     }
 
@@ -180,6 +197,7 @@ public class DevopsEventHandler {
         GitlabUserDTO gitlabUserDTO = payload.getData();
         loggerInfo(gitlabUserDTO);
 
+        cachedIamRepository.evictUser(TypeUtil.objToLong(gitlabUserDTO.getId()));
         gitlabUserService.isEnabledGitlabUser(TypeUtil.objToInteger(gitlabUserDTO.getId()));
     }
 
@@ -191,6 +209,7 @@ public class DevopsEventHandler {
         GitlabUserDTO gitlabUserDTO = payload.getData();
         loggerInfo(gitlabUserDTO);
 
+        cachedIamRepository.evictUser(TypeUtil.objToLong(gitlabUserDTO.getId()));
         gitlabUserService.disEnabledGitlabUser(TypeUtil.objToInteger(gitlabUserDTO.getId()));
     }
 }
@@ -59,6 +59,7 @@ public class DevopsSagaHandler {
             sagaCode = "devops-sync-gitops",
             concurrentLimitNum = 1,
             concurrentLimitPolicy = SagaDefinition.ConcurrentLimitPolicy.TYPE_AND_ID,
+            maxRetryCount = 3,
             seq = 1)
     public void gitops(String data) {
         PushWebHookDTO pushWebHookDTO = null;
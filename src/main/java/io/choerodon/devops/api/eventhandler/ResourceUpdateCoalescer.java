@@ -0,0 +1,225 @@
+package io.choerodon.devops.api.eventhandler;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.infra.config.AgentMsgDispatchProperties;
+
+/**
+ * 合并同一对象在处理队列中尚未处理的resource_update消息。
+ * 同一(环境, 消息key)的新更新总是排到队尾，排队中的旧更新在新更新入队后作废，不再解析和入库；
+ * metadata.resourceVersion比排队中的更新旧的消息直接丢弃。
+ */
+@Component
+public class ResourceUpdateCoalescer implements PublicMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceUpdateCoalescer.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String METADATA = "metadata";
+    private static final String RESOURCE_VERSION = "resourceVersion";
+
+    private final Map<String, PendingUpdate> pendingUpdates = new ConcurrentHashMap<>();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+    private final boolean enabled;
+
+    @Autowired
+    public ResourceUpdateCoalescer(AgentMsgDispatchProperties properties) {
+        this.enabled = Boolean.TRUE.equals(properties.getEnabled())
+                && Boolean.TRUE.equals(properties.getCoalesceResourceUpdate());
+    }
+
+    /**
+     * 提交一条resource_update消息
+     *
+     * @param envId   环境id
+     * @param key     消息key
+     * @param payload 消息内容
+     * @return 需要排到队尾处理的更新，比排队中的更新旧时返回null
+     */
+    public PendingUpdate offer(Long envId, String key, String payload) {
+        received.incrementAndGet();
+        PendingUpdate update = new PendingUpdate(envId + ":" + key, payload);
+        if (!enabled) {
+            return update;
+        }
+        PendingUpdate[] accepted = {update};
+        pendingUpdates.compute(update.id, (id, pending) -> {
+            if (pending == null) {
+                return update;
+            }
+            if (pending.isNewerThan(update)) {
+                accepted[0] = null;
+                return pending;
+            }
+            update.previous = pending;
+            return update;
+        });
+        if (accepted[0] == null) {
+            collapsed.incrementAndGet();
+        }
+        return accepted[0];
+    }
+
+    /**
+     * 更新入队后作废排队中的旧更新
+     *
+     * @param update 已入队的更新
+     */
+    public void enqueued(PendingUpdate update) {
+        PendingUpdate previous = update.previous;
+        update.previous = null;
+        if (previous != null && previous.supersede()) {
+            collapsed.incrementAndGet();
+        }
+    }
+
+    /**
+     * 同一对象有其他类型的消息到达时，之后的更新不再合并到已排队的更新中，以保证处理顺序
+     *
+     * @param envId 环境id
+     * @param key   消息key
+     */
+    public void seal(Long envId, String key) {
+        if (enabled && key != null) {
+            PendingUpdate pending = pendingUpdates.remove(envId + ":" + key);
+            if (pending != null) {
+                pending.close();
+            }
+        }
+    }
+
+    /**
+     * 更新未能入队时移除，排队中的旧更新仍然有效
+     *
+     * @param update 待处理的更新
+     */
+    public void discard(PendingUpdate update) {
+        update.close();
+        PendingUpdate previous = update.previous;
+        update.previous = null;
+        pendingUpdates.computeIfPresent(update.id, (id, pending) -> {
+            if (pending != update) {
+                return pending;
+            }
+            return previous != null && !previous.isClosed() ? previous : null;
+        });
+    }
+
+    /**
+     * 取出待处理的消息内容，之后到达的更新将重新入队
+     *
+     * @param update 待处理的更新
+     * @return 消息内容，已被之后的更新作废时返回null
+     */
+    public String take(PendingUpdate update) {
+        String payload = update.close();
+        pendingUpdates.remove(update.id, update);
+        return payload;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("agent.dispatch.resource_update.received", received.get()),
+                new Metric<>("agent.dispatch.resource_update.collapsed", collapsed.get()),
+                new Metric<>("agent.dispatch.resource_update.pending", pendingUpdates.size()));
+    }
+
+    /**
+     * 流式读取对象自身的metadata.resourceVersion，读到后立即停止，不解析整个消息
+     *
+     * @param payload 消息内容
+     * @return resourceVersion，无法解析时返回null
+     */
+    static Long resourceVersion(String payload) {
+        if (payload == null) {
+            return null;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (METADATA.equals(field) && value == JsonToken.START_OBJECT) {
+                    return metadataResourceVersion(parser);
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException | NumberFormatException e) {
+            logger.debug("resource version of resource_update not found", e);
+            return null;
+        }
+    }
+
+    private static Long metadataResourceVersion(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (RESOURCE_VERSION.equals(field)) {
+                return value == JsonToken.VALUE_NULL ? null : Long.valueOf(parser.getText());
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    public static final class PendingUpdate {
+
+        private final String id;
+        private final String payload;
+        private final Long resourceVersion;
+        private PendingUpdate previous;
+        private boolean closed;
+        private boolean superseded;
+
+        private PendingUpdate(String id, String payload) {
+            this.id = id;
+            this.payload = payload;
+            this.resourceVersion = resourceVersion(payload);
+        }
+
+        /**
+         * resourceVersion都存在且大于另一条更新时为新
+         */
+        private boolean isNewerThan(PendingUpdate other) {
+            return resourceVersion != null && other.resourceVersion != null
+                    && resourceVersion > other.resourceVersion;
+        }
+
+        private synchronized boolean supersede() {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            superseded = true;
+            return true;
+        }
+
+        private synchronized boolean isClosed() {
+            return closed;
+        }
+
+        private synchronized String close() {
+            closed = true;
+            return superseded ? null : payload;
+        }
+    }
+}
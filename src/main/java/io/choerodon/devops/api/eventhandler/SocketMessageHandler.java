@@ -25,13 +25,19 @@ public class SocketMessageHandler extends AbstractAgentMsgHandler {
 
     private DeployMsgHandlerService deployMsgHandlerService;
     private ServiceMsgHandlerService serviceMsgHandlerService;
+    private AgentMsgLaneDispatcher agentMsgLaneDispatcher;
+    private ResourceUpdateCoalescer resourceUpdateCoalescer;
 
 
     @Autowired
     public SocketMessageHandler(DeployMsgHandlerService deployMsgHandlerService,
-                                ServiceMsgHandlerService serviceMsgHandlerService) {
+                                ServiceMsgHandlerService serviceMsgHandlerService,
+                                AgentMsgLaneDispatcher agentMsgLaneDispatcher,
+                                ResourceUpdateCoalescer resourceUpdateCoalescer) {
         this.deployMsgHandlerService = deployMsgHandlerService;
         this.serviceMsgHandlerService = serviceMsgHandlerService;
+        this.agentMsgLaneDispatcher = agentMsgLaneDispatcher;
+        this.resourceUpdateCoalescer = resourceUpdateCoalescer;
     }
 
 
@@ -44,6 +50,30 @@ public class SocketMessageHandler extends AbstractAgentMsgHandler {
         if (logger.isDebugEnabled()) {
             logger.debug(msg.toString());
         }
+        Long envId = TypeUtil.objToLong(msg.getEnvId());
+        if (helmType == HelmType.RESOURCE_UPDATE) {
+            ResourceUpdateCoalescer.PendingUpdate update =
+                    resourceUpdateCoalescer.offer(envId, msg.getKey(), msg.getPayload());
+            if (update == null) {
+                return;
+            }
+            if (agentMsgLaneDispatcher.dispatch(envId, helmType, () -> {
+                String payload = resourceUpdateCoalescer.take(update);
+                if (payload != null) {
+                    deployMsgHandlerService.resourceUpdate(msg.getKey(), envId, payload);
+                }
+            })) {
+                resourceUpdateCoalescer.enqueued(update);
+            } else {
+                resourceUpdateCoalescer.discard(update);
+            }
+            return;
+        }
+        resourceUpdateCoalescer.seal(envId, msg.getKey());
+        agentMsgLaneDispatcher.dispatch(envId, helmType, () -> handle(msg, helmType));
+    }
+
+    private void handle(Msg msg, HelmType helmType) {
         switch (helmType) {
             case HELM_RELEASE_PRE_INSTALL:
                 deployMsgHandlerService.handlerPreInstall(
@@ -101,10 +131,6 @@ public class SocketMessageHandler extends AbstractAgentMsgHandler {
                 break;
             case NETWORK_INGRESS_DELETE:
                 break;
-            case RESOURCE_UPDATE:
-                deployMsgHandlerService.resourceUpdate(
-                        msg.getKey(), TypeUtil.objToLong(msg.getEnvId()), msg.getPayload());
-                break;
             case RESOURCE_DELETE:
                 deployMsgHandlerService.resourceDelete(TypeUtil.objToLong(msg.getEnvId()), msg.getKey());
                 break;
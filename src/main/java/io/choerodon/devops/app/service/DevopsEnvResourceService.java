@@ -1,6 +1,7 @@
 package io.choerodon.devops.app.service;
 
 import java.util.List;
+import java.util.Map;
 
 import io.choerodon.devops.api.dto.DevopsEnvResourceDTO;
 import io.choerodon.devops.api.dto.InstanceStageDTO;
@@ -11,5 +12,13 @@ import io.choerodon.devops.api.dto.InstanceStageDTO;
 public interface DevopsEnvResourceService {
     DevopsEnvResourceDTO listResources(Long instanceId);
 
+    /**
+     * 批量查询多个实例的资源，查询次数与实例数量无关
+     *
+     * @param instanceIds 实例id
+     * @return 实例id -> 实例资源
+     */
+    Map<Long, DevopsEnvResourceDTO> listResourcesByInstanceIds(List<Long> instanceIds);
+
     List<InstanceStageDTO> listStages(Long instanceId);
 }
@@ -81,6 +81,13 @@ public interface DevopsGitService {
 
     Boolean checkTag(Long projectId, Long applicationId, String tagName);
 
+    /**
+     * 根据tag_push webhook维护tag索引
+     *
+     * @param pushWebHookDTO webhook内容
+     */
+    void tagSync(PushWebHookDTO pushWebHookDTO);
+
     void branchSync(PushWebHookDTO pushWebHookDTO, String token);
 
     void fileResourceSync(PushWebHookDTO pushWebHookDTO);
@@ -267,6 +267,12 @@ public class ApplicationInstanceServiceImpl implements ApplicationInstanceServic
         setInstanceConnect(applicationInstanceES, envs);
         Map<String, List<ApplicationInstanceE>> resultMaps = applicationInstanceES.stream()
                 .collect(Collectors.groupingBy(t -> t.getApplicationE().getName()));
+        List<Long> instanceIds = applicationInstanceES.stream()
+                .map(ApplicationInstanceE::getId).collect(Collectors.toList());
+        Map<Long, List<DevopsEnvPodE>> devopsEnvPodMap = devopsEnvPodRepository.listByInstanceIds(instanceIds)
+                .stream().collect(Collectors.groupingBy(t -> t.getApplicationInstanceE().getId()));
+        Map<Long, DevopsEnvResourceDTO> devopsEnvResourceDTOMap =
+                devopsEnvResourceService.listResourcesByInstanceIds(instanceIds);
         DevopsEnvPreviewDTO devopsEnvPreviewDTO = new DevopsEnvPreviewDTO();
         List<DevopsEnvPreviewAppDTO> devopsEnvPreviewAppDTOS = new ArrayList<>();
         resultMaps.forEach((key, value) -> {
@@ -278,9 +284,11 @@ public class ApplicationInstanceServiceImpl implements ApplicationInstanceServic
             applicationInstanceDTOS.stream().forEach(applicationInstanceDTO -> {
                 DevopsEnvPreviewInstanceDTO devopsEnvPreviewInstanceDTO = new DevopsEnvPreviewInstanceDTO();
                 BeanUtils.copyProperties(applicationInstanceDTO, devopsEnvPreviewInstanceDTO);
-                List<DevopsEnvPodDTO> devopsEnvPodDTOS = ConvertHelper
-                        .convertList(devopsEnvPodRepository.selectByInstanceId(devopsEnvPreviewInstanceDTO.getId()), DevopsEnvPodDTO.class);
-                DevopsEnvResourceDTO devopsEnvResourceDTO = devopsEnvResourceService.listResources(devopsEnvPreviewInstanceDTO.getId());
+                List<DevopsEnvPodDTO> devopsEnvPodDTOS = ConvertHelper.convertList(
+                        devopsEnvPodMap.getOrDefault(devopsEnvPreviewInstanceDTO.getId(), Collections.emptyList()),
+                        DevopsEnvPodDTO.class);
+                DevopsEnvResourceDTO devopsEnvResourceDTO =
+                        devopsEnvResourceDTOMap.get(devopsEnvPreviewInstanceDTO.getId());
                 devopsEnvPreviewInstanceDTO.setDevopsEnvPodDTOS(devopsEnvPodDTOS);
                 devopsEnvPreviewInstanceDTO.setIngressDTOS(devopsEnvResourceDTO.getIngressDTOS());
                 devopsEnvPreviewInstanceDTO.setServiceDTOS(devopsEnvResourceDTO.getServiceDTOS());
@@ -323,6 +323,7 @@ public class ApplicationServiceImpl implements ApplicationService {
             applicationE.initSynchro(true);
             ProjectHook projectHook = ProjectHook.allHook();
             projectHook.setEnableSslVerification(true);
+            projectHook.setTagPushEvents(true);
             projectHook.setProjectId(gitlabProjectEventDTO.getGitlabProjectId());
             projectHook.setToken(token);
             String uri = !gatewayUrl.endsWith("/") ? gatewayUrl + "/" : gatewayUrl;
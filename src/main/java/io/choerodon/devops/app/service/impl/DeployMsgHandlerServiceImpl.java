@@ -2,6 +2,7 @@ package io.choerodon.devops.app.service.impl;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.alibaba.fastjson.JSONArray;
@@ -16,6 +17,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import io.choerodon.core.convertor.ConvertHelper;
 import io.choerodon.core.exception.CommonException;
@@ -23,6 +30,7 @@ import io.choerodon.devops.app.service.DeployMsgHandlerService;
 import io.choerodon.devops.domain.application.entity.*;
 import io.choerodon.devops.domain.application.repository.*;
 import io.choerodon.devops.domain.application.valueobject.*;
+import io.choerodon.devops.infra.common.util.EnvResourceReversionCache;
 import io.choerodon.devops.infra.common.util.FileUtil;
 import io.choerodon.devops.infra.common.util.K8sUtil;
 import io.choerodon.devops.infra.common.util.TypeUtil;
@@ -109,6 +117,10 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
     private DevopsEnvCommitRepository devopsEnvCommitRepository;
     @Autowired
     private DevopsEnvFileErrorRepository devopsEnvFileErrorRepository;
+    @Autowired
+    private EnvResourceReversionCache envResourceReversionCache;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     /**
      * pod 更新
@@ -144,11 +156,6 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
             return;
         }
         DevopsEnvResourceE devopsEnvResourceE = new DevopsEnvResourceE();
-        DevopsEnvResourceE newDevopsEnvResourceE =
-                devopsEnvResourceRepository.queryByInstanceIdAndKindAndName(
-                        applicationInstanceE.getId(),
-                        KeyParseTool.getResourceType(key),
-                        v1Pod.getMetadata().getName());
         DevopsEnvResourceDetailE devopsEnvResourceDetailE = new DevopsEnvResourceDetailE();
         devopsEnvResourceDetailE.setMessage(msg);
         devopsEnvResourceE.setKind(KeyParseTool.getResourceType(key));
@@ -162,7 +169,6 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
             return;
         }
         saveOrUpdateResource(devopsEnvResourceE,
-                newDevopsEnvResourceE,
                 devopsEnvResourceDetailE,
                 applicationInstanceE);
         String status = K8sUtil.changePodStatus(v1Pod);
@@ -249,11 +255,6 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
             for (Job job : jobs) {
                 applicationInstanceE = applicationInstanceRepository
                         .selectByCode(job.getReleaseName(), envId);
-                DevopsEnvResourceE newdevopsEnvResourceE =
-                        devopsEnvResourceRepository.queryByInstanceIdAndKindAndName(
-                                applicationInstanceE.getId(),
-                                job.getKind(),
-                                job.getName());
                 DevopsEnvResourceE devopsEnvResourceE =
                         new DevopsEnvResourceE();
                 devopsEnvResourceE.setKind(job.getKind());
@@ -265,7 +266,6 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
                         FileUtil.yamlStringtoJson(job.getManifest()));
                 saveOrUpdateResource(
                         devopsEnvResourceE,
-                        newdevopsEnvResourceE,
                         devopsEnvResourceDetailE,
                         applicationInstanceE);
             }
@@ -299,7 +299,6 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
                     TypeUtil.objToLong(
                             ((LinkedHashMap) ((LinkedHashMap) obj).get(METADATA)).get(RESOURCE_VERSION).toString()));
             String releaseName = null;
-            DevopsEnvResourceE newdevopsEnvResourceE = null;
             ApplicationInstanceE applicationInstanceE = null;
             ResourceType resourceType = ResourceType.forString(KeyParseTool.getResourceType(key));
             if (resourceType == null) {
@@ -308,13 +307,7 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
             switch (resourceType) {
                 case INGRESS:
                     syncIngress(msg, envId);
-                    newdevopsEnvResourceE =
-                            devopsEnvResourceRepository.queryByInstanceIdAndKindAndName(
-                                    null,
-                                    KeyParseTool.getResourceType(key),
-                                    KeyParseTool.getResourceName(key));
-                    saveOrUpdateResource(devopsEnvResourceE, newdevopsEnvResourceE,
-                            devopsEnvResourceDetailE, null);
+                    saveOrUpdateResource(devopsEnvResourceE, devopsEnvResourceDetailE, null);
                     break;
                 case POD:
                     handlerUpdateMessage(key, envId, msg);
@@ -333,13 +326,7 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
                     for (String release : releases) {
                         applicationInstanceE = applicationInstanceRepository
                                 .selectByCode(release, envId);
-                        DevopsEnvResourceE newdevopsInsResourceE =
-                                devopsEnvResourceRepository.queryByInstanceIdAndKindAndName(
-                                        applicationInstanceE.getId(),
-                                        KeyParseTool.getResourceType(key),
-                                        KeyParseTool.getResourceName(key));
-                        saveOrUpdateResource(devopsEnvResourceE, newdevopsInsResourceE,
-                                devopsEnvResourceDetailE, applicationInstanceE);
+                        saveOrUpdateResource(devopsEnvResourceE, devopsEnvResourceDetailE, applicationInstanceE);
                     }
                     break;
                 default:
@@ -348,13 +335,7 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
                     if (applicationInstanceE == null) {
                         return;
                     }
-                    DevopsEnvResourceE newdevopsInsResourceE =
-                            devopsEnvResourceRepository.queryByInstanceIdAndKindAndName(
-                                    applicationInstanceE.getId(),
-                                    KeyParseTool.getResourceType(key),
-                                    KeyParseTool.getResourceName(key));
-                    saveOrUpdateResource(devopsEnvResourceE, newdevopsInsResourceE,
-                            devopsEnvResourceDetailE, applicationInstanceE);
+                    saveOrUpdateResource(devopsEnvResourceE, devopsEnvResourceDetailE, applicationInstanceE);
                     break;
             }
         } catch (IOException e) {
@@ -425,6 +406,9 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
         if (instanceE != null) {
             instanceE.setStatus(instanceStatus);
             applicationInstanceRepository.update(instanceE);
+            if (InstanceStatus.DELETED.getStatus().equals(instanceStatus)) {
+                envResourceReversionCache.invalidateInstance(instanceE.getId());
+            }
             DevopsEnvCommandE devopsEnvCommandE = devopsEnvCommandRepository
                     .queryByObject(ObjectType.INSTANCE.getType(), instanceE.getId());
             devopsEnvCommandE.setStatus(commandStatus);
@@ -442,13 +426,7 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
         devopsEnvResourceE.setKind(KeyParseTool.getResourceType(key));
         devopsEnvResourceE.setName(KeyParseTool.getResourceName(key));
         devopsEnvResourceE.setReversion(TypeUtil.objToLong(ingress.getMetadata().getResourceVersion()));
-        DevopsEnvResourceE newDevopsEnvResourceE =
-                devopsEnvResourceRepository.queryByInstanceIdAndKindAndName(
-                        null,
-                        KeyParseTool.getResourceType(key),
-                        KeyParseTool.getResourceName(key));
-
-        saveOrUpdateResource(devopsEnvResourceE, newDevopsEnvResourceE, devopsEnvResourceDetailE, null);
+        saveOrUpdateResource(devopsEnvResourceE, devopsEnvResourceDetailE, null);
         String ingressName = ingress.getMetadata().getName();
         devopsIngressRepository.setStatus(envId, ingressName, IngressStatus.RUNNING.getStatus());
     }
@@ -664,13 +642,7 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
                     }
                 }
             }
-            DevopsEnvResourceE newdevopsEnvResourceE = devopsEnvResourceRepository
-                    .queryByInstanceIdAndKindAndName(
-                            applicationInstanceE.getId(),
-                            KeyParseTool.getResourceType(key),
-                            KeyParseTool.getResourceName(key));
             saveOrUpdateResource(devopsEnvResourceE,
-                    newdevopsEnvResourceE,
                     devopsEnvResourceDetailE,
                     applicationInstanceE);
         }
@@ -711,84 +683,72 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
     }
 
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public void resourceSync(String key, Long envId, String msg) {
         ResourceSyncPayload resourceSyncPayload = JSONArray.parseObject(msg, ResourceSyncPayload.class);
         ResourceType resourceType = ResourceType.forString(resourceSyncPayload.getResourceType());
-        List<DevopsEnvResourceE> devopsEnvResourceES;
-        if (resourceType == null) {
-            resourceType = ResourceType.forString("MissType");
+        if (resourceType == null || resourceSyncPayload.getResources() == null) {
+            return;
         }
+        Set<String> agentNames = new HashSet<>(Arrays.asList(resourceSyncPayload.getResources()));
         switch (resourceType) {
-            case POD:
-                devopsEnvResourceES = devopsEnvResourceRepository
-                        .listByEnvAndType(envId, ResourceType.POD.getType());
-                if (!devopsEnvResourceES.isEmpty()) {
-                    List<String> podNames = Arrays.asList(resourceSyncPayload.getResources());
-                    devopsEnvResourceES.parallelStream()
-                            .filter(devopsEnvResourceE -> !podNames.contains(devopsEnvResourceE.getName()))
-                            .forEach(devopsEnvResourceE -> {
-                                devopsEnvResourceRepository.deleteByKindAndName(
-                                        ResourceType.POD.getType(), devopsEnvResourceE.getName());
-                                devopsEnvPodRepository.deleteByName(
-                                        devopsEnvResourceE.getName(), KeyParseTool.getValue(key, "env"));
-                            });
-                }
+            case POD: {
+                List<String> stalePodNames = listStaleNames(
+                        devopsEnvResourceRepository.listByEnvAndType(envId, ResourceType.POD.getType()),
+                        DevopsEnvResourceE::getName, agentNames);
+                devopsEnvResourceRepository.deleteByKindAndNames(ResourceType.POD.getType(), stalePodNames);
+                devopsEnvPodRepository.deleteByNames(stalePodNames, KeyParseTool.getValue(key, "env"));
                 break;
+            }
             case DEPLOYMENT:
-                devopsEnvResourceES = devopsEnvResourceRepository
-                        .listByEnvAndType(envId, ResourceType.DEPLOYMENT.getType());
-                if (!devopsEnvResourceES.isEmpty()) {
-                    List<String> deploymentNames = Arrays.asList(resourceSyncPayload.getResources());
-                    devopsEnvResourceES.parallelStream()
-                            .filter(devopsEnvResourceE -> !deploymentNames.contains(devopsEnvResourceE.getName()))
-                            .forEach(devopsEnvResourceE ->
-                                    devopsEnvResourceRepository.deleteByKindAndName(
-                                            ResourceType.DEPLOYMENT.getType(), devopsEnvResourceE.getName()));
-                }
-                break;
             case REPLICASET:
-                devopsEnvResourceES = devopsEnvResourceRepository
-                        .listByEnvAndType(envId, ResourceType.REPLICASET.getType());
-                if (!devopsEnvResourceES.isEmpty()) {
-                    List<String> replicaSetNames = Arrays.asList(resourceSyncPayload.getResources());
-                    devopsEnvResourceES.parallelStream()
-                            .filter(devopsEnvResourceE -> !replicaSetNames.contains(devopsEnvResourceE.getName()))
-                            .forEach(devopsEnvResourceE ->
-                                    devopsEnvResourceRepository.deleteByKindAndName(
-                                            ResourceType.REPLICASET.getType(), devopsEnvResourceE.getName()));
-                }
+                devopsEnvResourceRepository.deleteByKindAndNames(resourceType.getType(), listStaleNames(
+                        devopsEnvResourceRepository.listByEnvAndType(envId, resourceType.getType()),
+                        DevopsEnvResourceE::getName, agentNames));
                 break;
-            case SERVICE:
-                List<DevopsServiceV> devopsServiceVS = devopsServiceRepository.listDevopsService(envId);
-                if (!devopsServiceVS.isEmpty()) {
-                    List<String> seriviceNames = Arrays.asList(resourceSyncPayload.getResources());
-                    devopsServiceVS.parallelStream()
-                            .filter(devopsServiceV -> !seriviceNames.contains(devopsServiceV.getName()))
-                            .forEach(devopsServiceV -> {
-                                devopsServiceRepository.delete(devopsServiceV.getId());
-                                devopsEnvResourceRepository.deleteByKindAndName(
-                                        ResourceType.SERVICE.getType(), devopsServiceV.getName());
-                            });
-                }
+            case SERVICE: {
+                List<DevopsServiceV> staleServices = devopsServiceRepository.listDevopsService(envId).stream()
+                        .filter(devopsServiceV -> !agentNames.contains(devopsServiceV.getName()))
+                        .collect(Collectors.toList());
+                devopsServiceRepository.deleteByIds(staleServices.stream()
+                        .map(DevopsServiceV::getId).collect(Collectors.toList()));
+                devopsEnvResourceRepository.deleteByKindAndNames(ResourceType.SERVICE.getType(),
+                        listStaleNames(staleServices, DevopsServiceV::getName, agentNames));
                 break;
-            case INGRESS:
-                List<DevopsIngressE> devopsIngressES = devopsIngressRepository.listByEnvId(envId);
-                if (!devopsIngressES.isEmpty()) {
-                    List<String> ingressNames = Arrays.asList(resourceSyncPayload.getResources());
-                    devopsIngressES.parallelStream()
-                            .filter(devopsIngressE -> !ingressNames.contains(devopsIngressE.getName()))
-                            .forEach(devopsIngressE -> {
-                                devopsIngressRepository.deleteIngress(devopsIngressE.getId());
-                                devopsEnvResourceRepository.deleteByKindAndName(
-                                        ResourceType.INGRESS.getType(), devopsIngressE.getName());
-                            });
-                }
+            }
+            case INGRESS: {
+                List<DevopsIngressE> staleIngresses = devopsIngressRepository.listByEnvId(envId).stream()
+                        .filter(devopsIngressE -> !agentNames.contains(devopsIngressE.getName()))
+                        .collect(Collectors.toList());
+                devopsIngressRepository.deleteIngressByIds(staleIngresses.stream()
+                        .map(DevopsIngressE::getId).collect(Collectors.toList()));
+                devopsEnvResourceRepository.deleteByKindAndNames(ResourceType.INGRESS.getType(),
+                        listStaleNames(staleIngresses, DevopsIngressE::getName, agentNames));
                 break;
+            }
             default:
                 break;
         }
     }
 
+    /**
+     * 找出数据库中存在而agent上报中不存在的对象名
+     *
+     * @param objects    数据库中的对象
+     * @param nameGetter 对象名
+     * @param agentNames agent上报的对象名
+     * @return 去重后的过期对象名
+     */
+    private static <T> List<String> listStaleNames(List<T> objects,
+                                                   Function<T, String> nameGetter,
+                                                   Set<String> agentNames) {
+        return objects.stream()
+                .map(nameGetter)
+                .filter(name -> !agentNames.contains(name))
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
     @Override
     public void jobEvent(String key, String msg, Long envId) {
         Event event = JSONArray.parseObject(msg, Event.class);
@@ -822,24 +782,24 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
         if (gitOpsSync.getResourceIDs().isEmpty()) {
             return;
         }
-        List<DevopsEnvFileErrorE> errorDevopsFiles = new ArrayList<>();
-        if (gitOpsSync.getMetadata().getErrors() != null) {
-            gitOpsSync.getMetadata().getErrors().parallelStream().forEach(error -> {
-                DevopsEnvFileErrorE devopsEnvFileErrorE = devopsEnvFileErrorRepository.queryByEnvIdAndFilePath(envId, error.getPath());
-                if (devopsEnvFileErrorE == null) {
-                    devopsEnvFileErrorE = new DevopsEnvFileErrorE();
-                    devopsEnvFileErrorE.setCommit(error.getCommit());
-                    devopsEnvFileErrorE.setError(error.getError());
-                    devopsEnvFileErrorE.setFilePath(error.getPath());
-                    devopsEnvFileErrorE.setEnvId(devopsEnvironmentE.getId());
-                    devopsEnvFileErrorRepository.create(devopsEnvFileErrorE);
-                } else {
-                    devopsEnvFileErrorE.setError(devopsEnvFileErrorE.getError() + error.getError());
-                    devopsEnvFileErrorRepository.create(devopsEnvFileErrorE);
-                }
-                errorDevopsFiles.add(devopsEnvFileErrorE);
-            });
-        }
+        //并行处理时由stream收集结果，不在多个线程中写同一个list
+        List<DevopsEnvFileErrorE> errorDevopsFiles = gitOpsSync.getMetadata().getErrors() == null
+                ? Collections.emptyList()
+                : gitOpsSync.getMetadata().getErrors().parallelStream().map(error -> {
+                    DevopsEnvFileErrorE devopsEnvFileErrorE = devopsEnvFileErrorRepository.queryByEnvIdAndFilePath(envId, error.getPath());
+                    if (devopsEnvFileErrorE == null) {
+                        devopsEnvFileErrorE = new DevopsEnvFileErrorE();
+                        devopsEnvFileErrorE.setCommit(error.getCommit());
+                        devopsEnvFileErrorE.setError(error.getError());
+                        devopsEnvFileErrorE.setFilePath(error.getPath());
+                        devopsEnvFileErrorE.setEnvId(devopsEnvironmentE.getId());
+                        devopsEnvFileErrorRepository.create(devopsEnvFileErrorE);
+                    } else {
+                        devopsEnvFileErrorE.setError(devopsEnvFileErrorE.getError() + error.getError());
+                        devopsEnvFileErrorRepository.create(devopsEnvFileErrorE);
+                    }
+                    return devopsEnvFileErrorE;
+                }).collect(Collectors.toList());
         gitOpsSync.getMetadata().getFilesCommit().parallelStream().forEach(fileCommit -> {
             DevopsEnvFileE devopsEnvFileE = devopsEnvFileRepository.queryByEnvAndPath(devopsEnvironmentE.getId(), fileCommit.getFile());
             devopsEnvFileE.setAgentCommit(fileCommit.getCommit());
@@ -866,8 +826,7 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
                                     .selectByEnvAndName(envId, objects[1]);
                             DevopsEnvFileResourceE devopsEnvFileResourceE = devopsEnvFileResourceRepository
                                     .queryByEnvIdAndResource(envId, devopsIngressE.getId(), "Ingress");
-                            if (isFileError(envId, devopsEnvFileResourceE.getFilePath(),
-                                    errorDevopsFiles)) {
+                            if (isFileError(devopsEnvFileResourceE.getFilePath(), errorDevopsFiles)) {
                                 devopsIngressRepository.setStatus(
                                         envId, devopsIngressE.getName(), IngressStatus.FAILED.getStatus());
                             } else {
@@ -881,8 +840,7 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
                                     .selectByNameAndNamespace(objects[1], devopsEnvironmentE.getName());
                             DevopsEnvFileResourceE devopsEnvFileResourceE = devopsEnvFileResourceRepository
                                     .queryByEnvIdAndResource(envId, devopsServiceE.getId(), "Service");
-                            if (isFileError(envId, devopsEnvFileResourceE.getFilePath(),
-                                    errorDevopsFiles)) {
+                            if (isFileError(devopsEnvFileResourceE.getFilePath(), errorDevopsFiles)) {
                                 devopsServiceE.setStatus(ServiceStatus.FAILED.getStatus());
                             } else {
                                 devopsServiceE.setStatus(ServiceStatus.RUNNING.getStatus());
@@ -896,58 +854,113 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
                 });
     }
 
+    /**
+     * 保存或更新资源，命中本节点缓存时不再查询：版本一致直接返回，版本变化时按缓存的id更新
+     *
+     * @param devopsEnvResourceE       资源
+     * @param devopsEnvResourceDetailE 资源详情
+     * @param applicationInstanceE     所属实例，Ingress为null
+     */
+    private void saveOrUpdateResource(DevopsEnvResourceE devopsEnvResourceE,
+                                      DevopsEnvResourceDetailE devopsEnvResourceDetailE,
+                                      ApplicationInstanceE applicationInstanceE) {
+        Long instanceId = applicationInstanceE == null ? null : applicationInstanceE.getId();
+        String kind = devopsEnvResourceE.getKind();
+        String name = devopsEnvResourceE.getName();
+        Long reversion = devopsEnvResourceE.getReversion() == null ? 0L : devopsEnvResourceE.getReversion();
+        EnvResourceReversionCache.Entry cached = envResourceReversionCache.get(instanceId, kind, name);
+        if (cached != null) {
+            if (reversion.equals(cached.getReversion())) {
+                return;
+            }
+            //按缓存的id直接更新，资源已被其他节点删除时回退到完整查询
+            if (devopsEnvResourceRepository.updateReversion(cached.getResourceId(), reversion)) {
+                devopsEnvResourceDetailE.setId(cached.getDetailId());
+                devopsEnvResourceDetailRepository.update(devopsEnvResourceDetailE);
+                envResourceReversionCache.put(instanceId, kind, name,
+                        cached.getResourceId(), cached.getDetailId(), reversion);
+                return;
+            }
+            envResourceReversionCache.invalidate(kind, name);
+        }
+        saveOrUpdateResource(devopsEnvResourceE,
+                devopsEnvResourceRepository.queryByInstanceIdAndKindAndName(instanceId, kind, name),
+                devopsEnvResourceDetailE,
+                applicationInstanceE);
+    }
+
+    /**
+     * 根据已查询出的资源记录保存或更新资源
+     *
+     * @param devopsEnvResourceE       资源
+     * @param newdevopsEnvResourceE    数据库中已有的资源，不存在为null
+     * @param devopsEnvResourceDetailE 资源详情
+     * @param applicationInstanceE     所属实例，Ingress为null
+     */
     private void saveOrUpdateResource(DevopsEnvResourceE devopsEnvResourceE,
                                       DevopsEnvResourceE newdevopsEnvResourceE,
                                       DevopsEnvResourceDetailE devopsEnvResourceDetailE,
                                       ApplicationInstanceE applicationInstanceE) {
+        Long instanceId = applicationInstanceE == null ? null : applicationInstanceE.getId();
+        String kind = devopsEnvResourceE.getKind();
+        String name = devopsEnvResourceE.getName();
+        if (devopsEnvResourceE.getReversion() == null) {
+            devopsEnvResourceE.setReversion(0L);
+        }
         if (newdevopsEnvResourceE == null) {
             devopsEnvResourceE.initDevopsInstanceResourceMessageE(
                     devopsEnvResourceDetailRepository.create(devopsEnvResourceDetailE).getId());
-            if (!devopsEnvResourceE.getKind().equals(ResourceType.INGRESS.getType())) {
-                devopsEnvResourceE.initApplicationInstanceE(applicationInstanceE.getId());
+            if (!kind.equals(ResourceType.INGRESS.getType())) {
+                devopsEnvResourceE.initApplicationInstanceE(instanceId);
             }
             devopsEnvResourceRepository.create(devopsEnvResourceE);
+            envResourceReversionCache.put(instanceId, kind, name, devopsEnvResourceE.getId(),
+                    devopsEnvResourceE.getDevopsEnvResourceDetailE().getId(), devopsEnvResourceE.getReversion());
             return;
         }
         if (newdevopsEnvResourceE.getReversion() == null) {
             newdevopsEnvResourceE.setReversion(0L);
         }
-        if (devopsEnvResourceE.getReversion() == null) {
-            devopsEnvResourceE.setReversion(0L);
-        }
         if (!newdevopsEnvResourceE.getReversion().equals(devopsEnvResourceE.getReversion())) {
             newdevopsEnvResourceE.setReversion(devopsEnvResourceE.getReversion());
             devopsEnvResourceDetailE.setId(
                     newdevopsEnvResourceE.getDevopsEnvResourceDetailE().getId());
-            devopsEnvResourceRepository.update(newdevopsEnvResourceE);
             devopsEnvResourceDetailRepository.update(devopsEnvResourceDetailE);
+            devopsEnvResourceRepository.update(newdevopsEnvResourceE);
         }
-
+        envResourceReversionCache.put(instanceId, kind, name, newdevopsEnvResourceE.getId(),
+                newdevopsEnvResourceE.getDevopsEnvResourceDetailE().getId(), devopsEnvResourceE.getReversion());
     }
 
     private void installResource(List<Resource> resources, ApplicationInstanceE applicationInstanceE) {
-        try {
-            for (Resource resource : resources) {
-                DevopsEnvResourceE newdevopsEnvResourceE =
-                        devopsEnvResourceRepository.queryByInstanceIdAndKindAndName(
-                                applicationInstanceE.getId(),
-                                resource.getKind(),
-                                resource.getName());
-                DevopsEnvResourceDetailE devopsEnvResourceDetailE = new DevopsEnvResourceDetailE();
-                devopsEnvResourceDetailE.setMessage(resource.getObject());
-                DevopsEnvResourceE devopsEnvResourceE =
-                        new DevopsEnvResourceE();
-                devopsEnvResourceE.setKind(resource.getKind());
-                devopsEnvResourceE.setName(resource.getName());
+        Map<String, String> failedResources = new LinkedHashMap<>();
+        Map<String, DevopsEnvResourceE> devopsEnvResourceEMap = new LinkedHashMap<>();
+        Map<String, DevopsEnvResourceDetailE> devopsEnvResourceDetailEMap = new HashMap<>();
+        for (Resource resource : resources) {
+            String resourceKey = resource.getKind() + "/" + resource.getName();
+            try {
                 JSONObject jsonResult = JSONObject.parseObject(JSONObject.parseObject(resource.getObject())
                         .get(METADATA).toString());
+                DevopsEnvResourceE devopsEnvResourceE = new DevopsEnvResourceE();
+                devopsEnvResourceE.setKind(resource.getKind());
+                devopsEnvResourceE.setName(resource.getName());
                 devopsEnvResourceE.setReversion(
                         TypeUtil.objToLong(jsonResult.get(RESOURCE_VERSION).toString()));
-                saveOrUpdateResource(
-                        devopsEnvResourceE,
-                        newdevopsEnvResourceE,
-                        devopsEnvResourceDetailE,
-                        applicationInstanceE);
+                DevopsEnvResourceDetailE devopsEnvResourceDetailE = new DevopsEnvResourceDetailE();
+                devopsEnvResourceDetailE.setMessage(resource.getObject());
+                devopsEnvResourceEMap.put(resourceKey, devopsEnvResourceE);
+                devopsEnvResourceDetailEMap.put(resourceKey, devopsEnvResourceDetailE);
+            } catch (Exception e) {
+                failedResources.put(resourceKey, e.getMessage());
+            }
+        }
+        saveOrUpdateResources(devopsEnvResourceEMap, devopsEnvResourceDetailEMap, applicationInstanceE, failedResources);
+        for (Resource resource : resources) {
+            String resourceKey = resource.getKind() + "/" + resource.getName();
+            if (failedResources.containsKey(resourceKey)) {
+                continue;
+            }
+            try {
                 if (resource.getKind().equals(ResourceType.POD.getType())) {
                     syncPod(resource.getObject(), applicationInstanceE);
                 }
@@ -958,12 +971,111 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
                 if (resource.getKind().equals(ResourceType.INGRESS.getType())) {
                     syncIngress(resource.getObject(), applicationInstanceE.getDevopsEnvironmentE().getId());
                 }
+            } catch (Exception e) {
+                failedResources.put(resourceKey, e.getMessage());
             }
-        } catch (Exception e) {
-            logger.info(e.getMessage());
+        }
+        if (!failedResources.isEmpty()) {
+            failedResources.forEach((resourceKey, error) ->
+                    logger.warn("instance {} install resource {} failed: {}",
+                            applicationInstanceE.getCode(), resourceKey, error));
         }
     }
 
+    /**
+     * 批量保存或更新实例下的资源：一次查询已有资源，新资源多行插入，版本变化的资源批量更新。
+     * 批量写入失败时逐条重试，单条失败记录到failedResources中
+     *
+     * @param devopsEnvResourceEMap       kind/name -> 资源
+     * @param devopsEnvResourceDetailEMap kind/name -> 资源详情
+     * @param applicationInstanceE        所属实例
+     * @param failedResources             kind/name -> 失败原因
+     */
+    private void saveOrUpdateResources(Map<String, DevopsEnvResourceE> devopsEnvResourceEMap,
+                                       Map<String, DevopsEnvResourceDetailE> devopsEnvResourceDetailEMap,
+                                       ApplicationInstanceE applicationInstanceE,
+                                       Map<String, String> failedResources) {
+        if (devopsEnvResourceEMap.isEmpty()) {
+            return;
+        }
+        Long instanceId = applicationInstanceE.getId();
+        Map<String, DevopsEnvResourceE> existResources;
+        try {
+            existResources = devopsEnvResourceRepository
+                    .listByInstanceIdAndKindAndNames(instanceId, new ArrayList<>(devopsEnvResourceEMap.values()))
+                    .stream()
+                    .collect(Collectors.toMap(t -> t.getKind() + "/" + t.getName(), t -> t, (a, b) -> a));
+        } catch (Exception e) {
+            devopsEnvResourceEMap.keySet().forEach(resourceKey -> failedResources.put(resourceKey, e.getMessage()));
+            return;
+        }
+        List<DevopsEnvResourceE> createResources = new ArrayList<>();
+        List<DevopsEnvResourceDetailE> createDetails = new ArrayList<>();
+        List<DevopsEnvResourceE> updateResources = new ArrayList<>();
+        List<DevopsEnvResourceDetailE> updateDetails = new ArrayList<>();
+        devopsEnvResourceEMap.forEach((resourceKey, devopsEnvResourceE) -> {
+            DevopsEnvResourceDetailE devopsEnvResourceDetailE = devopsEnvResourceDetailEMap.get(resourceKey);
+            DevopsEnvResourceE existResource = existResources.get(resourceKey);
+            if (devopsEnvResourceE.getReversion() == null) {
+                devopsEnvResourceE.setReversion(0L);
+            }
+            if (existResource == null) {
+                if (!devopsEnvResourceE.getKind().equals(ResourceType.INGRESS.getType())) {
+                    devopsEnvResourceE.initApplicationInstanceE(instanceId);
+                }
+                createResources.add(devopsEnvResourceE);
+                createDetails.add(devopsEnvResourceDetailE);
+            } else if (!devopsEnvResourceE.getReversion().equals(
+                    existResource.getReversion() == null ? 0L : existResource.getReversion())) {
+                existResource.setReversion(devopsEnvResourceE.getReversion());
+                devopsEnvResourceDetailE.setId(existResource.getDevopsEnvResourceDetailE().getId());
+                updateResources.add(existResource);
+                updateDetails.add(devopsEnvResourceDetailE);
+            }
+        });
+        //批量写入在独立事务中执行，失败时整体回滚，逐条重试不会留下孤立的资源详情
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    List<DevopsEnvResourceDetailE> createdDetails =
+                            devopsEnvResourceDetailRepository.batchCreate(createDetails);
+                    for (int i = 0; i < createResources.size(); i++) {
+                        createResources.get(i).initDevopsInstanceResourceMessageE(createdDetails.get(i).getId());
+                    }
+                    devopsEnvResourceRepository.batchCreate(createResources);
+                    devopsEnvResourceDetailRepository.batchUpdate(updateDetails);
+                    devopsEnvResourceRepository.batchUpdateReversion(updateResources);
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("instance {} batch save resources failed, retry one by one: {}",
+                    applicationInstanceE.getCode(), e.getMessage());
+            devopsEnvResourceEMap.forEach((resourceKey, devopsEnvResourceE) -> {
+                try {
+                    saveOrUpdateResource(devopsEnvResourceE,
+                            devopsEnvResourceRepository.queryByInstanceIdAndKindAndName(
+                                    instanceId, devopsEnvResourceE.getKind(), devopsEnvResourceE.getName()),
+                            devopsEnvResourceDetailEMap.get(resourceKey),
+                            applicationInstanceE);
+                } catch (Exception ex) {
+                    failedResources.put(resourceKey, ex.getMessage());
+                }
+            });
+            return;
+        }
+        //多行插入不回填id，新建的资源在下次上报时写入缓存
+        devopsEnvResourceEMap.forEach((resourceKey, devopsEnvResourceE) -> {
+            DevopsEnvResourceE existResource = existResources.get(resourceKey);
+            if (existResource != null) {
+                envResourceReversionCache.put(instanceId, existResource.getKind(), existResource.getName(),
+                        existResource.getId(), existResource.getDevopsEnvResourceDetailE().getId(),
+                        devopsEnvResourceE.getReversion());
+            }
+        });
+    }
 
     private void syncService(DevopsServiceE devopsServiceE, String msg, ApplicationInstanceE applicationInstanceE) {
         V1Service v1Service = json.deserialize(msg, V1Service.class);
@@ -1105,16 +1217,10 @@ public class DeployMsgHandlerServiceImpl implements DeployMsgHandlerService {
     }
 
 
-    private Boolean isFileError(Long envId,
-                                String filePath,
+    private Boolean isFileError(String filePath,
                                 List<DevopsEnvFileErrorE> envFileErrorES) {
-        Boolean hasError = false;
-        DevopsEnvFileErrorE devopsEnvFileErrorE = devopsEnvFileErrorRepository.queryByEnvIdAndFilePath(envId, filePath);
-        if (envFileErrorES.parallelStream()
-                .anyMatch(errorDevopsEnvFileE -> errorDevopsEnvFileE.getId().equals(devopsEnvFileErrorE.getId()))) {
-            hasError = true;
-        }
-        return hasError;
+        return envFileErrorES.stream()
+                .anyMatch(errorDevopsEnvFileE -> errorDevopsEnvFileE.getFilePath().equals(filePath));
     }
 
     @Override
@@ -29,6 +29,7 @@ import io.choerodon.devops.infra.mapper.ApplicationMapper;
 public class DevopsCheckLogServiceImpl implements DevopsCheckLogService {
 
     private static final Integer ADMIN = 1;
+    private static final Integer COMPRESS_BATCH_SIZE = 500;
 
     @Value("${services.gateway.url}")
     private String gatewayUrl;
@@ -47,6 +48,8 @@ public class DevopsCheckLogServiceImpl implements DevopsCheckLogService {
     private DevopsGitRepository devopsGitRepository;
     @Autowired
     private IamRepository iamRepository;
+    @Autowired
+    private DevopsEnvResourceDetailRepository devopsEnvResourceDetailRepository;
 
     @Override
     @Async
@@ -67,21 +70,76 @@ public class DevopsCheckLogServiceImpl implements DevopsCheckLogService {
             devopsCheckLogE.setEndCheckDate(new Date());
             devopsCheckLogRepository.create(devopsCheckLogE);
         }
+        if (version.equals("0.9")) {
+            DevopsCheckLogE devopsCheckLogE = new DevopsCheckLogE();
+            devopsCheckLogE.setBeginCheckDate(new Date());
+            List<CheckLog> logs = new ArrayList<>();
+            compressResourceDetails(logs);
+            applicationMapper.selectAll().stream()
+                    .filter(applicationDO ->
+                            applicationDO.getGitlabProjectId() != null && applicationDO.getHookId() != null)
+                    .forEach(applicationDO -> enableTagPushEvents(applicationDO, logs));
+            devopsCheckLogE.setLog(JSON.toJSONString(logs));
+            devopsCheckLogE.setEndCheckDate(new Date());
+            devopsCheckLogRepository.create(devopsCheckLogE);
+        }
+    }
 
+    /**
+     * 按id分批压缩已有的资源信息，每批单独提交，未压缩的记录在此之前仍可正常读取
+     */
+    private void compressResourceDetails(List<CheckLog> logs) {
+        CheckLog checkLog = new CheckLog();
+        checkLog.setContent("compress devops_env_resource_detail message");
+        Long lastId = 0L;
+        try {
+            Long batchLastId = devopsEnvResourceDetailRepository.compressMessages(lastId, COMPRESS_BATCH_SIZE);
+            while (batchLastId != null) {
+                lastId = batchLastId;
+                batchLastId = devopsEnvResourceDetailRepository.compressMessages(lastId, COMPRESS_BATCH_SIZE);
+            }
+            checkLog.setResult("success");
+        } catch (Exception e) {
+            checkLog.setResult("failed after id " + lastId + ": " + e.getMessage());
+        }
+        logs.add(checkLog);
     }
 
 
+    /**
+     * 已有应用的webhook创建时未开启tag推送事件，开启后tag索引才能随gitlab上的tag变化更新
+     */
+    private void enableTagPushEvents(ApplicationDO applicationDO, List<CheckLog> logs) {
+        CheckLog checkLog = new CheckLog();
+        checkLog.setContent("app: " + applicationDO.getName() + " enable gitlab webhook tag push events");
+        try {
+            ProjectHook projectHook = appHook(applicationDO);
+            projectHook.setId(TypeUtil.objToInteger(applicationDO.getHookId()));
+            gitlabRepository.updateWebHook(applicationDO.getGitlabProjectId(), ADMIN, projectHook);
+            checkLog.setResult("success");
+        } catch (Exception e) {
+            checkLog.setResult("failed: " + e.getMessage());
+        }
+        logs.add(checkLog);
+    }
+
+    private ProjectHook appHook(ApplicationDO applicationDO) {
+        ProjectHook projectHook = ProjectHook.allHook();
+        projectHook.setEnableSslVerification(true);
+        projectHook.setTagPushEvents(true);
+        projectHook.setProjectId(applicationDO.getGitlabProjectId());
+        projectHook.setToken(applicationDO.getToken());
+        String uri = !gatewayUrl.endsWith("/") ? gatewayUrl + "/" : gatewayUrl;
+        uri += "devops/webhook";
+        projectHook.setUrl(uri);
+        return projectHook;
+    }
+
     private void syncWebHook(ApplicationDO applicationDO, List<CheckLog> logs) {
         CheckLog checkLog = new CheckLog();
         checkLog.setContent("app: " + applicationDO.getName() + " create gitlab webhook");
         try {
-            ProjectHook projectHook = ProjectHook.allHook();
-            projectHook.setEnableSslVerification(true);
-            projectHook.setProjectId(applicationDO.getGitlabProjectId());
-            projectHook.setToken(applicationDO.getToken());
-            String uri = !gatewayUrl.endsWith("/") ? gatewayUrl + "/" : gatewayUrl;
-            uri += "devops/webhook";
-            projectHook.setUrl(uri);
+            ProjectHook projectHook = appHook(applicationDO);
             applicationDO.setHookId(TypeUtil.objToLong(
                     gitlabRepository.createWebHook(applicationDO.getGitlabProjectId(), ADMIN, projectHook).getId()));
             applicationMapper.updateByPrimaryKey(applicationDO);
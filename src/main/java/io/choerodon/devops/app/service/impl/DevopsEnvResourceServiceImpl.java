@@ -2,9 +2,12 @@ package io.choerodon.devops.app.service.impl;
 
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import io.kubernetes.client.JSON;
 import io.kubernetes.client.models.*;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -13,6 +16,7 @@ import io.choerodon.devops.app.service.DevopsEnvResourceService;
 import io.choerodon.devops.domain.application.entity.*;
 import io.choerodon.devops.domain.application.repository.*;
 import io.choerodon.devops.infra.common.util.K8sUtil;
+import io.choerodon.devops.infra.common.util.ResourceViewCache;
 import io.choerodon.devops.infra.common.util.TypeUtil;
 import io.choerodon.devops.infra.common.util.enums.ObjectType;
 import io.choerodon.devops.infra.common.util.enums.ResourceType;
@@ -32,80 +36,104 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
     @Autowired
     private DevopsEnvCommandLogRepository devopsEnvCommandLogRepository;
     @Autowired
-    private DevopsServiceRepository devopsServiceRepository;
-    @Autowired
     private DevopsEnvCommandRepository devopsEnvCommandRepository;
     @Autowired
     private DevopsIngressRepository devopsIngressRepository;
     @Autowired
     private DevopsCommandEventRepository devopsCommandEventRepository;
+    @Autowired
+    private ResourceViewCache resourceViewCache;
 
     @Override
     public DevopsEnvResourceDTO listResources(Long instanceId) {
-        List<DevopsEnvResourceE> devopsEnvResourceES =
-                devopsEnvResourceRepository.listByInstanceId(instanceId);
-        DevopsEnvResourceDTO devopsEnvResourceDTO = new DevopsEnvResourceDTO();
-        if (devopsEnvResourceES == null) {
-            return devopsEnvResourceDTO;
+        return listResourcesByInstanceIds(Collections.singletonList(instanceId)).get(instanceId);
+    }
+
+    @Override
+    public Map<Long, DevopsEnvResourceDTO> listResourcesByInstanceIds(List<Long> instanceIds) {
+        Map<Long, DevopsEnvResourceDTO> devopsEnvResourceDTOMap = new HashMap<>();
+        instanceIds.forEach(instanceId -> devopsEnvResourceDTOMap.put(instanceId, new DevopsEnvResourceDTO()));
+        if (instanceIds.isEmpty()) {
+            return devopsEnvResourceDTOMap;
         }
-        devopsEnvResourceES.parallelStream().forEach(devopsInstanceResourceE -> {
-            DevopsEnvResourceDetailE devopsEnvResourceDetailE =
-                    devopsEnvResourceDetailRepository.query(
-                            devopsInstanceResourceE.getDevopsEnvResourceDetailE().getId());
+        List<DevopsEnvResourceE> devopsEnvResourceES = devopsEnvResourceRepository.listByInstanceIds(instanceIds);
+        Map<Long, String> messages = loadUncachedMessages(devopsEnvResourceES);
+        Map<String, Map<String, List<DevopsEnvResourceDTO>>> serviceResources = new HashMap<>();
+        for (DevopsEnvResourceE devopsInstanceResourceE : devopsEnvResourceES) {
+            DevopsEnvResourceDTO devopsEnvResourceDTO =
+                    devopsEnvResourceDTOMap.get(devopsInstanceResourceE.getApplicationInstanceE().getId());
             ResourceType resourceType = ResourceType.forString(devopsInstanceResourceE.getKind());
             if (resourceType == null) {
                 resourceType = ResourceType.forString("MissType");
             }
             switch (resourceType) {
                 case POD:
-                    V1Pod v1Pod = json.deserialize(devopsEnvResourceDetailE.getMessage(), V1Pod.class);
-                    addPodToResource(devopsEnvResourceDTO, v1Pod);
+                    devopsEnvResourceDTO.getPodDTOS().add(copy(getView(devopsInstanceResourceE, messages,
+                            message -> toPodDTO(json.deserialize(message, V1Pod.class)))));
                     break;
                 case DEPLOYMENT:
-                    V1beta2Deployment v1beta2Deployment = json.deserialize(
-                            devopsEnvResourceDetailE.getMessage(),
-                            V1beta2Deployment.class);
-                    addDeploymentToResource(devopsEnvResourceDTO, v1beta2Deployment);
+                    devopsEnvResourceDTO.getDeploymentDTOS().add(copy(getView(devopsInstanceResourceE, messages,
+                            message -> toDeploymentDTO(json.deserialize(message, V1beta2Deployment.class)))));
                     break;
                 case SERVICE:
-                    V1Service v1Service = json.deserialize(devopsEnvResourceDetailE.getMessage(),
-                            V1Service.class);
-                    DevopsServiceE devopsServiceE = devopsServiceRepository.selectByNameAndNamespace(
-                            devopsInstanceResourceE.getName(), v1Service.getMetadata().getNamespace());
-                    if (devopsServiceE != null) {
-                        List<String> domainNames =
-                                devopsIngressRepository.queryIngressNameByServiceId(
-                                        devopsServiceE.getId());
-                        domainNames.parallelStream().forEach(domainName -> {
-                            DevopsEnvResourceE devopsEnvResourceE1 =
-                                    devopsEnvResourceRepository.queryByInstanceIdAndKindAndName(
-                                            null,
-                                            "Ingress",
-                                            domainName);
-                            if (devopsEnvResourceE1 != null) {
-                                DevopsEnvResourceDetailE devopsEnvResourceDetailE1 =
-                                        devopsEnvResourceDetailRepository.query(
-                                                devopsEnvResourceE1.getDevopsEnvResourceDetailE().getId());
-                                V1beta1Ingress v1beta1Ingress = json.deserialize(
-                                        devopsEnvResourceDetailE1.getMessage(),
-                                        V1beta1Ingress.class);
-                                addIngressToResource(devopsEnvResourceDTO, v1beta1Ingress);
-                            }
-                        });
-                    }
-                    addServiceToResource(devopsEnvResourceDTO, v1Service);
+                    ServiceView serviceView = getView(devopsInstanceResourceE, messages,
+                            message -> new ServiceView(json.deserialize(message, V1Service.class)));
+                    serviceResources.computeIfAbsent(serviceView.namespace, k -> new HashMap<>())
+                            .computeIfAbsent(devopsInstanceResourceE.getName(), k -> new ArrayList<>())
+                            .add(devopsEnvResourceDTO);
+                    devopsEnvResourceDTO.getServiceDTOS().add(copy(serviceView.serviceDTO));
                     break;
                 case REPLICASET:
-                    V1beta2ReplicaSet v1beta2ReplicaSet = json.deserialize(
-                            devopsEnvResourceDetailE.getMessage(),
-                            V1beta2ReplicaSet.class);
-                    addReplicaSetToResource(devopsEnvResourceDTO, v1beta2ReplicaSet);
+                    ReplicaSetDTO replicaSetDTO = getView(devopsInstanceResourceE, messages,
+                            message -> toReplicaSetDTO(json.deserialize(message, V1beta2ReplicaSet.class)));
+                    if (!Long.valueOf(0L).equals(replicaSetDTO.getDesired())) {
+                        devopsEnvResourceDTO.getReplicaSetDTOS().add(copy(replicaSetDTO));
+                    }
                     break;
                 default:
                     break;
             }
+        }
+        addIngressToResources(serviceResources);
+        return devopsEnvResourceDTOMap;
+    }
+
+    /**
+     * 将service关联的ingress加入到service所属实例的资源中，同一实例下的ingress只展示一次。
+     * Ingress资源不属于实例，同名的Ingress可能属于不同环境，按资源中的namespace匹配
+     *
+     * @param serviceResources namespace -> service名称 -> 包含该service的实例资源
+     */
+    private void addIngressToResources(Map<String, Map<String, List<DevopsEnvResourceDTO>>> serviceResources) {
+        Map<String, Map<String, Set<DevopsEnvResourceDTO>>> ingressResources = new HashMap<>();
+        Set<String> ingressNames = new HashSet<>();
+        serviceResources.forEach((namespace, services) ->
+                devopsIngressRepository.listByServiceNames(namespace, new ArrayList<>(services.keySet()))
+                        .forEach(devopsIngressDO -> {
+                            ingressNames.add(devopsIngressDO.getName());
+                            ingressResources.computeIfAbsent(namespace, k -> new HashMap<>())
+                                    .computeIfAbsent(devopsIngressDO.getName(), k -> new LinkedHashSet<>())
+                                    .addAll(services.get(devopsIngressDO.getServiceName()));
+                        }));
+        if (ingressNames.isEmpty()) {
+            return;
+        }
+        List<DevopsEnvResourceE> ingressResourceES = devopsEnvResourceRepository
+                .listByKindAndNames(ResourceType.INGRESS.getType(), new ArrayList<>(ingressNames));
+        Map<Long, String> ingressMessages = loadUncachedMessages(ingressResourceES);
+        Set<String> addedIngresses = new HashSet<>();
+        ingressResourceES.forEach(ingressResourceE -> {
+            IngressView ingressView = getView(ingressResourceE, ingressMessages,
+                    message -> new IngressView(json.deserialize(message, V1beta1Ingress.class)));
+            Set<DevopsEnvResourceDTO> devopsEnvResourceDTOS = ingressResources
+                    .getOrDefault(ingressView.namespace, Collections.emptyMap())
+                    .get(ingressResourceE.getName());
+            if (devopsEnvResourceDTOS != null
+                    && addedIngresses.add(ingressView.namespace + "/" + ingressResourceE.getName())) {
+                devopsEnvResourceDTOS.forEach(devopsEnvResourceDTO ->
+                        devopsEnvResourceDTO.getIngressDTOS().add(copy(ingressView.ingressDTO)));
+            }
         });
-        return devopsEnvResourceDTO;
     }
 
     @Override
@@ -114,15 +142,18 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
                 .queryByObject(ObjectType.INSTANCE.getType(), instanceId);
         List<DevopsEnvResourceE> devopsEnvResourceES =
                 devopsEnvResourceRepository.listJobByInstanceId(instanceId);
+        Map<Long, String> messages = loadUncachedMessages(devopsEnvResourceES);
         List<InstanceStageDTO> instanceStageDTOS = new ArrayList<>();
         devopsEnvResourceES.forEach(devopsInstanceResourceE -> {
             if (devopsInstanceResourceE.getKind().equals(ResourceType.JOB.getType())) {
-                DevopsEnvResourceDetailE devopsEnvResourceDetailE =
-                        devopsEnvResourceDetailRepository.query(
-                                devopsInstanceResourceE.getDevopsEnvResourceDetailE().getId());
-                V1Job v1Job = json.deserialize(devopsEnvResourceDetailE.getMessage(), V1Job.class);
-                InstanceStageDTO instanceStageDTO = new InstanceStageDTO();
-                getInstanceStage(v1Job, instanceStageDTO, devopsInstanceResourceE.getWeight());
+                InstanceStageDTO cachedStageDTO = getView(devopsInstanceResourceE, messages, message -> {
+                    InstanceStageDTO stageDTO = new InstanceStageDTO();
+                    getInstanceStage(json.deserialize(message, V1Job.class), stageDTO,
+                            devopsInstanceResourceE.getWeight());
+                    return stageDTO;
+                });
+                InstanceStageDTO instanceStageDTO = copy(cachedStageDTO);
+                instanceStageDTO.setWeight(devopsInstanceResourceE.getWeight());
                 instanceStageDTOS.add(instanceStageDTO);
             }
         });
@@ -142,6 +173,50 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
         return instanceStageDTOS;
     }
 
+    /**
+     * 批量查询未缓存资源的详情
+     *
+     * @param devopsEnvResourceES 资源
+     * @return 资源详情id -> 资源信息
+     */
+    private Map<Long, String> loadUncachedMessages(List<DevopsEnvResourceE> devopsEnvResourceES) {
+        List<Long> messageIds = devopsEnvResourceES.stream()
+                .filter(t -> !resourceViewCache.contains(t.getDevopsEnvResourceDetailE().getId(), t.getReversion()))
+                .map(t -> t.getDevopsEnvResourceDetailE().getId())
+                .collect(Collectors.toList());
+        if (messageIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        return devopsEnvResourceDetailRepository.listByIds(messageIds).stream()
+                .collect(Collectors.toMap(DevopsEnvResourceDetailE::getId, DevopsEnvResourceDetailE::getMessage));
+    }
+
+    /**
+     * 获取资源视图，未缓存时解析资源信息，资源信息未预先加载(如期间被淘汰)时单独查询。
+     * 返回的是多个请求共享的缓存对象，放入返回结果前需通过copy复制
+     */
+    private <T> T getView(DevopsEnvResourceE devopsEnvResourceE, Map<Long, String> messages,
+                          Function<String, T> parser) {
+        Long messageId = devopsEnvResourceE.getDevopsEnvResourceDetailE().getId();
+        return resourceViewCache.get(messageId, devopsEnvResourceE.getReversion(), () -> {
+            String message = messages.get(messageId);
+            if (message == null) {
+                message = devopsEnvResourceDetailRepository.query(messageId).getMessage();
+            }
+            return parser.apply(message);
+        });
+    }
+
+    /**
+     * 复制缓存的展示对象，返回结果的修改不影响缓存
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T copy(T view) {
+        T copy = (T) BeanUtils.instantiateClass(view.getClass());
+        BeanUtils.copyProperties(view, copy);
+        return copy;
+    }
+
     private void getInstanceStage(V1Job v1Job, InstanceStageDTO instanceStageDTO, Long weight) {
         instanceStageDTO.setStageName(v1Job.getMetadata().getName());
         instanceStageDTO.setWeight(weight);
@@ -188,12 +263,12 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
     }
 
     /**
-     * 增加pod资源
+     * 转换pod资源
      *
-     * @param devopsEnvResourceDTO 实例资源参数
-     * @param v1Pod                pod对象
+     * @param v1Pod pod对象
+     * @return pod资源
      */
-    public void addPodToResource(DevopsEnvResourceDTO devopsEnvResourceDTO, V1Pod v1Pod) {
+    private PodDTO toPodDTO(V1Pod v1Pod) {
         PodDTO podDTO = new PodDTO();
         podDTO.setName(v1Pod.getMetadata().getName());
         podDTO.setDesire(TypeUtil.objToLong(v1Pod.getSpec().getContainers().size()));
@@ -209,16 +284,16 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
         podDTO.setStatus(K8sUtil.changePodStatus(v1Pod));
         podDTO.setRestarts(restart);
         podDTO.setAge(v1Pod.getMetadata().getCreationTimestamp().toString());
-        devopsEnvResourceDTO.getPodDTOS().add(podDTO);
+        return podDTO;
     }
 
     /**
-     * 增加deployment资源
+     * 转换deployment资源
      *
-     * @param devopsEnvResourceDTO 实例资源参数
-     * @param v1beta2Deployment    deployment对象
+     * @param v1beta2Deployment deployment对象
+     * @return deployment资源
      */
-    public void addDeploymentToResource(DevopsEnvResourceDTO devopsEnvResourceDTO, V1beta2Deployment v1beta2Deployment) {
+    private DeploymentDTO toDeploymentDTO(V1beta2Deployment v1beta2Deployment) {
         DeploymentDTO deploymentDTO = new DeploymentDTO();
         deploymentDTO.setName(v1beta2Deployment.getMetadata().getName());
         deploymentDTO.setDesired(TypeUtil.objToLong(v1beta2Deployment.getSpec().getReplicas()));
@@ -226,16 +301,16 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
         deploymentDTO.setUpToDate(TypeUtil.objToLong(v1beta2Deployment.getStatus().getUpdatedReplicas()));
         deploymentDTO.setAvailable(TypeUtil.objToLong(v1beta2Deployment.getStatus().getAvailableReplicas()));
         deploymentDTO.setAge(v1beta2Deployment.getMetadata().getCreationTimestamp().toString());
-        devopsEnvResourceDTO.getDeploymentDTOS().add(deploymentDTO);
+        return deploymentDTO;
     }
 
     /**
-     * 增加service资源
+     * 转换service资源
      *
-     * @param devopsEnvResourceDTO 实例资源参数
-     * @param v1Service            service对象
+     * @param v1Service service对象
+     * @return service资源
      */
-    public void addServiceToResource(DevopsEnvResourceDTO devopsEnvResourceDTO, V1Service v1Service) {
+    private ServiceDTO toServiceDTO(V1Service v1Service) {
         ServiceDTO serviceDTO = new ServiceDTO();
         serviceDTO.setName(v1Service.getMetadata().getName());
         serviceDTO.setType(v1Service.getSpec().getType());
@@ -256,42 +331,39 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
         serviceDTO.setPort(port);
         serviceDTO.setTargetPort(targetPort);
         serviceDTO.setAge(v1Service.getMetadata().getCreationTimestamp().toString());
-        devopsEnvResourceDTO.getServiceDTOS().add(serviceDTO);
+        return serviceDTO;
     }
 
     /**
-     * 增加ingress资源
+     * 转换ingress资源
      *
-     * @param devopsEnvResourceDTO 实例资源参数
-     * @param v1beta1Ingress       ingress对象
+     * @param v1beta1Ingress ingress对象
+     * @return ingress资源
      */
-    public void addIngressToResource(DevopsEnvResourceDTO devopsEnvResourceDTO, V1beta1Ingress v1beta1Ingress) {
+    private IngressDTO toIngressDTO(V1beta1Ingress v1beta1Ingress) {
         IngressDTO ingressDTO = new IngressDTO();
         ingressDTO.setName(v1beta1Ingress.getMetadata().getName());
         ingressDTO.setHosts(K8sUtil.formatHosts(v1beta1Ingress.getSpec().getRules()));
         ingressDTO.setPorts(K8sUtil.formatPorts(v1beta1Ingress.getSpec().getTls()));
         ingressDTO.setAddress(K8sUtil.loadBalancerStatusStringer(v1beta1Ingress.getStatus().getLoadBalancer()));
         ingressDTO.setAge(v1beta1Ingress.getMetadata().getCreationTimestamp().toString());
-        devopsEnvResourceDTO.getIngressDTOS().add(ingressDTO);
+        return ingressDTO;
     }
 
     /**
-     * 增加replicaSet资源
+     * 转换replicaSet资源，期望副本数为0的replicaSet不展示
      *
-     * @param devopsEnvResourceDTO 实例资源参数
-     * @param v1beta2ReplicaSet    replicaSet对象
+     * @param v1beta2ReplicaSet replicaSet对象
+     * @return replicaSet资源
      */
-    public void addReplicaSetToResource(DevopsEnvResourceDTO devopsEnvResourceDTO, V1beta2ReplicaSet v1beta2ReplicaSet) {
-        if (v1beta2ReplicaSet.getSpec().getReplicas() == 0) {
-            return;
-        }
+    private ReplicaSetDTO toReplicaSetDTO(V1beta2ReplicaSet v1beta2ReplicaSet) {
         ReplicaSetDTO replicaSetDTO = new ReplicaSetDTO();
         replicaSetDTO.setName(v1beta2ReplicaSet.getMetadata().getName());
         replicaSetDTO.setCurrent(TypeUtil.objToLong(v1beta2ReplicaSet.getStatus().getReplicas()));
         replicaSetDTO.setDesired(TypeUtil.objToLong(v1beta2ReplicaSet.getSpec().getReplicas()));
         replicaSetDTO.setReady(TypeUtil.objToLong(v1beta2ReplicaSet.getStatus().getReadyReplicas()));
         replicaSetDTO.setAge(v1beta2ReplicaSet.getMetadata().getCreationTimestamp().toString());
-        devopsEnvResourceDTO.getReplicaSetDTOS().add(replicaSetDTO);
+        return replicaSetDTO;
     }
 
     /**
@@ -320,4 +392,32 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
         sec = (diff / 1000 - day * 24 * 60 * 60 - hour * 60 * 60 - min * 60);
         return new Long[]{day, hour, min, sec};
     }
+
+    /**
+     * 缓存的service视图，namespace用于查询service关联的ingress
+     */
+    private final class ServiceView {
+
+        private final ServiceDTO serviceDTO;
+        private final String namespace;
+
+        ServiceView(V1Service v1Service) {
+            this.serviceDTO = toServiceDTO(v1Service);
+            this.namespace = v1Service.getMetadata().getNamespace();
+        }
+    }
+
+    /**
+     * 缓存的ingress视图，namespace用于区分不同环境下的同名ingress
+     */
+    private final class IngressView {
+
+        private final IngressDTO ingressDTO;
+        private final String namespace;
+
+        IngressView(V1beta1Ingress v1beta1Ingress) {
+            this.ingressDTO = toIngressDTO(v1beta1Ingress);
+            this.namespace = v1beta1Ingress.getMetadata().getNamespace();
+        }
+    }
 }
@@ -94,6 +94,8 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
     private DevopsGitRepository devopsGitRepository;
     @Autowired
     private DevopsEnvCommitRepository devopsEnvCommitRepository;
+    @Autowired
+    private GitOpsRepositoryPool gitOpsRepositoryPool;
 
 
     @Override
@@ -206,6 +208,12 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
             sort(environmentIds.toArray(ids));
         }
         devopsEnviromentRepository.update(devopsEnvironmentE);
+        if (!active) {
+            ProjectE projectE = iamRepository.queryIamProject(projectId);
+            Organization organization = iamRepository.queryOrganizationById(projectE.getOrganization().getId());
+            gitOpsRepositoryPool.evict(GitOpsRepositoryPool.getRepositoryPath(
+                    organization.getCode(), projectE.getCode(), devopsEnvironmentE.getCode()));
+        }
         return true;
     }
 
@@ -1,9 +1,9 @@
 package io.choerodon.devops.app.service.impl;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.alibaba.fastjson.JSONObject;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -11,13 +11,19 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.kubernetes.client.models.V1Service;
 import io.kubernetes.client.models.V1beta1HTTPIngressPath;
 import io.kubernetes.client.models.V1beta1Ingress;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.yaml.snakeyaml.Yaml;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import io.choerodon.asgard.saga.annotation.Saga;
 import io.choerodon.asgard.saga.dto.StartInstanceDTO;
@@ -31,9 +37,9 @@ import io.choerodon.devops.api.validator.DevopsServiceValidator;
 import io.choerodon.devops.app.service.*;
 import io.choerodon.devops.domain.application.entity.*;
 import io.choerodon.devops.domain.application.entity.gitlab.CommitE;
-import io.choerodon.devops.domain.application.entity.gitlab.CompareResultsE;
+import io.choerodon.devops.domain.application.entity.gitlab.DiffE;
+import io.choerodon.devops.domain.application.handler.GitOpsEnvSnapshot;
 import io.choerodon.devops.domain.application.entity.iam.UserE;
-import io.choerodon.devops.domain.application.handler.SerializableOperation;
 import io.choerodon.devops.domain.application.repository.*;
 import io.choerodon.devops.domain.application.valueobject.C7nHelmRelease;
 import io.choerodon.devops.domain.application.valueobject.Issue;
@@ -41,12 +47,17 @@ import io.choerodon.devops.domain.application.valueobject.Organization;
 import io.choerodon.devops.domain.service.DeployService;
 import io.choerodon.devops.infra.common.util.DateUtil;
 import io.choerodon.devops.infra.common.util.GitUserNameUtil;
+import io.choerodon.devops.infra.common.util.GitOpsCommitIndex;
+import io.choerodon.devops.infra.common.util.GitOpsManifestParser;
+import io.choerodon.devops.infra.common.util.GitOpsManifestParser.ParsedFile;
+import io.choerodon.devops.infra.common.util.GitOpsRepositoryPool;
+import io.choerodon.devops.infra.common.util.GitOpsSyncMetrics;
 import io.choerodon.devops.infra.common.util.GitUtil;
+import io.choerodon.devops.infra.common.util.GitlabTagIndex;
 import io.choerodon.devops.infra.common.util.TypeUtil;
 import io.choerodon.devops.infra.common.util.enums.CommandType;
 import io.choerodon.devops.infra.common.util.enums.ObjectType;
 import io.choerodon.devops.infra.config.HarborConfigurationProperties;
-import io.choerodon.devops.infra.dataobject.DevopsIngressDO;
 import io.choerodon.devops.infra.dataobject.gitlab.BranchDO;
 import io.choerodon.devops.infra.dataobject.gitlab.TagDO;
 import io.choerodon.mybatis.pagehelper.domain.PageRequest;
@@ -66,7 +77,6 @@ public class DevopsGitServiceImpl implements DevopsGitService {
     private static final String INSTANCE_NOT_FOUND = "The instances not found: ";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DevopsGitServiceImpl.class);
-    private Yaml yaml = new Yaml();
     private ObjectMapper objectMapper = new ObjectMapper();
     @Value("${services.gitlab.url}")
     private String gitlabUrl;
@@ -74,6 +84,9 @@ public class DevopsGitServiceImpl implements DevopsGitService {
     @Value("${services.gitlab.sshUrl}")
     private String gitlabSshUrl;
 
+    @Value("${devops.gitops.sync-lock-seconds:600}")
+    private Integer syncLockSeconds;
+
 
     @Autowired
     private DevopsGitRepository devopsGitRepository;
@@ -121,6 +134,18 @@ public class DevopsGitServiceImpl implements DevopsGitService {
     private HarborConfigurationProperties harborConfigurationProperties;
     @Autowired
     private DevopsEnvFileErrorRepository devopsEnvFileErrorRepository;
+    @Autowired
+    private GitOpsCommitIndex gitOpsCommitIndex;
+    @Autowired
+    private GitOpsRepositoryPool gitOpsRepositoryPool;
+    @Autowired
+    private GitOpsSyncMetrics gitOpsSyncMetrics;
+    @Autowired
+    private GitlabTagIndex gitlabTagIndex;
+    @Autowired
+    private GitOpsManifestParser gitOpsManifestParser;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     public Integer getGitlabUserId() {
         UserAttrE userAttrE = userAttrRepository.queryById(TypeUtil.objToLong(GitUserNameUtil.getUserId()));
@@ -185,17 +210,15 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                 devopsGitRepository.listBranches(applicationId, pageRequest, params);
         Page<BranchDTO> page = new Page<>();
         BeanUtils.copyProperties(branches, page);
-        page.setContent(branches.parallelStream().map(t -> {
-            Issue issue = null;
-            if (t.getIssueId() != null) {
-                issue = agileRepository.queryIssue(projectId, t.getIssueId());
-            }
-            UserE userE = iamRepository.queryUserByUserId(
-                    devopsGitRepository.getUserIdByGitlabUserId(t.getUserId()));
-            UserE commitUserE = iamRepository.queryUserByUserId(
-                    devopsGitRepository.getUserIdByGitlabUserId(t.getLastCommitUser()));
+        Map<Long, Issue> issues = agileRepository.listIssues(projectId, branches.stream()
+                .map(DevopsBranchE::getIssueId).collect(Collectors.toList()));
+        Map<Long, UserE> users = devopsGitRepository.listUsersByGitlabUserIds(branches.stream()
+                .flatMap(t -> Stream.of(t.getUserId(), t.getLastCommitUser()))
+                .collect(Collectors.toList()));
+        page.setContent(branches.stream().map(t -> {
             String commitUrl = String.format("%s/commit/%s?view=parallel", path, t.getLastCommit());
-            return getBranchDTO(t, commitUrl, commitUserE, userE, issue);
+            return getBranchDTO(t, commitUrl, users.get(t.getLastCommitUser()), users.get(t.getUserId()),
+                    t.getIssueId() == null ? null : issues.get(t.getIssueId()));
         }).collect(Collectors.toList()));
         return page;
     }
@@ -277,8 +300,18 @@ public class DevopsGitServiceImpl implements DevopsGitService {
 
     @Override
     public Boolean checkTag(Long projectId, Long applicationId, String tagName) {
-        return devopsGitRepository.getTagList(applicationId, getGitlabUserId()).parallelStream()
-                .noneMatch(t -> tagName.equals(t.getName()));
+        return !devopsGitRepository.containsTag(applicationId, tagName, getGitlabUserId());
+    }
+
+    @Override
+    public void tagSync(PushWebHookDTO pushWebHookDTO) {
+        String tagName = pushWebHookDTO.getRef().replaceFirst("^refs/tags/", "");
+        if (NO_COMMIT_SHA.equals(pushWebHookDTO.getAfter())) {
+            gitlabTagIndex.remove(pushWebHookDTO.getProjectId(), tagName);
+        } else {
+            //webhook中没有tag的完整信息，下次查询时重新拉取
+            gitlabTagIndex.invalidate(pushWebHookDTO.getProjectId());
+        }
     }
 
     @Override
@@ -300,27 +333,29 @@ public class DevopsGitServiceImpl implements DevopsGitService {
         pushWebHookDTO.setToken(token);
         String input;
         DevopsEnvironmentE devopsEnvironmentE = devopsEnvironmentRepository.queryByToken(pushWebHookDTO.getToken());
-        pushWebHookDTO.getCommits().forEach(commitDTO -> {
+        List<DevopsEnvCommitE> devopsEnvCommitES = pushWebHookDTO.getCommits().stream().map(commitDTO -> {
             DevopsEnvCommitE devopsEnvCommitE = new DevopsEnvCommitE();
             devopsEnvCommitE.setEnvId(devopsEnvironmentE.getId());
             devopsEnvCommitE.setCommitSha(commitDTO.getId());
             devopsEnvCommitE.setCommitUser(TypeUtil.objToLong(pushWebHookDTO.getUserId()));
             devopsEnvCommitE.setCommitDate(commitDTO.getTimestamp());
-            if (devopsEnvCommitRepository.queryByEnvIdAndCommit(devopsEnvironmentE.getId(), commitDTO.getId()) == null) {
-                 devopsEnvCommitRepository.create(devopsEnvCommitE);
-            }
-
-        });
-        DevopsEnvCommitE devopsEnvCommitE = devopsEnvCommitRepository.queryByEnvIdAndCommit(devopsEnvironmentE.getId(), pushWebHookDTO.getCheckoutSha());
+            return devopsEnvCommitE;
+        }).collect(Collectors.toList());
+        DevopsEnvCommitE devopsEnvCommitE = devopsEnvCommitRepository
+                .batchCreateIfAbsent(devopsEnvironmentE.getId(), devopsEnvCommitES).stream()
+                .filter(t -> t.getCommitSha().equals(pushWebHookDTO.getCheckoutSha()))
+                .findFirst()
+                .orElseGet(() -> devopsEnvCommitRepository.queryByEnvIdAndCommit(
+                        devopsEnvironmentE.getId(), pushWebHookDTO.getCheckoutSha()));
         devopsEnvironmentE.setGitCommit(devopsEnvCommitE.getId());
         devopsEnvironmentRepository.update(devopsEnvironmentE);
         //TODO 在收到环境库webhook 之后应该在env commit 记录表中插入提交记录，并且更新对应环境中git库最新提交字段
         try {
             input = objectMapper.writeValueAsString(pushWebHookDTO);
-            sagaClient.startSaga("devops-sync-gitops", new StartInstanceDTO(input, "env", devopsEnvironmentE.getId().toString()));
         } catch (JsonProcessingException e) {
             throw new CommonException(e.getMessage());
         }
+        sagaClient.startSaga("devops-sync-gitops", new StartInstanceDTO(input, "env", devopsEnvironmentE.getId().toString()));
     }
 
     @Override
@@ -344,29 +379,51 @@ public class DevopsGitServiceImpl implements DevopsGitService {
         Organization organization = iamRepository.queryOrganizationById(projectE.getOrganization().getId());
 
         //本地路径
-        String path = String.format("gitops/%s/%s/%s",
+        String path = GitOpsRepositoryPool.getRepositoryPath(
                 organization.getCode(), projectE.getCode(), devopsEnvironmentE.getCode());
         //生成环境git仓库ssh地址
         String url = String.format("git@%s:%s-%s-gitops/%s.git",
                 gitlabSshUrl, organization.getCode(), projectE.getCode(), devopsEnvironmentE.getCode());
         LOGGER.info(url);
 
+        //同一环境的同步在各实例间串行执行，锁被占用时抛出异常由saga重试
+        if (!inNewTransaction(status ->
+                devopsEnvironmentRepository.lockSync(devopsEnvironmentE.getId(), syncLockSeconds))) {
+            gitOpsSyncMetrics.locked();
+            throw new CommonException("error.env.sync.locked");
+        }
+        boolean unlocked = false;
         try {
-
+            //之前的同步可能已经解释到最新提交，或者有更新的推送，由其对应的同步解释
+            DevopsEnvironmentE latestEnvironmentE = devopsEnvironmentRepository.queryById(devopsEnvironmentE.getId());
+            if (isSyncedOrSuperseded(latestEnvironmentE, pushWebHookDTO.getCheckoutSha())) {
+                LOGGER.info("env {} already synced or has a newer push, skip", devopsEnvironmentE.getCode());
+                gitOpsSyncMetrics.skipped();
+                return;
+            }
+            devopsEnvironmentE.setGitCommit(latestEnvironmentE.getGitCommit());
+            devopsEnvironmentE.setDevopsSyncCommit(latestEnvironmentE.getDevopsSyncCommit());
 
             DevopsEnvCommitE devopsEnvCommitE = devopsEnvCommitRepository.query(devopsEnvironmentE.getGitCommit());
             devopsEnvironmentE.setGitCommit(devopsEnvCommitE.getId());
 
             //更新本地库到最新提交
-            handDevopsEnvGitRepository(path, url, devopsEnvironmentE.getEnvIdRsa(), devopsEnvCommitE.getCommitSha());
+            RevCommit revCommit = gitOpsRepositoryPool.update(
+                    path, url, devopsEnvironmentE.getEnvIdRsa(), devopsEnvCommitE.getCommitSha());
 
-            //获取将此次最新提交与tag作比价得到diff
-            CompareResultsE compareResultsE = devopsGitRepository
-                    .getCompareResults(gitLabProjectId, GitUtil.DEVOPS_GITOPS_TAG, devopsEnvCommitE.getCommitSha());
+            Repository repository = gitOpsRepositoryPool.getRepository(path);
+            String syncCommitSha = devopsEnvironmentE.getDevopsSyncCommit() == null ? null
+                    : devopsEnvCommitRepository.query(devopsEnvironmentE.getDevopsSyncCommit()).getCommitSha();
+            RevCommit syncCommit = gitOpsRepositoryPool.getSyncCommit(repository, syncCommitSha);
 
-            List<DevopsEnvFileResourceE> beforeSync = new ArrayList<>();
+            //从上次解释的提交到本次提交遍历一次历史，建立文件最新提交索引
+            gitOpsCommitIndex.open(path, syncCommit == null ? null : syncCommit.name(),
+                    devopsEnvCommitE.getCommitSha());
+
+            //在本地将此次最新提交与上次解释的提交作比较得到diff
+            List<DiffE> diffs = gitOpsRepositoryPool.diff(repository, syncCommit, revCommit);
 
-            compareResultsE.getDiffs().forEach(t -> {
+            diffs.forEach(t -> {
                 if (t.getNewPath().contains("yaml") || t.getNewPath().contains("yml")) {
                     if (t.getDeletedFile()) {
                         deletedFiles.add(t.getNewPath());
@@ -377,11 +434,6 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                         operationFiles.add(t.getNewPath());
                     }
                 }
-                List<DevopsEnvFileResourceE> devopsEnvFileResourceES = devopsEnvFileResourceRepository
-                        .queryByEnvIdAndPath(devopsEnvironmentE.getId(), t.getOldPath());
-                if (!devopsEnvFileResourceES.isEmpty()) {
-                    beforeSync.addAll(devopsEnvFileResourceES);
-                }
             });
 
             //如果没有涉及到到yml文件的修改则跳过本次解释
@@ -389,6 +441,11 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                 return;
             }
 
+            //一次查出环境下的实例、网络、域名及文件资源关系
+            GitOpsEnvSnapshot snapshot = loadEnvSnapshot(devopsEnvironmentE.getId());
+            List<DevopsEnvFileResourceE> beforeSync = new ArrayList<>();
+            diffs.forEach(t -> beforeSync.addAll(snapshot.listFileResources(t.getOldPath())));
+
             List<C7nHelmRelease> c7nHelmReleases = new ArrayList<>();
             List<V1Service> v1Services = new ArrayList<>();
             List<V1beta1Ingress> v1beta1Ingresses = new ArrayList<>();
@@ -396,7 +453,7 @@ public class DevopsGitServiceImpl implements DevopsGitService {
             Map<String, String> objectPath = new HashMap<>();
 
             //从文件中读出对象
-            handleFilesToObject(operationFiles, path, c7nHelmReleases,
+            handleFilesToObject(operationFiles, path, revCommit, c7nHelmReleases,
                     v1Services, v1beta1Ingresses,
                     objectPath, devopsEnvironmentE.getId());
 
@@ -410,7 +467,8 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                     v1beta1Ingresses,
                     devopsEnvironmentE.getId(),
                     devopsEnvironmentE.getProjectE().getId(),
-                    path
+                    path,
+                    snapshot
             );
 
             //新增解释文件记录，并删除文件错误记录
@@ -438,25 +496,86 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                 devopsEnvFileE.setFilePath(filePath);
                 devopsEnvFileRepository.delete(devopsEnvFileE);
             }
-            //TODO 此时请求应考虑请求失败情况，还有删除成功了创建没有成功
-            //删除tag
-            devopsGitRepository.deleteTag(gitLabProjectId, GitUtil.DEVOPS_GITOPS_TAG, gitLabUserId);
-            //创建新tag
-            devopsGitRepository.createTag(gitLabProjectId, GitUtil.DEVOPS_GITOPS_TAG, devopsEnvCommitE.getCommitSha(), gitLabUserId);
+            //agent按tag读取要同步的提交，发送同步指令前必须完成tag的移动，失败时抛出异常由saga重试
+            moveSyncTag(gitLabProjectId, devopsEnvCommitE.getCommitSha(), gitLabUserId);
+            //记录本地同步位置
+            gitOpsRepositoryPool.setSyncCommit(repository, revCommit);
 
             //向agent发送同步指令
             deployService.sendCommand(devopsEnvironmentE);
             devopsEnvironmentE.setDevopsSyncCommit(devopsEnvCommitE.getId());
             //更新环境 解释commit
             devopsEnvironmentRepository.update(devopsEnvironmentE);
+            //释放锁与解释commit一起提交
+            devopsEnvironmentRepository.unlockSync(devopsEnvironmentE.getId());
+            unlocked = true;
+            gitOpsSyncMetrics.completed();
         } catch (Exception e) {
             throw new CommonException(e.getMessage());
+        } finally {
+            gitOpsCommitIndex.close(path);
+            if (!unlocked) {
+                inNewTransaction(status -> {
+                    devopsEnvironmentRepository.unlockSync(devopsEnvironmentE.getId());
+                    return null;
+                });
+            }
         }
 
         // do sth to files
     }
 
 
+    /**
+     * 环境的最新提交已解释，或者比本次推送的提交更新时不需要同步
+     *
+     * @param devopsEnvironmentE 环境
+     * @param checkoutSha        本次推送的提交
+     * @return 是否跳过
+     */
+    private boolean isSyncedOrSuperseded(DevopsEnvironmentE devopsEnvironmentE, String checkoutSha) {
+        Long gitCommit = devopsEnvironmentE.getGitCommit();
+        if (gitCommit == null) {
+            return false;
+        }
+        if (gitCommit.equals(devopsEnvironmentE.getDevopsSyncCommit())) {
+            return true;
+        }
+        DevopsEnvCommitE pushedCommit = devopsEnvCommitRepository.queryByEnvIdAndCommit(
+                devopsEnvironmentE.getId(), checkoutSha);
+        return pushedCommit != null && gitCommit > pushedCommit.getId();
+    }
+
+    /**
+     * 在新事务中加锁、释放锁，不受saga任务事务的提交和回滚影响
+     *
+     * @param callback 操作
+     * @param <T>      结果类型
+     * @return 结果
+     */
+    private <T> T inNewTransaction(TransactionCallback<T> callback) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transactionTemplate.execute(callback);
+    }
+
+    /**
+     * 将devops-sync标签移动到本次同步的提交
+     *
+     * @param gitLabProjectId gitlab项目id
+     * @param commitSha       本次同步的提交
+     * @param gitLabUserId    gitlab用户id
+     */
+    private void moveSyncTag(Integer gitLabProjectId, String commitSha, Integer gitLabUserId) {
+        try {
+            devopsGitRepository.deleteTag(gitLabProjectId, GitUtil.DEVOPS_GITOPS_TAG, gitLabUserId);
+        } catch (Exception e) {
+            //tag不存在时删除失败，直接创建；确实未删除时创建会失败
+            LOGGER.warn("delete {} of gitlab project {} failed", GitUtil.DEVOPS_GITOPS_TAG, gitLabProjectId, e);
+        }
+        devopsGitRepository.createTag(gitLabProjectId, GitUtil.DEVOPS_GITOPS_TAG, commitSha, gitLabUserId);
+    }
+
     private void commitBranchSync(PushWebHookDTO pushWebHookDTO, Long appId) {
         try {
             String branchName = pushWebHookDTO.getRef().replaceFirst(REF_HEADS, "");
@@ -520,157 +639,136 @@ public class DevopsGitServiceImpl implements DevopsGitService {
         }
     }
 
-    private void handDevopsEnvGitRepository(String path, String url, String envIdRsa, String commit) {
-        File file = new File(path);
-        GitUtil gitUtil = new GitUtil(envIdRsa);
-        final String gitSuffix = "/.git";
-        final String repoPath = path + gitSuffix;
-        if (!file.exists()) {
-            gitUtil.cloneBySsh(path, url);
-            gitUtil.checkout(repoPath, commit);
-        } else {
-            gitUtil.checkout(repoPath, "master");
-            gitUtil.pullBySsh(repoPath);
-            gitUtil.checkout(repoPath, commit);
-        }
-    }
-
     private void handleFilesToObject(List<String> files,
                                      String path,
+                                     RevCommit revCommit,
                                      List<C7nHelmRelease> c7nHelmReleases,
                                      List<V1Service> v1Services,
                                      List<V1beta1Ingress> v1beta1Ingresses,
                                      Map<String, String> objectPath,
                                      Long envId) {
-        files.parallelStream().forEach(filePath -> {
-            File file = new File(String.format("%s/%s", path, filePath));
-            DevopsEnvFileErrorE devopsEnvFileErrorE = getDevopsFileError(envId, filePath, path);
-            try {
-                //从数据库中查出
-                for (Object data : yaml.loadAll(new FileInputStream(file))) {
-                    JSONObject jsonObject = new JSONObject((Map<String, Object>) data);
-                    String type = jsonObject.get("kind").toString();
-                    switch (type) {
-                        case "C7NHelmRelease":
-                            C7nHelmRelease c7nHelmRelease = new C7nHelmRelease();
-                            SerializableOperation<C7nHelmRelease> c7nHelmReleaseSerializableOperation
-                                    = new SerializableOperation<>();
-                            c7nHelmReleaseSerializableOperation.setT(c7nHelmRelease);
-                            c7nHelmReleases.add(c7nHelmReleaseSerializableOperation
-                                    .serializable(jsonObject.toJSONString(), filePath, objectPath, devopsEnvFileErrorE));
-                            break;
-                        case "Ingress":
-                            V1beta1Ingress v1beta1Ingress = new V1beta1Ingress();
-                            SerializableOperation<V1beta1Ingress> v1beta1IngressSerializableOperation
-                                    = new SerializableOperation<>();
-                            v1beta1IngressSerializableOperation.setT(v1beta1Ingress);
-                            v1beta1Ingresses.add(v1beta1IngressSerializableOperation
-                                    .serializable(jsonObject.toJSONString(), filePath, objectPath, devopsEnvFileErrorE));
-                            break;
-                        case "Service":
-                            V1Service v1Service = new V1Service();
-                            SerializableOperation<V1Service> v1ServiceSerializableOperation =
-                                    new SerializableOperation<>();
-                            v1ServiceSerializableOperation.setT(v1Service);
-                            v1Services.add(v1ServiceSerializableOperation
-                                    .serializable(jsonObject.toJSONString(), filePath, objectPath, devopsEnvFileErrorE));
-                            break;
-                        default:
-                            break;
-                    }
-                }
-                if (devopsEnvFileErrorE.getError() != null) {
-                    devopsEnvFileErrorRepository.create(devopsEnvFileErrorE);
-                    throw new CommonException(devopsEnvFileErrorE.getError());
-                }
-            } catch (Exception e) {
-                throw new CommonException(e.getMessage());
+        Repository repository = gitOpsRepositoryPool.getRepository(path);
+        Map<String, ObjectId> blobs = gitOpsRepositoryPool.resolveFiles(repository, revCommit, files);
+        List<ParsedFile> parsedFiles = gitOpsManifestParser.parse(files, filePath -> {
+            ObjectId blobId = blobs.get(filePath);
+            if (blobId == null) {
+                throw new CommonException("error.git.file.not.found");
             }
+            return gitOpsRepositoryPool.openBlob(repository, blobId);
         });
+        //按文件顺序合并解析结果，所有出错的文件都记录错误后再中断本次解释
+        String error = null;
+        for (ParsedFile parsedFile : parsedFiles) {
+            String filePath = parsedFile.getFilePath();
+            if (parsedFile.getError() != null) {
+                DevopsEnvFileErrorE devopsEnvFileErrorE = getDevopsFileError(envId, filePath, path);
+                devopsEnvFileErrorE.setError(parsedFile.getError());
+                devopsEnvFileErrorRepository.create(devopsEnvFileErrorE);
+                error = error == null ? parsedFile.getError() : error;
+                continue;
+            }
+            parsedFile.getC7nHelmReleases().forEach(t -> {
+                objectPath.put(TypeUtil.objToString(t.hashCode()), filePath);
+                c7nHelmReleases.add(t);
+            });
+            parsedFile.getV1Services().forEach(t -> {
+                objectPath.put(TypeUtil.objToString(t.hashCode()), filePath);
+                v1Services.add(t);
+            });
+            parsedFile.getV1beta1Ingresses().forEach(t -> {
+                objectPath.put(TypeUtil.objToString(t.hashCode()), filePath);
+                v1beta1Ingresses.add(t);
+            });
+        }
+        if (error != null) {
+            throw new CommonException(error);
+        }
     }
 
 
+    private GitOpsEnvSnapshot loadEnvSnapshot(Long envId) {
+        return new GitOpsEnvSnapshot(envId,
+                applicationInstanceRepository.selectByEnvId(envId),
+                devopsServiceRepository.listByEnvId(envId),
+                devopsIngressRepository.listByEnvId(envId),
+                devopsEnvFileResourceRepository.listByEnvId(envId),
+                devopsEnvFileErrorRepository.listByEnvId(envId));
+    }
+
     private void handlerObjectRelations(Map<String, String> objectPath,
                                         List<DevopsEnvFileResourceE> beforeSync,
                                         List<C7nHelmRelease> c7nHelmReleases,
                                         List<V1Service> v1Services,
                                         List<V1beta1Ingress> v1beta1Ingresses,
-                                        Long envId, Long projectId, String path) {
-        handlerC7nReleaseRelations(objectPath, beforeSync, c7nHelmReleases, envId, projectId);
-        handlerServiceRelations(objectPath, beforeSync, v1Services, envId, projectId, path);
-        handlerIngressRelations(objectPath, beforeSync, v1beta1Ingresses, envId, projectId, path);
+                                        Long envId, Long projectId, String path,
+                                        GitOpsEnvSnapshot snapshot) {
+        //文件资源关系在所有对象处理成功后批量写入，中途出错时不写入，由saga重试重新解释
+        handlerC7nReleaseRelations(objectPath, beforeSync, c7nHelmReleases, envId, projectId, snapshot);
+        handlerServiceRelations(objectPath, beforeSync, v1Services, envId, projectId, path, snapshot);
+        handlerIngressRelations(objectPath, beforeSync, v1beta1Ingresses, envId, projectId, path, snapshot);
+        snapshot.apply(devopsEnvFileResourceRepository);
+    }
+
+    private Set<String> getBeforeSyncNames(List<DevopsEnvFileResourceE> beforeSync, String resourceType,
+                                           Function<Long, String> nameGetter) {
+        return beforeSync.stream()
+                .filter(devopsEnvFileResourceE -> devopsEnvFileResourceE.getResourceType().equals(resourceType))
+                .map(devopsEnvFileResourceE -> nameGetter.apply(devopsEnvFileResourceE.getResourceId()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     private void handlerServiceRelations(Map<String, String> objectPath,
                                          List<DevopsEnvFileResourceE> beforeSync,
                                          List<V1Service> v1Services,
-                                         Long envId, Long projectId, String path) {
-        List<String> beforeService = beforeSync.parallelStream()
-                .filter(devopsEnvFileResourceE -> devopsEnvFileResourceE.getResourceType().equals("Service"))
-                .map(devopsEnvFileResourceE -> {
-                    DevopsServiceE devopsServiceE = devopsServiceRepository
-                            .query(devopsEnvFileResourceE.getResourceId());
-                    return devopsServiceE.getName();
-                }).collect(Collectors.toList());
+                                         Long envId, Long projectId, String path,
+                                         GitOpsEnvSnapshot snapshot) {
+        Set<String> beforeService = getBeforeSyncNames(beforeSync, "Service", id -> {
+            DevopsServiceE devopsServiceE = snapshot.getService(id);
+            return devopsServiceE == null ? null : devopsServiceE.getName();
+        });
 
-        v1Services.parallelStream()
-                .filter(v1Service -> !beforeService.contains(v1Service.getMetadata().getName()))
-                .forEach(v1Service -> {
-                    DevopsEnvFileErrorE devopsEnvFileErrorE = getDevopsFileError(envId, objectPath.get(TypeUtil.objToString(v1Service.hashCode())), path);
-                    checkServiceName(devopsEnvFileErrorE, v1Service);
-                    DevopsServiceE devopsServiceE = devopsServiceRepository
-                            .selectByNameAndEnvId(v1Service.getMetadata().getName(), envId);
-                    DevopsServiceReqDTO devopsServiceReqDTO;
-                    if (devopsServiceE == null) {
-                        devopsServiceReqDTO = getDevopsServiceDTO(
-                                v1Service,
-                                envId,
-                                devopsEnvFileErrorE);
-                        if (devopsEnvFileErrorE.getError() != null) {
-                            devopsEnvFileErrorRepository.create(devopsEnvFileErrorE);
-                            throw new CommonException(devopsEnvFileErrorE.getError());
-                        }
-                        devopsServiceService.insertDevopsService(projectId, devopsServiceReqDTO, true);
-                        devopsServiceE = devopsServiceRepository.selectByNameAndEnvId(
-                                devopsServiceReqDTO.getName(), envId);
-                    }
-                    DevopsEnvFileResourceE devopsEnvFileResourceE = new DevopsEnvFileResourceE();
-                    devopsEnvFileResourceE.setEnvironment(new DevopsEnvironmentE(envId));
-                    devopsEnvFileResourceE.setFilePath(objectPath.get(TypeUtil.objToString(v1Service.hashCode())));
-                    devopsEnvFileResourceE.setResourceId(devopsServiceE.getId());
-                    devopsEnvFileResourceE.setResourceType(v1Service.getKind());
-                    devopsEnvFileResourceRepository.createFileResource(devopsEnvFileResourceE);
-                });
-        v1Services.parallelStream()
-                .filter(v1Service -> beforeService.contains(v1Service.getMetadata().getName()))
-                .forEach(v1Service -> {
-                    DevopsEnvFileErrorE devopsEnvFileErrorE = getDevopsFileError(envId, objectPath.get(TypeUtil.objToString(v1Service.hashCode())), path);
-                    beforeService.remove(v1Service.getMetadata().getName());
-                    checkServiceName(devopsEnvFileErrorE, v1Service);
+        for (V1Service v1Service : v1Services) {
+            String filePath = objectPath.get(TypeUtil.objToString(v1Service.hashCode()));
+            String serviceName = v1Service.getMetadata().getName();
+            DevopsEnvFileErrorE devopsEnvFileErrorE = getDevopsFileError(envId, filePath, path, snapshot);
+            checkServiceName(devopsEnvFileErrorE, v1Service);
+            DevopsServiceE devopsServiceE = snapshot.getService(serviceName);
+            if (!beforeService.remove(serviceName)) {
+                if (devopsServiceE == null) {
                     DevopsServiceReqDTO devopsServiceReqDTO = getDevopsServiceDTO(
                             v1Service,
                             envId,
-                            devopsEnvFileErrorE);
+                            devopsEnvFileErrorE,
+                            snapshot);
                     if (devopsEnvFileErrorE.getError() != null) {
                         devopsEnvFileErrorRepository.create(devopsEnvFileErrorE);
                         throw new CommonException(devopsEnvFileErrorE.getError());
                     }
-                    DevopsServiceE devopsServiceE = devopsServiceRepository
-                            .selectByNameAndEnvId(v1Service.getMetadata().getName(), envId);
-                    devopsServiceService.updateDevopsService(
-                            projectId, devopsServiceE.getId(), devopsServiceReqDTO, true);
-                    DevopsEnvFileResourceE devopsEnvFileResourceE = devopsEnvFileResourceRepository
-                            .queryByEnvIdAndResource(envId, devopsServiceE.getId(), v1Service.getKind());
-                    updateOrCreateFileResource(objectPath,
-                            envId,
-                            devopsEnvFileResourceE,
-                            v1Service.hashCode(), devopsServiceE.getId(), v1Service.getKind());
-                });
-        beforeService.parallelStream().forEach(serviceName -> {
-            DevopsServiceE devopsServiceE = devopsServiceRepository.selectByNameAndEnvId(serviceName, envId);
+                    devopsServiceService.insertDevopsService(projectId, devopsServiceReqDTO, true);
+                    devopsServiceE = devopsServiceRepository.selectByNameAndEnvId(serviceName, envId);
+                    snapshot.putService(devopsServiceE);
+                }
+            } else {
+                DevopsServiceReqDTO devopsServiceReqDTO = getDevopsServiceDTO(
+                        v1Service,
+                        envId,
+                        devopsEnvFileErrorE,
+                        snapshot);
+                if (devopsEnvFileErrorE.getError() != null) {
+                    devopsEnvFileErrorRepository.create(devopsEnvFileErrorE);
+                    throw new CommonException(devopsEnvFileErrorE.getError());
+                }
+                devopsServiceService.updateDevopsService(
+                        projectId, devopsServiceE.getId(), devopsServiceReqDTO, true);
+            }
+            snapshot.saveFileResource(filePath, devopsServiceE.getId(), v1Service.getKind());
+        }
+        for (String serviceName : beforeService) {
+            DevopsServiceE devopsServiceE = snapshot.getService(serviceName);
             devopsServiceService.deleteDevopsService(devopsServiceE.getId(), true);
-            devopsEnvFileResourceRepository.deleteByEnvIdAndResource(envId, devopsServiceE.getId(), "Service");
-        });
+            snapshot.deleteFileResource(devopsServiceE.getId(), "Service");
+        }
     }
 
     private void checkServiceName(
@@ -686,7 +784,8 @@ public class DevopsGitServiceImpl implements DevopsGitService {
     }
 
     private ApplicationDeployDTO getApplicationDeployDTO(C7nHelmRelease c7nHelmRelease,
-                                                         Long projectId, Long envId, String type) {
+                                                         Long projectId, Long envId, String type,
+                                                         GitOpsEnvSnapshot snapshot) {
         ProjectE projectE = iamRepository.queryIamProject(projectId);
         Organization organization = iamRepository.queryOrganizationById(projectE.getOrganization().getId());
         ApplicationE applicationE = deployMsgHandlerService.getApplication(c7nHelmRelease.getSpec().getChartName(), projectId, organization.getId());
@@ -707,8 +806,7 @@ public class DevopsGitServiceImpl implements DevopsGitService {
         applicationDeployDTO.setAppVerisonId(applicationVersionE.getId());
         applicationDeployDTO.setInstanceName(c7nHelmRelease.getMetadata().getName());
         if (type.equals("update")) {
-            ApplicationInstanceE applicationInstanceE = applicationInstanceRepository
-                    .selectByCode(c7nHelmRelease.getMetadata().getName(), envId);
+            ApplicationInstanceE applicationInstanceE = snapshot.getInstance(c7nHelmRelease.getMetadata().getName());
             applicationDeployDTO.setAppInstanceId(applicationInstanceE.getId());
         }
         return applicationDeployDTO;
@@ -718,93 +816,60 @@ public class DevopsGitServiceImpl implements DevopsGitService {
     private void handlerC7nReleaseRelations(Map<String, String> objectPath,
                                             List<DevopsEnvFileResourceE> beforeSync,
                                             List<C7nHelmRelease> c7nHelmReleases,
-                                            Long envId, Long projectId) {
-        List<String> beforeC7nRelease = beforeSync.parallelStream()
-                .filter(devopsEnvFileResourceE -> devopsEnvFileResourceE.getResourceType().equals("C7NHelmRelease"))
-                .map(devopsEnvFileResourceE -> {
-                    ApplicationInstanceE applicationInstanceE = applicationInstanceRepository
-                            .selectById(devopsEnvFileResourceE.getResourceId());
-                    return applicationInstanceE.getCode();
-                }).collect(Collectors.toList());
-        c7nHelmReleases.parallelStream()
-                .filter(c7nHelmRelease -> !beforeC7nRelease.contains(c7nHelmRelease.getMetadata().getName()))
-                .forEach(c7nHelmRelease -> {
-                    ApplicationInstanceE applicationInstanceE = applicationInstanceRepository
-                            .selectByCode(c7nHelmRelease.getMetadata().getName(), envId);
-                    ApplicationDeployDTO applicationDeployDTO;
-                    ApplicationInstanceDTO applicationInstanceDTO = new ApplicationInstanceDTO();
-                    if (applicationInstanceE == null) {
-                        applicationDeployDTO = getApplicationDeployDTO(
-                                c7nHelmRelease,
-                                projectId,
-                                envId,
-                                "create");
-                        if (applicationDeployDTO == null) {
-                            return;
-                        }
-                        applicationInstanceDTO = applicationInstanceService.create(applicationDeployDTO, true);
-                    } else {
-                        applicationInstanceDTO.setId(applicationInstanceE.getId());
-                    }
-                    DevopsEnvFileResourceE devopsEnvFileResourceE = new DevopsEnvFileResourceE();
-                    devopsEnvFileResourceE.setEnvironment(new DevopsEnvironmentE(envId));
-                    devopsEnvFileResourceE.setFilePath(objectPath.get(TypeUtil.objToString(c7nHelmRelease.hashCode())));
-                    devopsEnvFileResourceE.setResourceId(applicationInstanceDTO.getId());
-                    devopsEnvFileResourceE.setResourceType(c7nHelmRelease.getKind());
-                    devopsEnvFileResourceRepository.createFileResource(devopsEnvFileResourceE);
-                });
-        c7nHelmReleases.parallelStream()
-                .filter(c7nHelmRelease -> beforeC7nRelease.contains(c7nHelmRelease.getMetadata().getName()))
-                .forEach(c7nHelmRelease -> {
-                    beforeC7nRelease.remove(c7nHelmRelease.getMetadata().getName());
+                                            Long envId, Long projectId,
+                                            GitOpsEnvSnapshot snapshot) {
+        Set<String> beforeC7nRelease = getBeforeSyncNames(beforeSync, "C7NHelmRelease", id -> {
+            ApplicationInstanceE applicationInstanceE = snapshot.getInstance(id);
+            return applicationInstanceE == null ? null : applicationInstanceE.getCode();
+        });
+        for (C7nHelmRelease c7nHelmRelease : c7nHelmReleases) {
+            String filePath = objectPath.get(TypeUtil.objToString(c7nHelmRelease.hashCode()));
+            String releaseName = c7nHelmRelease.getMetadata().getName();
+            Long instanceId;
+            if (!beforeC7nRelease.remove(releaseName)) {
+                ApplicationInstanceE applicationInstanceE = snapshot.getInstance(releaseName);
+                if (applicationInstanceE == null) {
                     ApplicationDeployDTO applicationDeployDTO = getApplicationDeployDTO(
                             c7nHelmRelease,
                             projectId,
                             envId,
-                            "update");
+                            "create",
+                            snapshot);
                     if (applicationDeployDTO == null) {
-                        return;
+                        continue;
                     }
-                    DevopsEnvCommandE devopsEnvCommandE = devopsEnvCommandRepository.queryByObject(ObjectType.INSTANCE.getType(), applicationDeployDTO.getAppInstanceId());
+                    instanceId = applicationInstanceService.create(applicationDeployDTO, true).getId();
+                    snapshot.putInstance(applicationInstanceRepository.selectById(instanceId));
+                } else {
+                    instanceId = applicationInstanceE.getId();
+                }
+            } else {
+                ApplicationDeployDTO applicationDeployDTO = getApplicationDeployDTO(
+                        c7nHelmRelease,
+                        projectId,
+                        envId,
+                        "update",
+                        snapshot);
+                if (applicationDeployDTO == null) {
+                    continue;
+                }
+                instanceId = applicationDeployDTO.getAppInstanceId();
+                DevopsEnvCommandE devopsEnvCommandE = devopsEnvCommandRepository.queryByObject(ObjectType.INSTANCE.getType(), instanceId);
 
-                    if (!devopsEnvCommandE.getCommandType().equals(CommandType.SYNC.getType())) {
-                        applicationInstanceService
-                                .create(applicationDeployDTO, true);
-                    }
-                    DevopsEnvFileResourceE devopsEnvFileResourceE = devopsEnvFileResourceRepository
-                            .queryByEnvIdAndResource(envId, applicationDeployDTO.getAppInstanceId(), c7nHelmRelease.getKind());
-                    updateOrCreateFileResource(objectPath, envId,
-                            devopsEnvFileResourceE,
-                            c7nHelmRelease.hashCode(), applicationDeployDTO.getAppInstanceId(),
-                            c7nHelmRelease.getKind());
-                });
-        beforeC7nRelease.parallelStream().forEach(releaseName -> {
-            ApplicationInstanceE applicationInstanceE = applicationInstanceRepository.selectByCode(releaseName, envId);
+                if (!devopsEnvCommandE.getCommandType().equals(CommandType.SYNC.getType())) {
+                    applicationInstanceService
+                            .create(applicationDeployDTO, true);
+                }
+            }
+            snapshot.saveFileResource(filePath, instanceId, c7nHelmRelease.getKind());
+        }
+        for (String releaseName : beforeC7nRelease) {
+            ApplicationInstanceE applicationInstanceE = snapshot.getInstance(releaseName);
             DevopsEnvCommandE devopsEnvCommandE = devopsEnvCommandRepository.queryByObject(ObjectType.INSTANCE.getType(), applicationInstanceE.getId());
             if (!devopsEnvCommandE.getCommandType().equals(CommandType.DELETE)) {
                 applicationInstanceService.instanceDelete(applicationInstanceE.getId(), true);
             }
-            devopsEnvFileResourceRepository
-                    .deleteByEnvIdAndResource(envId, applicationInstanceE.getId(), "C7NHelmRelease");
-        });
-    }
-
-    private void updateOrCreateFileResource(Map<String, String> objectPath,
-                                            Long envId,
-                                            DevopsEnvFileResourceE devopsEnvFileResourceE,
-                                            Integer i, Long id, String kind) {
-        if (devopsEnvFileResourceE != null) {
-            devopsEnvFileResourceE.setFilePath(objectPath.get(
-                    TypeUtil.objToString(i)));
-            devopsEnvFileResourceRepository.updateFileResource(devopsEnvFileResourceE);
-        } else {
-            devopsEnvFileResourceE = new DevopsEnvFileResourceE();
-            devopsEnvFileResourceE.setEnvironment(new DevopsEnvironmentE(envId));
-            devopsEnvFileResourceE.setFilePath(objectPath.get(
-                    TypeUtil.objToString(i)));
-            devopsEnvFileResourceE.setResourceId(id);
-            devopsEnvFileResourceE.setResourceType(kind);
-            devopsEnvFileResourceRepository.createFileResource(devopsEnvFileResourceE);
+            snapshot.deleteFileResource(applicationInstanceE.getId(), "C7NHelmRelease");
         }
     }
 
@@ -812,71 +877,52 @@ public class DevopsGitServiceImpl implements DevopsGitService {
     private void handlerIngressRelations(Map<String, String> objectPath,
                                          List<DevopsEnvFileResourceE> beforeSync,
                                          List<V1beta1Ingress> v1beta1Ingresses,
-                                         Long envId, Long projectId, String path) {
-        List<String> beforeIngress = beforeSync.parallelStream()
-                .filter(devopsEnvFileResourceE -> devopsEnvFileResourceE.getResourceType().equals("Ingress"))
-                .map(devopsEnvFileResourceE -> {
-                    DevopsIngressDO devopsIngressDO = devopsIngressRepository
-                            .getIngress(devopsEnvFileResourceE.getResourceId());
-                    return devopsIngressDO.getName();
-                }).collect(Collectors.toList());
-        v1beta1Ingresses.parallelStream()
-                .filter(v1beta1Ingress -> !beforeIngress.contains(v1beta1Ingress.getMetadata().getName()))
-                .forEach(v1beta1Ingress -> {
-                    DevopsEnvFileErrorE devopsEnvFileErrorE = getDevopsFileError(envId, objectPath.get(TypeUtil.objToString(v1beta1Ingress.hashCode())), path);
-                    checkIngressAppVersion(devopsEnvFileErrorE, v1beta1Ingress);
-                    DevopsIngressE devopsIngressE = devopsIngressRepository
-                            .selectByEnvAndName(envId, v1beta1Ingress.getMetadata().getName());
-                    DevopsIngressDTO devopsIngressDTO;
-                    if (devopsIngressE == null) {
-                        devopsIngressDTO = getDevopsIngressDTO(
-                                v1beta1Ingress,
-                                envId,
-                                devopsEnvFileErrorE);
-                        if (devopsEnvFileErrorE.getError() != null) {
-                            devopsEnvFileErrorRepository.create(devopsEnvFileErrorE);
-                            throw new CommonException(devopsEnvFileErrorE.getError());
-                        }
-                        devopsIngressService.addIngress(devopsIngressDTO, projectId, true);
-                        devopsIngressE = devopsIngressRepository
-                                .selectByEnvAndName(envId, v1beta1Ingress.getMetadata().getName());
-                    }
-                    DevopsEnvFileResourceE devopsEnvFileResourceE = new DevopsEnvFileResourceE();
-                    devopsEnvFileResourceE.setEnvironment(new DevopsEnvironmentE(envId));
-                    devopsEnvFileResourceE.setFilePath(objectPath.get(TypeUtil.objToString(v1beta1Ingress.hashCode())));
-                    devopsEnvFileResourceE.setResourceId(devopsIngressE.getId());
-                    devopsEnvFileResourceE.setResourceType(v1beta1Ingress.getKind());
-                    devopsEnvFileResourceRepository.createFileResource(devopsEnvFileResourceE);
-                });
-        v1beta1Ingresses.parallelStream()
-                .filter(v1beta1Ingress -> beforeIngress.contains(v1beta1Ingress.getMetadata().getName()))
-                .forEach(v1beta1Ingress -> {
-                    beforeIngress.remove(v1beta1Ingress.getMetadata().getName());
-                    DevopsEnvFileErrorE devopsEnvFileErrorE = getDevopsFileError(envId, objectPath.get(TypeUtil.objToString(v1beta1Ingress.hashCode())), path);
-                    checkIngressAppVersion(devopsEnvFileErrorE, v1beta1Ingress);
+                                         Long envId, Long projectId, String path,
+                                         GitOpsEnvSnapshot snapshot) {
+        Set<String> beforeIngress = getBeforeSyncNames(beforeSync, "Ingress", id -> {
+            DevopsIngressE devopsIngressE = snapshot.getIngress(id);
+            return devopsIngressE == null ? null : devopsIngressE.getName();
+        });
+        for (V1beta1Ingress v1beta1Ingress : v1beta1Ingresses) {
+            String filePath = objectPath.get(TypeUtil.objToString(v1beta1Ingress.hashCode()));
+            String ingressName = v1beta1Ingress.getMetadata().getName();
+            DevopsEnvFileErrorE devopsEnvFileErrorE = getDevopsFileError(envId, filePath, path, snapshot);
+            checkIngressAppVersion(devopsEnvFileErrorE, v1beta1Ingress);
+            DevopsIngressE devopsIngressE = snapshot.getIngress(ingressName);
+            if (!beforeIngress.remove(ingressName)) {
+                if (devopsIngressE == null) {
                     DevopsIngressDTO devopsIngressDTO = getDevopsIngressDTO(
                             v1beta1Ingress,
                             envId,
-                            devopsEnvFileErrorE);
+                            devopsEnvFileErrorE,
+                            snapshot);
                     if (devopsEnvFileErrorE.getError() != null) {
                         devopsEnvFileErrorRepository.create(devopsEnvFileErrorE);
                         throw new CommonException(devopsEnvFileErrorE.getError());
                     }
-                    DevopsIngressE devopsIngressE = devopsIngressRepository
-                            .selectByEnvAndName(envId, v1beta1Ingress.getMetadata().getName());
-                    devopsIngressService.updateIngress(devopsIngressE.getId(), devopsIngressDTO, projectId, true);
-                    DevopsEnvFileResourceE devopsEnvFileResourceE = devopsEnvFileResourceRepository
-                            .queryByEnvIdAndResource(envId, devopsIngressE.getId(), v1beta1Ingress.getKind());
-                    updateOrCreateFileResource(objectPath,
-                            envId,
-                            devopsEnvFileResourceE,
-                            v1beta1Ingress.hashCode(), devopsIngressE.getId(), v1beta1Ingress.getKind());
-                });
-        beforeIngress.parallelStream().forEach(ingressName -> {
-            DevopsIngressE devopsIngressE = devopsIngressRepository.selectByEnvAndName(envId, ingressName);
+                    devopsIngressService.addIngress(devopsIngressDTO, projectId, true);
+                    devopsIngressE = devopsIngressRepository.selectByEnvAndName(envId, ingressName);
+                    snapshot.putIngress(devopsIngressE);
+                }
+            } else {
+                DevopsIngressDTO devopsIngressDTO = getDevopsIngressDTO(
+                        v1beta1Ingress,
+                        envId,
+                        devopsEnvFileErrorE,
+                        snapshot);
+                if (devopsEnvFileErrorE.getError() != null) {
+                    devopsEnvFileErrorRepository.create(devopsEnvFileErrorE);
+                    throw new CommonException(devopsEnvFileErrorE.getError());
+                }
+                devopsIngressService.updateIngress(devopsIngressE.getId(), devopsIngressDTO, projectId, true);
+            }
+            snapshot.saveFileResource(filePath, devopsIngressE.getId(), v1beta1Ingress.getKind());
+        }
+        for (String ingressName : beforeIngress) {
+            DevopsIngressE devopsIngressE = snapshot.getIngress(ingressName);
             devopsIngressService.deleteIngress(devopsIngressE.getId(), true);
-            devopsEnvFileResourceRepository.deleteByEnvIdAndResource(envId, devopsIngressE.getId(), "Ingress");
-        });
+            snapshot.deleteFileResource(devopsIngressE.getId(), "Ingress");
+        }
 
     }
 
@@ -896,7 +942,8 @@ public class DevopsGitServiceImpl implements DevopsGitService {
 
     private DevopsIngressDTO getDevopsIngressDTO(V1beta1Ingress v1beta1Ingress,
                                                  Long envId,
-                                                 DevopsEnvFileErrorE devopsEnvFileErrorE) {
+                                                 DevopsEnvFileErrorE devopsEnvFileErrorE,
+                                                 GitOpsEnvSnapshot snapshot) {
         DevopsIngressDTO devopsIngressDTO = new DevopsIngressDTO();
         devopsIngressDTO.setDomain(v1beta1Ingress.getSpec().getRules().get(0).getHost()
         );
@@ -916,9 +963,7 @@ public class DevopsGitServiceImpl implements DevopsGitService {
             } catch (Exception e) {
                 devopsEnvFileErrorE.setError(e.getMessage());
             }
-            DevopsEnvironmentE devopsEnvironmentE = devopsEnvironmentRepository.queryById(envId);
-            DevopsServiceE devopsServiceE = devopsServiceRepository.selectByNameAndNamespace(
-                    v1beta1HTTPIngressPath.getBackend().getServiceName(), devopsEnvironmentE.getCode());
+            DevopsServiceE devopsServiceE = snapshot.getService(v1beta1HTTPIngressPath.getBackend().getServiceName());
             DevopsIngressPathDTO devopsIngressPathDTO = new DevopsIngressPathDTO();
             devopsIngressPathDTO.setPath(v1beta1HTTPIngressPath.getPath());
 
@@ -932,7 +977,8 @@ public class DevopsGitServiceImpl implements DevopsGitService {
 
     private DevopsServiceReqDTO getDevopsServiceDTO(V1Service v1Service,
                                                     Long envId,
-                                                    DevopsEnvFileErrorE devopsEnvFileErrorE) {
+                                                    DevopsEnvFileErrorE devopsEnvFileErrorE,
+                                                    GitOpsEnvSnapshot snapshot) {
         DevopsServiceReqDTO devopsServiceReqDTO = new DevopsServiceReqDTO();
         if (v1Service.getSpec().getExternalIPs() != null) {
             devopsServiceReqDTO.setExternalIp(String.join(",", v1Service.getSpec().getExternalIPs()));
@@ -957,18 +1003,18 @@ public class DevopsGitServiceImpl implements DevopsGitService {
 
         String instancesCode = v1Service.getMetadata().getAnnotations().get("choerodon.io/network-service-instances");
         if (!instancesCode.isEmpty()) {
-            List<Long> instanceIdList = Arrays.stream(instancesCode.split("\\+")).parallel()
-                    .map(t -> getInstanceId(t, envId, devopsServiceReqDTO, devopsEnvFileErrorE))
+            List<Long> instanceIdList = Arrays.stream(instancesCode.split("\\+"))
+                    .map(t -> getInstanceId(t, devopsServiceReqDTO, devopsEnvFileErrorE, snapshot))
                     .collect(Collectors.toList());
             devopsServiceReqDTO.setAppInstance(instanceIdList);
         }
         return devopsServiceReqDTO;
     }
 
-    private Long getInstanceId(String instanceCode, Long envId, DevopsServiceReqDTO devopsServiceReqDTO,
-                               DevopsEnvFileErrorE devopsEnvFileErrorE) {
+    private Long getInstanceId(String instanceCode, DevopsServiceReqDTO devopsServiceReqDTO,
+                               DevopsEnvFileErrorE devopsEnvFileErrorE, GitOpsEnvSnapshot snapshot) {
         try {
-            ApplicationInstanceE instanceE = applicationInstanceRepository.selectByCode(instanceCode, envId);
+            ApplicationInstanceE instanceE = snapshot.getInstance(instanceCode);
             if (devopsServiceReqDTO.getAppId() == null) {
                 devopsServiceReqDTO.setAppId(instanceE.getApplicationE().getId());
             }
@@ -1022,8 +1068,19 @@ public class DevopsGitServiceImpl implements DevopsGitService {
     }
 
     public String getFileLatestCommit(String path, String filePath) {
-        String[] fileName = filePath.split("/");
-        return GitUtil.getLog(path, fileName[fileName.length - 1]);
+        return gitOpsCommitIndex.getLatestCommit(path, filePath);
+    }
+
+    private DevopsEnvFileErrorE getDevopsFileError(Long envId, String filePath, String path,
+                                                   GitOpsEnvSnapshot snapshot) {
+        DevopsEnvFileErrorE devopsEnvFileErrorE = snapshot.getFileError(filePath);
+        if (devopsEnvFileErrorE == null) {
+            devopsEnvFileErrorE = new DevopsEnvFileErrorE();
+            devopsEnvFileErrorE.setFilePath(filePath);
+            devopsEnvFileErrorE.setEnvId(envId);
+            devopsEnvFileErrorE.setCommit(getFileLatestCommit(path, filePath));
+        }
+        return devopsEnvFileErrorE;
     }
 
     public DevopsEnvFileErrorE getDevopsFileError(Long envId, String filePath, String path) {
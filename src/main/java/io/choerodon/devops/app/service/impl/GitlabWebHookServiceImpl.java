@@ -1,40 +1,62 @@
 package io.choerodon.devops.app.service.impl;
 
+import java.io.IOException;
+
 import com.alibaba.fastjson.JSONArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import io.choerodon.core.exception.CommonException;
 import io.choerodon.devops.api.dto.DevopsMergeRequestDTO;
 import io.choerodon.devops.api.dto.PushWebHookDTO;
 import io.choerodon.devops.app.service.GitlabWebHookService;
 import io.choerodon.devops.domain.application.repository.DevopsMergeRequestRepository;
+import io.choerodon.devops.infra.common.util.BoundedExecutor;
 
 @Service
-public class GitlabWebHookServiceImpl implements GitlabWebHookService {
+public class GitlabWebHookServiceImpl implements GitlabWebHookService, DisposableBean {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GitlabWebHookServiceImpl.class);
+    private static final String OBJECT_KIND = "object_kind";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
 
     @Autowired
     private DevopsMergeRequestRepository devopsMergeRequestRepository;
     @Autowired
     private DevopsGitServiceImpl devopsGitService;
 
+    private final boolean async;
+    private final BoundedExecutor executor;
+
+    public GitlabWebHookServiceImpl(@Value("${devops.webhook.async:false}") boolean async,
+                                    @Value("${devops.webhook.queue-capacity:500}") int queueCapacity) {
+        this.async = async;
+        //单线程按到达顺序处理，队列满时由请求线程处理，后台处理不等待结果，不设超时
+        this.executor = !async ? null : new BoundedExecutor("gitlab-webhook", 1, queueCapacity, 0L);
+    }
+
     @Override
     public void forwardingEventToPortal(String body, String token) {
-        LOGGER.info(body);
-        JsonObject returnData = new JsonParser().parse(body).getAsJsonObject();
-        String kind = returnData.get("object_kind").getAsString();
+        String kind = getObjectKind(body);
+        LOGGER.info("receive gitlab webhook {}, {} chars", kind, body.length());
+        LOGGER.debug(body);
         switch (kind) {
             case "merge_request":
-                DevopsMergeRequestDTO devopsMergeRequestDTO = JSONArray.parseObject(body, DevopsMergeRequestDTO.class);
-                devopsMergeRequestRepository.saveDevopsMergeRequest(devopsMergeRequestDTO);
+                handle(() -> devopsMergeRequestRepository.saveDevopsMergeRequest(
+                        JSONArray.parseObject(body, DevopsMergeRequestDTO.class)));
                 break;
             case "push":
-                devopsGitService.branchSync(JSONArray.parseObject(body, PushWebHookDTO.class), token);
+                handle(() -> devopsGitService.branchSync(JSONArray.parseObject(body, PushWebHookDTO.class), token));
+                break;
+            case "tag_push":
+                handle(() -> devopsGitService.tagSync(JSONArray.parseObject(body, PushWebHookDTO.class)));
                 break;
             default:
                 break;
@@ -43,11 +65,58 @@ public class GitlabWebHookServiceImpl implements GitlabWebHookService {
 
     @Override
     public void gitOpsWebHook(String body, String token) {
-        LOGGER.info(body);
-        JsonObject returnData = new JsonParser().parse(body).getAsJsonObject();
-        String kind = returnData.get("object_kind").getAsString();
+        String kind = getObjectKind(body);
+        LOGGER.info("receive gitops webhook {}, {} chars", kind, body.length());
+        LOGGER.debug(body);
         if ("push".equals(kind)) {
-            devopsGitService.fileResourceSyncSaga(JSONArray.parseObject(body, PushWebHookDTO.class), token);
+            handle(() -> devopsGitService.fileResourceSyncSaga(
+                    JSONArray.parseObject(body, PushWebHookDTO.class), token));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private void handle(Runnable task) {
+        if (!async) {
+            task.run();
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                LOGGER.error("handle gitlab webhook error", e);
+            }
+        });
+    }
+
+    /**
+     * 逐个读取顶层字段取出object_kind，读到后即停止，不解析整个body
+     *
+     * @param body webhook内容
+     * @return object_kind，不存在时返回空字符串
+     */
+    private static String getObjectKind(String body) {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new CommonException("error.webhook.body.invalid");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (OBJECT_KIND.equals(field)) {
+                    return value == JsonToken.VALUE_STRING ? parser.getText() : "";
+                }
+                parser.skipChildren();
+            }
+            return "";
+        } catch (IOException e) {
+            throw new CommonException("error.webhook.body.invalid", e);
         }
     }
 }
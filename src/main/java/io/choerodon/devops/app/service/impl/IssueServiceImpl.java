@@ -1,16 +1,16 @@
 package io.choerodon.devops.app.service.impl;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import io.choerodon.core.convertor.ConvertHelper;
+import io.choerodon.core.exception.CommonException;
 import io.choerodon.devops.api.dto.CommitDTO;
 import io.choerodon.devops.api.dto.CustomMergeRequestDTO;
 import io.choerodon.devops.api.dto.DevopsBranchDTO;
@@ -20,9 +20,9 @@ import io.choerodon.devops.domain.application.entity.ApplicationE;
 import io.choerodon.devops.domain.application.entity.DevopsMergeRequestE;
 import io.choerodon.devops.domain.application.entity.iam.UserE;
 import io.choerodon.devops.domain.application.repository.*;
+import io.choerodon.devops.infra.common.util.BranchCommitLoader;
 import io.choerodon.devops.infra.dataobject.DevopsBranchDO;
 import io.choerodon.devops.infra.dataobject.gitlab.CommitDO;
-import io.choerodon.devops.infra.feign.GitlabServiceClient;
 
 /**
  * Creator: chenwei
@@ -36,9 +36,6 @@ public class IssueServiceImpl implements IssueService {
     @Autowired
     private DevopsBranchRepository devopsBranchRepository;
 
-    @Autowired
-    private GitlabServiceClient gitlabServiceClient;
-
     @Autowired
     private DevopsGitRepository devopsGitRepository;
 
@@ -57,6 +54,9 @@ public class IssueServiceImpl implements IssueService {
     @Autowired
     private IamRepository iamRepository;
 
+    @Autowired
+    private BranchCommitLoader branchCommitLoader;
+
 
     @Override
     public IssueDTO countCommitAndMergeRequest(Long issueId) {
@@ -67,10 +67,10 @@ public class IssueServiceImpl implements IssueService {
             commitDTOS.addAll(devopsBranchDTO.getCommits());
             customMergeRequestDTOS.addAll(devopsBranchDTO.getMergeRequests());
         });
-        Optional<CommitDTO> commitDTO = commitDTOS.parallelStream().max(
+        Optional<CommitDTO> commitDTO = commitDTOS.stream().max(
                 (CommitDTO o1, CommitDTO o2) ->
                         o1.getCreatedAt().compareTo(o2.getCreatedAt()));
-        Optional<CustomMergeRequestDTO> customMergeRequestDTO = customMergeRequestDTOS.parallelStream().max(
+        Optional<CustomMergeRequestDTO> customMergeRequestDTO = customMergeRequestDTOS.stream().max(
                 (CustomMergeRequestDTO o1, CustomMergeRequestDTO o2) ->
                         o1.getUpdatedAt().compareTo(o2.getUpdatedAt())
         );
@@ -99,49 +99,103 @@ public class IssueServiceImpl implements IssueService {
     @Override
     public List<DevopsBranchDTO> getBranchsByIssueId(Long issueId) {
         List<DevopsBranchDO> devopsBranchDOs = devopsBranchRepository.getDevopsBranchsByIssueId(issueId);
-        List<DevopsBranchDTO> devopsBranchDTOS = new ArrayList<>();
-        devopsBranchDOs.forEach(devopsBranchDO -> {
-            Integer gitLabProjectId = devopsGitRepository.getGitLabId(devopsBranchDO.getAppId());
-            SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss zzz");
-            String sinceDate = simpleDateFormat.format(devopsBranchDO.getCheckoutDate());
-            List<CommitDO> commitDOs = gitlabServiceClient
-                    .getCommits(gitLabProjectId, devopsBranchDO.getBranchName(), sinceDate).getBody();
-            commitDOs = commitDOs.parallelStream().filter(commitDO ->
-                    !commitDO.getId().equals(devopsBranchDO.getCheckoutCommit()))
-                    .collect(Collectors.toList());
+        if (devopsBranchDOs.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, ApplicationE> apps = listApplications(devopsBranchDOs);
+        Map<Long, Integer> gitlabProjectIds = new HashMap<>();
+        apps.forEach((appId, app) -> gitlabProjectIds.put(appId, app.getGitlabProjectE().getId()));
+        //各分支的提交并发查询
+        Map<Long, List<CommitDO>> commits = branchCommitLoader.listCommits(devopsBranchDOs, gitlabProjectIds);
+        Map<Long, List<CustomMergeRequestDTO>> mergeRequests = listMergeRequests(devopsBranchDOs, apps);
+        return devopsBranchDOs.stream().map(devopsBranchDO -> {
             DevopsBranchDTO devopsBranchDTO = ConvertHelper.convert(devopsBranchDO, DevopsBranchDTO.class);
-            devopsBranchDTO.setCommits(ConvertHelper.convertList(commitDOs, CommitDTO.class));
-            ApplicationE app = applicationRepository.query(devopsBranchDO.getAppId());
-            devopsBranchDTO.setAppName(app.getName());
-            List<DevopsMergeRequestE> mergeRequests = devopsMergeRequestRepository.getBySourceBranch(
-                    devopsBranchDO.getBranchName(), (long) gitLabProjectId);
-            Long projectId = applicationRepository.query(devopsBranchDO.getAppId()).getProjectE().getId();
-            devopsBranchDTO.setMergeRequests(addAuthorNameAndAssigneeName(projectId,
-                    mergeRequests, devopsBranchDO.getAppId()));
-            devopsBranchDTOS.add(devopsBranchDTO);
-        });
-        return devopsBranchDTOS;
+            devopsBranchDTO.setCommits(ConvertHelper.convertList(
+                    commits.getOrDefault(devopsBranchDO.getId(), Collections.emptyList()), CommitDTO.class));
+            devopsBranchDTO.setAppName(apps.get(devopsBranchDO.getAppId()).getName());
+            devopsBranchDTO.setMergeRequests(mergeRequests.get(devopsBranchDO.getId()));
+            return devopsBranchDTO;
+        }).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<CustomMergeRequestDTO> getMergeRequestsByIssueId(Long issueId) {
+        List<DevopsBranchDO> devopsBranchDOs = devopsBranchRepository.getDevopsBranchsByIssueId(issueId);
+        if (devopsBranchDOs.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, List<CustomMergeRequestDTO>> mergeRequests =
+                listMergeRequests(devopsBranchDOs, listApplications(devopsBranchDOs));
+        List<CustomMergeRequestDTO> result = new ArrayList<>();
+        devopsBranchDOs.forEach(devopsBranchDO -> result.addAll(mergeRequests.get(devopsBranchDO.getId())));
+        return result;
+    }
+
+    /**
+     * 一次查出分支所属的应用
+     *
+     * @param devopsBranchDOs 分支
+     * @return 应用id -> 应用
+     */
+    private Map<Long, ApplicationE> listApplications(List<DevopsBranchDO> devopsBranchDOs) {
+        List<Long> appIds = devopsBranchDOs.stream()
+                .map(DevopsBranchDO::getAppId).distinct().collect(Collectors.toList());
+        Map<Long, ApplicationE> apps = applicationRepository.listByIds(appIds).stream()
+                .collect(Collectors.toMap(ApplicationE::getId, Function.identity()));
+        if (apps.size() != appIds.size()) {
+            throw new CommonException("error.application.select");
+        }
+        return apps;
     }
 
+    /**
+     * 按(gitlab项目, 源分支)一次查出各分支的合并请求，作者和审查人一次查出
+     *
+     * @param devopsBranchDOs 分支
+     * @param apps            应用id -> 应用
+     * @return 分支id -> 合并请求
+     */
+    private Map<Long, List<CustomMergeRequestDTO>> listMergeRequests(List<DevopsBranchDO> devopsBranchDOs,
+                                                                      Map<Long, ApplicationE> apps) {
+        Map<Long, Set<String>> sourceBranches = new HashMap<>();
+        devopsBranchDOs.forEach(devopsBranchDO -> sourceBranches.computeIfAbsent(
+                getGitlabProjectId(apps, devopsBranchDO), key -> new HashSet<>()).add(devopsBranchDO.getBranchName()));
+        Map<Long, Map<String, List<DevopsMergeRequestE>>> bySourceBranch = devopsMergeRequestRepository
+                .listBySourceBranches(sourceBranches).stream()
+                .collect(Collectors.groupingBy(DevopsMergeRequestE::getProjectId,
+                        Collectors.groupingBy(DevopsMergeRequestE::getSourceBranch)));
+        Map<Long, List<DevopsMergeRequestE>> mergeRequests = new HashMap<>();
+        devopsBranchDOs.forEach(devopsBranchDO -> mergeRequests.put(devopsBranchDO.getId(), bySourceBranch
+                .getOrDefault(getGitlabProjectId(apps, devopsBranchDO), Collections.emptyMap())
+                .getOrDefault(devopsBranchDO.getBranchName(), Collections.emptyList())));
+        Map<Long, UserE> users = devopsGitRepository.listUsersByGitlabUserIds(mergeRequests.values().stream()
+                .flatMap(List::stream)
+                .flatMap(t -> Stream.of(t.getAuthorId(), t.getAssigneeId()))
+                .collect(Collectors.toList()));
+        Map<Long, List<CustomMergeRequestDTO>> result = new HashMap<>();
+        devopsBranchDOs.forEach(devopsBranchDO -> result.put(devopsBranchDO.getId(), addAuthorNameAndAssigneeName(
+                mergeRequests.get(devopsBranchDO.getId()), devopsBranchDO.getAppId(), users)));
+        return result;
+    }
 
-    private List<CustomMergeRequestDTO> addAuthorNameAndAssigneeName(Long projectId,
-                                                                     List<DevopsMergeRequestE> devopsMergeRequestES,
-                                                                     Long applicationId) {
+    private Long getGitlabProjectId(Map<Long, ApplicationE> apps, DevopsBranchDO devopsBranchDO) {
+        return (long) apps.get(devopsBranchDO.getAppId()).getGitlabProjectE().getId();
+    }
+
+    private List<CustomMergeRequestDTO> addAuthorNameAndAssigneeName(List<DevopsMergeRequestE> devopsMergeRequestES,
+                                                                     Long applicationId,
+                                                                     Map<Long, UserE> users) {
         List<CustomMergeRequestDTO> mergeRequests = new ArrayList<>();
         devopsMergeRequestES.forEach(devopsMergeRequestE -> {
-            Long authorId = devopsMergeRequestE.getAuthorId();
-            Long assigneeId = devopsMergeRequestE.getAssigneeId();
             CustomMergeRequestDTO customMergeRequestDTO = new CustomMergeRequestDTO();
             customMergeRequestDTO.setApplicationId(applicationId);
-            if (authorId != null) {
-                UserE authorUser = iamRepository.queryUserByUserId(
-                        devopsGitRepository.getUserIdByGitlabUserId(authorId));
+            UserE authorUser = users.get(devopsMergeRequestE.getAuthorId());
+            if (authorUser != null) {
                 customMergeRequestDTO.setAuthorName(authorUser.getLoginName() + authorUser.getRealName());
                 customMergeRequestDTO.setImageUrl(authorUser.getImageUrl());
             }
-            if (assigneeId != null) {
-                UserE assigneeUser = iamRepository.queryUserByUserId(
-                        devopsGitRepository.getUserIdByGitlabUserId(assigneeId));
+            UserE assigneeUser = users.get(devopsMergeRequestE.getAssigneeId());
+            if (assigneeUser != null) {
                 customMergeRequestDTO.setAssigneeName(assigneeUser.getLoginName());
             }
             BeanUtils.copyProperties(devopsMergeRequestE, customMergeRequestDTO);
@@ -149,19 +203,4 @@ public class IssueServiceImpl implements IssueService {
         });
         return mergeRequests;
     }
-
-    @Override
-    public List<CustomMergeRequestDTO> getMergeRequestsByIssueId(Long issueId) {
-        List<DevopsBranchDO> devopsBranchDOs = devopsBranchRepository.getDevopsBranchsByIssueId(issueId);
-        List<CustomMergeRequestDTO> mergeRequests = new ArrayList<>();
-        devopsBranchDOs.forEach(devopsBranchDO -> {
-            Integer gitLabProjectId = devopsGitRepository.getGitLabId(devopsBranchDO.getAppId());
-            List<DevopsMergeRequestE> devopsMergeRequestES = devopsMergeRequestRepository.getBySourceBranch(
-                    devopsBranchDO.getBranchName(), (long) gitLabProjectId);
-            Long projectId = applicationRepository.query(devopsBranchDO.getAppId()).getProjectE().getId();
-            mergeRequests.addAll(addAuthorNameAndAssigneeName(projectId,
-                    devopsMergeRequestES, devopsBranchDO.getAppId()));
-        });
-        return mergeRequests;
-    }
 }
@@ -1,10 +1,9 @@
 package io.choerodon.devops.app.service.impl;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -26,6 +25,7 @@ import io.choerodon.devops.domain.application.valueobject.Organization;
 import io.choerodon.devops.domain.application.valueobject.PipelineResultV;
 import io.choerodon.devops.domain.application.valueobject.ProjectPipelineResultTotalV;
 import io.choerodon.devops.infra.common.util.GitUserNameUtil;
+import io.choerodon.devops.infra.common.util.PipelineViewLoader;
 import io.choerodon.devops.infra.common.util.TypeUtil;
 import io.choerodon.devops.infra.common.util.enums.JobStatus;
 import io.choerodon.devops.infra.dataobject.gitlab.CommitStatuseDO;
@@ -50,6 +50,8 @@ public class ProjectPipelineServiceImpl implements ProjectPipelineService {
     private UserAttrRepository userAttrRepository;
     @Autowired
     private DevopsGitRepository devopsGitRepository;
+    @Autowired
+    private PipelineViewLoader pipelineViewLoader;
 
 
     public Integer getGitlabUserId() {
@@ -67,37 +69,42 @@ public class ProjectPipelineServiceImpl implements ProjectPipelineService {
         Integer userId = getGitlabUserId();
         String userName = GitUserNameUtil.getUsername();
         Integer gitlabProjectId = app.getGitlabProjectE().getId();
-        List<BranchE> branchES = gitlabProjectRepository.listBranches(
-                gitlabProjectId, getGitlabUserId());
-        List<TagDO> tagTotalList = devopsGitRepository.getGitLabTags(gitlabProjectId, userId);
+        int page = pageRequest.getPage();
+        int size = pageRequest.getSize();
+        //互不依赖的请求并发执行
+        long deadline = pipelineViewLoader.deadline();
+        Future<List<BranchE>> branchesFuture = pipelineViewLoader.submit(() ->
+                gitlabProjectRepository.listBranches(gitlabProjectId, userId));
+        Future<List<TagDO>> tagsFuture = pipelineViewLoader.submit(() ->
+                devopsGitRepository.getTagList(appId, userId));
+        Future<List<GitlabPipelineE>> pipelinesFuture = pipelineViewLoader.submit(() ->
+                gitlabProjectRepository.listPipeline(gitlabProjectId, userId));
+        Future<List<GitlabPipelineE>> pagePipelinesFuture = pipelineViewLoader.submit(() ->
+                gitlabProjectRepository.listPipelines(gitlabProjectId, page + 1, size, userId));
+        Future<UserE> userFuture = pipelineViewLoader.submit(() -> iamRepository.queryByLoginName(userName));
+        Future<String> gitlabUrlFuture = pipelineViewLoader.submit(() -> getGitlabUrl(projectId, app));
+        List<BranchE> branchES = pipelineViewLoader.get(branchesFuture, deadline);
         if (branchES == null) {
             return new ProjectPipelineResultTotalDTO();
         }
-        int page = pageRequest.getPage();
-        int size = pageRequest.getSize();
-        List<GitlabPipelineE> gitlabPipelineEList =
-                gitlabProjectRepository.listPipeline(gitlabProjectId, getGitlabUserId());
-        List<GitlabPipelineE> gitlabPipelineEListByPage = gitlabProjectRepository.listPipelines(
-                gitlabProjectId, page + 1, size, getGitlabUserId());
-        List<String> branchNames = branchES.stream().map(BranchE::getName).collect(Collectors.toList());
-        List<String> tagNames = tagTotalList.stream().map(TagDO::getName).collect(Collectors.toList());
-        branchNames.addAll(tagNames);
-        List<PipelineResultV> pipelineResultVS = new ArrayList<>();
+        List<GitlabPipelineE> gitlabPipelineEListByPage = pipelineViewLoader.get(pagePipelinesFuture, deadline);
         if (gitlabPipelineEListByPage != null && !gitlabPipelineEListByPage.isEmpty()) {
-            listPipelineResultV(
-                    gitlabPipelineEListByPage,
-                    pipelineResultVS,
-                    app,
-                    gitlabProjectId,
-                    userId,
-                    projectId,
-                    userName);
-            branchNames.forEach(branchName -> {
-                final long[] id = {0};
-                gitlabPipelineEList.parallelStream()
-                        .filter(p -> branchName.contains(p.getRef()) && p.getId() > id[0])
-                        .forEach(r -> id[0] = r.getId());
-                pipelineResultVS.parallelStream().filter(p -> p.getId() == id[0]).forEach(r -> r.setLatest(true));
+            List<PipelineResultV> pipelineResultVS = listPipelineResultV(
+                    gitlabPipelineEListByPage, gitlabProjectId, userId, deadline);
+            List<GitlabPipelineE> gitlabPipelineEList = pipelineViewLoader.get(pipelinesFuture, deadline);
+            Set<Long> latestIds = getLatestPipelineIds(gitlabPipelineEList, branchES,
+                    pipelineViewLoader.get(tagsFuture, deadline));
+            UserE userE = pipelineViewLoader.get(userFuture, deadline);
+            String repoUrl = pipelineViewLoader.get(gitlabUrlFuture, deadline);
+            pipelineResultVS.forEach(pipelineResultV -> {
+                pipelineResultV.setAppCode(app.getCode());
+                pipelineResultV.setAppName(app.getName());
+                pipelineResultV.setAppStatus(app.getActive());
+                pipelineResultV.setLatest(latestIds.contains(pipelineResultV.getId()));
+                if (userE != null) {
+                    pipelineResultV.setImageUrl(userE.getImageUrl());
+                }
+                pipelineResultV.setGitlabUrl(repoUrl);
             });
             Collections.sort(pipelineResultVS);
             int allIndex = gitlabPipelineEList.size();
@@ -129,74 +136,100 @@ public class ProjectPipelineServiceImpl implements ProjectPipelineService {
     }
 
 
-    private void listPipelineResultV(List<GitlabPipelineE> gitlabPipelineEListByPage,
-                                     List<PipelineResultV> pipelineResultVS,
-                                     ApplicationE applicationE,
-                                     Integer gitlabProjectId,
-                                     Integer userId,
-                                     Long projectId,
-                                     String userName) {
-
-        gitlabPipelineEListByPage.parallelStream().forEach(gitlabPipeline -> {
-            GitlabPipelineE gitlabPipelineE =
-                    gitlabProjectRepository.getPipeline(gitlabProjectId, gitlabPipeline.getId(), userId);
-            PipelineResultV pipelineResultV = new PipelineResultV();
-            pipelineResultV.setGitlabProjectId(gitlabProjectId.longValue());
-            pipelineResultV.setAppCode(applicationE.getCode());
-            pipelineResultV.setAppName(applicationE.getName());
-            pipelineResultV.setAppStatus(applicationE.getActive());
-            pipelineResultV.setLatest(false);
-            pipelineResultV.setId(gitlabPipelineE.getId().longValue());
-            pipelineResultV.setStatus(gitlabPipelineE.getStatus().toString());
-            pipelineResultV.setCreateUser(gitlabPipelineE.getUser().getUsername());
-            pipelineResultV.setRef(gitlabPipelineE.getRef());
-            pipelineResultV.setSha(gitlabPipelineE.getSha());
-            pipelineResultV.setCreatedAt(gitlabPipelineE.getCreated_at());
-
-            List<GitlabJobE> jobs =
-                    gitlabProjectRepository.listJobs(gitlabProjectId, gitlabPipelineE.getId(), userId);
-            List<CommitStatuseDO> commitStatuseDOS = gitlabProjectRepository
-                    .getCommitStatuse(gitlabProjectId, gitlabPipelineE.getSha(), userId);
-            commitStatuseDOS.stream()
-                    .filter(commitStatuseDO ->
-                            commitStatuseDO.getRef().equals(pipelineResultV.getRef())
-                                    && commitStatuseDO.getName().equals(SONAR_QUBE))
-                    .forEach(commitStatuseDO -> {
-                        GitlabJobE gitlabJobE = new GitlabJobE();
-                        gitlabJobE.setName(commitStatuseDO.getName());
-                        gitlabJobE.setStatus(JobStatus.SUCCESS);
-                        gitlabJobE.setStage(commitStatuseDO.getName());
-                        if (commitStatuseDO.getStatus().equals(JobStatus.FAILED.toString())) {
-                            gitlabJobE.setStatus(JobStatus.FAILED);
-                        }
-                        gitlabJobE.setDescription(commitStatuseDO.getDescription());
-                        jobs.add(gitlabJobE);
-                    });
+    /**
+     * 各分支、tag上最新的流水线，一次遍历得出每个ref的最大流水线id
+     *
+     * @param gitlabPipelineEList 全部流水线
+     * @param branchES            分支
+     * @param tagDOS              tag
+     * @return 最新流水线的id
+     */
+    private Set<Long> getLatestPipelineIds(List<GitlabPipelineE> gitlabPipelineEList,
+                                           List<BranchE> branchES,
+                                           List<TagDO> tagDOS) {
+        Map<String, Long> latestByRef = new HashMap<>();
+        gitlabPipelineEList.forEach(p -> latestByRef.merge(p.getRef(), p.getId().longValue(), Math::max));
+        Set<Long> latestIds = new HashSet<>();
+        Stream.concat(branchES.stream().map(BranchE::getName), tagDOS.stream().map(TagDO::getName))
+                .map(latestByRef::get)
+                .filter(Objects::nonNull)
+                .forEach(latestIds::add);
+        return latestIds;
+    }
 
-            if (!jobs.isEmpty()) {
-                List<GitlabJobE> realJobs = getRealJobs(jobs);
-                pipelineResultV.setJobs(realJobs);
-                Long diffs = 0L;
-                for (Long diff : realJobs.stream().map(GitlabJobE::getJobTime).collect(Collectors.toList())) {
-                    diffs = diff + diffs;
-                }
-                pipelineResultV.setTime(getStageTime(diffs));
-            }
+    private String getGitlabUrl(Long projectId, ApplicationE applicationE) {
+        ProjectE projectE = iamRepository.queryIamProject(projectId);
+        Organization organization = iamRepository.queryOrganizationById(projectE.getOrganization().getId());
+        return gitlabUrl + "/"
+                + organization.getCode() + "-" + projectE.getCode() + "/"
+                + applicationE.getCode() + ".git";
+    }
 
-            UserE userE = iamRepository.queryByLoginName(userName);
-            if (userE != null) {
-                pipelineResultV.setImageUrl(userE.getImageUrl());
+    private List<PipelineResultV> listPipelineResultV(List<GitlabPipelineE> gitlabPipelineEListByPage,
+                                                      Integer gitlabProjectId,
+                                                      Integer userId,
+                                                      long deadline) {
+        List<PipelineResultV> pipelineResultVS = new ArrayList<>();
+        List<Future<PipelineResultV>> futures = new ArrayList<>();
+        gitlabPipelineEListByPage.forEach(gitlabPipeline -> {
+            //已结束且状态未变化的流水线直接取缓存
+            PipelineResultV cached = pipelineViewLoader.getFinished(
+                    gitlabProjectId, gitlabPipeline.getId().longValue(), gitlabPipeline.getStatus());
+            if (cached != null) {
+                pipelineResultVS.add(cached);
+            } else {
+                futures.add(pipelineViewLoader.submit(() ->
+                        getPipelineResultV(gitlabProjectId, gitlabPipeline.getId(), userId)));
             }
-
-            ProjectE projectE = iamRepository.queryIamProject(projectId);
-            Organization organization = iamRepository.queryOrganizationById(projectE.getOrganization().getId());
-            pipelineResultV.setGitlabUrl(gitlabUrl + "/"
-                    + organization.getCode() + "-" + projectE.getCode() + "/"
-                    + applicationE.getCode() + ".git");
-            pipelineResultVS.add(pipelineResultV);
         });
+        futures.forEach(future -> pipelineResultVS.add(pipelineViewLoader.get(future, deadline)));
+        return pipelineResultVS;
+    }
+
+    private PipelineResultV getPipelineResultV(Integer gitlabProjectId, Integer pipelineId, Integer userId) {
+        GitlabPipelineE gitlabPipelineE =
+                gitlabProjectRepository.getPipeline(gitlabProjectId, pipelineId, userId);
+        PipelineResultV pipelineResultV = new PipelineResultV();
+        pipelineResultV.setGitlabProjectId(gitlabProjectId.longValue());
+        pipelineResultV.setLatest(false);
+        pipelineResultV.setId(gitlabPipelineE.getId().longValue());
+        pipelineResultV.setStatus(gitlabPipelineE.getStatus().toString());
+        pipelineResultV.setCreateUser(gitlabPipelineE.getUser().getUsername());
+        pipelineResultV.setRef(gitlabPipelineE.getRef());
+        pipelineResultV.setSha(gitlabPipelineE.getSha());
+        pipelineResultV.setCreatedAt(gitlabPipelineE.getCreated_at());
 
+        List<GitlabJobE> jobs =
+                gitlabProjectRepository.listJobs(gitlabProjectId, gitlabPipelineE.getId(), userId);
+        List<CommitStatuseDO> commitStatuseDOS = gitlabProjectRepository
+                .getCommitStatuse(gitlabProjectId, gitlabPipelineE.getSha(), userId);
+        commitStatuseDOS.stream()
+                .filter(commitStatuseDO ->
+                        commitStatuseDO.getRef().equals(pipelineResultV.getRef())
+                                && commitStatuseDO.getName().equals(SONAR_QUBE))
+                .forEach(commitStatuseDO -> {
+                    GitlabJobE gitlabJobE = new GitlabJobE();
+                    gitlabJobE.setName(commitStatuseDO.getName());
+                    gitlabJobE.setStatus(JobStatus.SUCCESS);
+                    gitlabJobE.setStage(commitStatuseDO.getName());
+                    if (commitStatuseDO.getStatus().equals(JobStatus.FAILED.toString())) {
+                        gitlabJobE.setStatus(JobStatus.FAILED);
+                    }
+                    gitlabJobE.setDescription(commitStatuseDO.getDescription());
+                    jobs.add(gitlabJobE);
+                });
 
+        if (!jobs.isEmpty()) {
+            List<GitlabJobE> realJobs = getRealJobs(jobs);
+            pipelineResultV.setJobs(realJobs);
+            Long diffs = 0L;
+            for (Long diff : realJobs.stream().map(GitlabJobE::getJobTime).collect(Collectors.toList())) {
+                diffs = diff + diffs;
+            }
+            pipelineResultV.setTime(getStageTime(diffs));
+        }
+        pipelineViewLoader.putIfFinished(gitlabProjectId, gitlabPipelineE.getStatus(), pipelineResultV);
+        return pipelineResultV;
     }
 
 
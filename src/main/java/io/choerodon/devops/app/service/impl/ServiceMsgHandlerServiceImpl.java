@@ -106,8 +106,8 @@ public class ServiceMsgHandlerServiceImpl implements ServiceMsgHandlerService {
             newdevopsEnvResourceE.setReversion(devopsEnvResourceE.getReversion());
             devopsEnvResourceDetailE.setId(
                     newdevopsEnvResourceE.getDevopsEnvResourceDetailE().getId());
-            devopsEnvResourceRepository.update(newdevopsEnvResourceE);
             devopsEnvResourceDetailRepository.update(devopsEnvResourceDetailE);
+            devopsEnvResourceRepository.update(newdevopsEnvResourceE);
         }
     }
 }
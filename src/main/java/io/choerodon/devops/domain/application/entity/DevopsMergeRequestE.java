@@ -21,6 +21,8 @@ public class DevopsMergeRequestE {
 
     private String title;
 
+    private Integer commitCount;
+
     private Date createdAt;
 
     private Date updatedAt;
@@ -112,4 +114,12 @@ public class DevopsMergeRequestE {
     public void setUpdatedAt(Date updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public Integer getCommitCount() {
+        return commitCount;
+    }
+
+    public void setCommitCount(Integer commitCount) {
+        this.commitCount = commitCount;
+    }
 }
@@ -0,0 +1,176 @@
+package io.choerodon.devops.domain.application.handler;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import io.choerodon.devops.domain.application.entity.*;
+import io.choerodon.devops.domain.application.repository.DevopsEnvFileResourceRepository;
+
+/**
+ * 一次GitOps解释过程中环境的快照。
+ * 实例、网络、域名、文件资源关系及文件错误在解释开始时一次查出，解释过程中在内存中查找；
+ * 文件资源关系的新增、更新、删除先记录下来，最后批量写入。
+ */
+public class GitOpsEnvSnapshot {
+
+    private final Long envId;
+    private final Map<String, ApplicationInstanceE> instancesByCode;
+    private final Map<Long, ApplicationInstanceE> instancesById;
+    private final Map<String, DevopsServiceE> servicesByName;
+    private final Map<Long, DevopsServiceE> servicesById;
+    private final Map<String, DevopsIngressE> ingressesByName;
+    private final Map<Long, DevopsIngressE> ingressesById;
+    private final Map<String, List<DevopsEnvFileResourceE>> fileResourcesByPath;
+    private final Map<String, DevopsEnvFileResourceE> fileResourcesByResource;
+    private final Map<String, DevopsEnvFileErrorE> fileErrorsByPath;
+
+    private final List<DevopsEnvFileResourceE> fileResourcesToCreate = new ArrayList<>();
+    private final Map<Long, DevopsEnvFileResourceE> fileResourcesToUpdate = new LinkedHashMap<>();
+    private final Set<Long> fileResourcesToDelete = new LinkedHashSet<>();
+
+    public GitOpsEnvSnapshot(Long envId,
+                             List<ApplicationInstanceE> instances,
+                             List<DevopsServiceE> services,
+                             List<DevopsIngressE> ingresses,
+                             List<DevopsEnvFileResourceE> fileResources,
+                             List<DevopsEnvFileErrorE> fileErrors) {
+        this.envId = envId;
+        this.instancesByCode = index(instances, ApplicationInstanceE::getCode);
+        this.instancesById = index(instances, ApplicationInstanceE::getId);
+        this.servicesByName = index(services, DevopsServiceE::getName);
+        this.servicesById = index(services, DevopsServiceE::getId);
+        this.ingressesByName = index(ingresses, DevopsIngressE::getName);
+        this.ingressesById = index(ingresses, DevopsIngressE::getId);
+        this.fileResourcesByPath = fileResources.stream()
+                .collect(Collectors.groupingBy(DevopsEnvFileResourceE::getFilePath));
+        this.fileResourcesByResource = index(fileResources,
+                t -> resourceKey(t.getResourceType(), t.getResourceId()));
+        this.fileErrorsByPath = index(fileErrors, DevopsEnvFileErrorE::getFilePath);
+    }
+
+    public ApplicationInstanceE getInstance(String code) {
+        return instancesByCode.get(code);
+    }
+
+    public ApplicationInstanceE getInstance(Long id) {
+        return instancesById.get(id);
+    }
+
+    public void putInstance(ApplicationInstanceE applicationInstanceE) {
+        instancesByCode.put(applicationInstanceE.getCode(), applicationInstanceE);
+        instancesById.put(applicationInstanceE.getId(), applicationInstanceE);
+    }
+
+    public DevopsServiceE getService(String name) {
+        return servicesByName.get(name);
+    }
+
+    public DevopsServiceE getService(Long id) {
+        return servicesById.get(id);
+    }
+
+    public void putService(DevopsServiceE devopsServiceE) {
+        servicesByName.put(devopsServiceE.getName(), devopsServiceE);
+        servicesById.put(devopsServiceE.getId(), devopsServiceE);
+    }
+
+    public DevopsIngressE getIngress(String name) {
+        return ingressesByName.get(name);
+    }
+
+    public DevopsIngressE getIngress(Long id) {
+        return ingressesById.get(id);
+    }
+
+    public void putIngress(DevopsIngressE devopsIngressE) {
+        ingressesByName.put(devopsIngressE.getName(), devopsIngressE);
+        ingressesById.put(devopsIngressE.getId(), devopsIngressE);
+    }
+
+    /**
+     * 解释开始前文件中的资源关系
+     *
+     * @param filePath 文件路径
+     * @return 资源关系
+     */
+    public List<DevopsEnvFileResourceE> listFileResources(String filePath) {
+        return fileResourcesByPath.getOrDefault(filePath, Collections.emptyList());
+    }
+
+    public DevopsEnvFileErrorE getFileError(String filePath) {
+        return fileErrorsByPath.get(filePath);
+    }
+
+    /**
+     * 记录资源所在的文件，已有关系且文件变化时更新，没有关系时新增
+     *
+     * @param filePath     文件路径
+     * @param resourceId   资源id
+     * @param resourceType 资源类型
+     */
+    public void saveFileResource(String filePath, Long resourceId, String resourceType) {
+        String key = resourceKey(resourceType, resourceId);
+        DevopsEnvFileResourceE devopsEnvFileResourceE = fileResourcesByResource.get(key);
+        if (devopsEnvFileResourceE == null) {
+            devopsEnvFileResourceE = new DevopsEnvFileResourceE();
+            devopsEnvFileResourceE.setEnvironment(new DevopsEnvironmentE(envId));
+            devopsEnvFileResourceE.setFilePath(filePath);
+            devopsEnvFileResourceE.setResourceId(resourceId);
+            devopsEnvFileResourceE.setResourceType(resourceType);
+            fileResourcesByResource.put(key, devopsEnvFileResourceE);
+            fileResourcesToCreate.add(devopsEnvFileResourceE);
+            return;
+        }
+        if (!Objects.equals(devopsEnvFileResourceE.getFilePath(), filePath)) {
+            devopsEnvFileResourceE.setFilePath(filePath);
+            if (devopsEnvFileResourceE.getId() != null) {
+                fileResourcesToUpdate.put(devopsEnvFileResourceE.getId(), devopsEnvFileResourceE);
+            }
+        }
+    }
+
+    /**
+     * 记录资源关系的删除
+     *
+     * @param resourceId   资源id
+     * @param resourceType 资源类型
+     */
+    public void deleteFileResource(Long resourceId, String resourceType) {
+        DevopsEnvFileResourceE devopsEnvFileResourceE =
+                fileResourcesByResource.remove(resourceKey(resourceType, resourceId));
+        if (devopsEnvFileResourceE == null) {
+            return;
+        }
+        if (devopsEnvFileResourceE.getId() == null) {
+            fileResourcesToCreate.remove(devopsEnvFileResourceE);
+        } else {
+            fileResourcesToUpdate.remove(devopsEnvFileResourceE.getId());
+            fileResourcesToDelete.add(devopsEnvFileResourceE.getId());
+        }
+    }
+
+    /**
+     * 批量写入记录的资源关系变更
+     *
+     * @param devopsEnvFileResourceRepository 文件资源关系仓库
+     */
+    public void apply(DevopsEnvFileResourceRepository devopsEnvFileResourceRepository) {
+        devopsEnvFileResourceRepository.deleteByIds(new ArrayList<>(fileResourcesToDelete));
+        devopsEnvFileResourceRepository.batchUpdateFilePath(new ArrayList<>(fileResourcesToUpdate.values()));
+        devopsEnvFileResourceRepository.batchCreate(fileResourcesToCreate);
+        fileResourcesToDelete.clear();
+        fileResourcesToUpdate.clear();
+        fileResourcesToCreate.clear();
+    }
+
+    private static String resourceKey(String resourceType, Long resourceId) {
+        return resourceType + ":" + resourceId;
+    }
+
+    private static <K, V> Map<K, V> index(List<V> values, Function<V, K> keyMapper) {
+        Map<K, V> map = new HashMap<>(values.size());
+        values.forEach(value -> map.put(keyMapper.apply(value), value));
+        return map;
+    }
+}
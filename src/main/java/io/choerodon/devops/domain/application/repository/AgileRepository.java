@@ -1,5 +1,8 @@
 package io.choerodon.devops.domain.application.repository;
 
+import java.util.List;
+import java.util.Map;
+
 import io.choerodon.devops.domain.application.valueobject.Issue;
 import io.choerodon.devops.domain.application.valueobject.ProjectInfo;
 
@@ -7,5 +10,14 @@ public interface AgileRepository {
 
     Issue queryIssue(Long projectId, Long issueId);
 
+    /**
+     * 查询多个问题，相同的问题只查询一次
+     *
+     * @param projectId 项目id
+     * @param issueIds  问题id
+     * @return 问题id -> 问题
+     */
+    Map<Long, Issue> listIssues(Long projectId, List<Long> issueIds);
+
     ProjectInfo queryProjectInfo(Long projectId);
 }
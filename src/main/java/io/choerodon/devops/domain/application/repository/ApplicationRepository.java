@@ -57,4 +57,6 @@ public interface ApplicationRepository {
 
     ApplicationE getAppByGitLabId(Long gitLabProjectId);
 
+    List<ApplicationE> listByIds(List<Long> ids);
+
 }
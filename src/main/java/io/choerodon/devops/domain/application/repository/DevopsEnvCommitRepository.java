@@ -15,4 +15,13 @@ public interface DevopsEnvCommitRepository {
 
     List<DevopsEnvCommitE> listByEnvId(Long envId);
 
+    /**
+     * 批量保存环境库提交，一次查出已存在的提交，只插入不存在的提交
+     *
+     * @param envId   环境id
+     * @param commits 提交
+     * @return 这些提交在库中的记录，包含id
+     */
+    List<DevopsEnvCommitE> batchCreateIfAbsent(Long envId, List<DevopsEnvCommitE> commits);
+
 }
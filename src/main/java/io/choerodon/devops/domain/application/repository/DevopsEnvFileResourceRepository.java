@@ -26,4 +26,12 @@ public interface DevopsEnvFileResourceRepository {
 
     void deleteByEnvIdAndResource(Long envId, Long resourceId, String resourceType);
 
+    List<DevopsEnvFileResourceE> listByEnvId(Long envId);
+
+    void batchCreate(List<DevopsEnvFileResourceE> devopsEnvFileResourceES);
+
+    void batchUpdateFilePath(List<DevopsEnvFileResourceE> devopsEnvFileResourceES);
+
+    void deleteByIds(List<Long> fileResourceIds);
+
 }
@@ -18,9 +18,13 @@ public interface DevopsEnvPodRepository {
 
     List<DevopsEnvPodE> selectByInstanceId(Long instanceId);
 
+    List<DevopsEnvPodE> listByInstanceIds(List<Long> instanceIds);
+
     void update(DevopsEnvPodE devopsEnvPodE);
 
     Page<DevopsEnvPodE> listAppPod(Long projectId, PageRequest pageRequest, String searchParam);
 
     void deleteByName(String name, String namespace);
+
+    void deleteByNames(List<String> names, String namespace);
 }
@@ -1,5 +1,7 @@
 package io.choerodon.devops.domain.application.repository;
 
+import java.util.List;
+
 import io.choerodon.devops.domain.application.entity.DevopsEnvResourceDetailE;
 
 /**
@@ -11,4 +13,19 @@ public interface DevopsEnvResourceDetailRepository {
     DevopsEnvResourceDetailE query(Long messageId);
 
     void update(DevopsEnvResourceDetailE devopsEnvResourceDetailE);
+
+    List<DevopsEnvResourceDetailE> listByIds(List<Long> messageIds);
+
+    List<DevopsEnvResourceDetailE> batchCreate(List<DevopsEnvResourceDetailE> devopsEnvResourceDetailES);
+
+    void batchUpdate(List<DevopsEnvResourceDetailE> devopsEnvResourceDetailES);
+
+    /**
+     * 压缩id大于fromId的一批未压缩资源信息，读取后内容已变化的记录不覆盖
+     *
+     * @param fromId 起始id，不含
+     * @param size   批次大小
+     * @return 本批最大的id，没有未压缩的记录或未开启压缩时返回null
+     */
+    Long compressMessages(Long fromId, Integer size);
 }
@@ -17,10 +17,31 @@ public interface DevopsEnvResourceRepository {
 
     DevopsEnvResourceE queryByInstanceIdAndKindAndName(Long instanceId, String kind, String name);
 
+    List<DevopsEnvResourceE> listByInstanceIdAndKindAndNames(Long instanceId, List<DevopsEnvResourceE> resources);
+
     void update(DevopsEnvResourceE devopsEnvResourceE);
 
+    void batchCreate(List<DevopsEnvResourceE> devopsEnvResourceES);
+
+    /**
+     * 按资源id更新资源版本
+     *
+     * @param id        资源id
+     * @param reversion 资源版本
+     * @return 资源存在并已更新返回true
+     */
+    boolean updateReversion(Long id, Long reversion);
+
+    void batchUpdateReversion(List<DevopsEnvResourceE> devopsEnvResourceES);
+
     void deleteByKindAndName(String kind, String name);
 
+    void deleteByKindAndNames(String kind, List<String> names);
+
+    List<DevopsEnvResourceE> listByInstanceIds(List<Long> instanceIds);
+
+    List<DevopsEnvResourceE> listByKindAndNames(String kind, List<String> names);
+
     List<DevopsEnvResourceE> listByEnvAndType(Long envId, String type);
 
     DevopsEnvResourceE queryLatestJob(String kind, String name);
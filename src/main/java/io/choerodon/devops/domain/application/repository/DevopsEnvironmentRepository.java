@@ -29,4 +29,15 @@ public interface DevopsEnvironmentRepository {
 
     DevopsEnvironmentE queryByToken(String token);
 
+    /**
+     * 获取环境的gitops同步锁，锁由数据库记录，各实例间互斥，持有者异常退出时到期自动释放
+     *
+     * @param envId         环境id
+     * @param expireSeconds 锁的有效时间
+     * @return 是否获取成功
+     */
+    Boolean lockSync(Long envId, Integer expireSeconds);
+
+    void unlockSync(Long envId);
+
 }
@@ -8,6 +8,7 @@ import io.choerodon.devops.api.dto.TagDTO;
 import io.choerodon.devops.domain.application.entity.DevopsBranchE;
 import io.choerodon.devops.domain.application.entity.gitlab.CommitE;
 import io.choerodon.devops.domain.application.entity.gitlab.CompareResultsE;
+import io.choerodon.devops.domain.application.entity.iam.UserE;
 import io.choerodon.devops.infra.dataobject.gitlab.BranchDO;
 import io.choerodon.devops.infra.dataobject.gitlab.TagDO;
 import io.choerodon.mybatis.pagehelper.domain.PageRequest;
@@ -30,6 +31,14 @@ public interface DevopsGitRepository {
 
     Long getUserIdByGitlabUserId(Long gitLabUserId);
 
+    /**
+     * 批量查询gitlab用户对应的iam用户
+     *
+     * @param gitlabUserIds gitlab用户id
+     * @return gitlab用户id -> iam用户
+     */
+    Map<Long, UserE> listUsersByGitlabUserIds(List<Long> gitlabUserIds);
+
     String getGitlabUrl(Long projectId, Long appId);
 
     void createDevopsBranch(DevopsBranchE devopsBranchE);
@@ -48,6 +57,8 @@ public interface DevopsGitRepository {
 
     List<TagDO> getTagList(Long appId, Integer userId);
 
+    Boolean containsTag(Long appId, String tagName, Integer userId);
+
     List<TagDO> getGitLabTags(Integer projectId, Integer userId);
 
     BranchDO getBranch(Integer gitlabProjectId, String branch);
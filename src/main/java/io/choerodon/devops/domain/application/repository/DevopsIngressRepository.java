@@ -31,10 +31,14 @@ public interface DevopsIngressRepository {
 
     void deleteIngress(Long ingressId);
 
+    void deleteIngressByIds(List<Long> ingressIds);
+
     Long setStatus(Long envId, String name, String status);
 
     List<String> queryIngressNameByServiceId(Long serviceId);
 
+    List<DevopsIngressDO> listByServiceNames(String namespace, List<String> serviceNames);
+
     Boolean checkIngressName(Long envId, String name);
 
     Boolean checkIngressAndPath(Long id, String domain, String path);
@@ -1,10 +1,13 @@
 package io.choerodon.devops.domain.application.repository;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import io.choerodon.core.domain.Page;
 import io.choerodon.devops.api.dto.DevopsMergeRequestDTO;
 import io.choerodon.devops.domain.application.entity.DevopsMergeRequestE;
+import io.choerodon.devops.infra.dataobject.gitlab.CommitDO;
 import io.choerodon.mybatis.pagehelper.domain.PageRequest;
 
 public interface DevopsMergeRequestRepository {
@@ -15,6 +18,14 @@ public interface DevopsMergeRequestRepository {
 
     List<DevopsMergeRequestE> getBySourceBranch(String sourceBranchName, Long gitLabProjectId);
 
+    /**
+     * 一次查询多个gitlab项目中多个源分支的合并请求
+     *
+     * @param sourceBranches gitlab项目id -> 源分支名称
+     * @return 合并请求，按id倒序
+     */
+    List<DevopsMergeRequestE> listBySourceBranches(Map<Long, Set<String>> sourceBranches);
+
     Integer update(DevopsMergeRequestE devopsMergeRequestE);
 
     Page<DevopsMergeRequestE> getMergeRequestList(Integer gitlabProjectId, String state, PageRequest pageRequest);
@@ -23,5 +34,29 @@ public interface DevopsMergeRequestRepository {
 
     List<DevopsMergeRequestE> getByGitlabProjectId(Integer gitlabProjectId);
 
+    /**
+     * 保存webhook中的合并请求，提交数量在后台从gitlab查询后保存
+     *
+     * @param devopsMergeRequestDTO 合并请求
+     */
     void saveDevopsMergeRequest(DevopsMergeRequestDTO devopsMergeRequestDTO);
+
+    /**
+     * 按状态统计gitlab项目的合并请求数量
+     *
+     * @param gitlabProjectId gitlab项目id
+     * @return 状态 -> 数量
+     */
+    Map<String, Integer> countByState(Integer gitlabProjectId);
+
+    /**
+     * 从gitlab并发查询多个合并请求的提交，整体超时
+     *
+     * @param devopsMergeRequestES 合并请求
+     * @param gitlabUserId         gitlab用户id
+     * @return 合并请求id -> 提交，任一查询失败或超时时抛出CommonException
+     */
+    Map<Long, List<CommitDO>> listCommits(List<DevopsMergeRequestE> devopsMergeRequestES, Integer gitlabUserId);
+
+    void updateCommitCount(Long id, Integer commitCount);
 }
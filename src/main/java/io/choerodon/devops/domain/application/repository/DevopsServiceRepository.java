@@ -18,6 +18,8 @@ public interface DevopsServiceRepository {
 
     void delete(Long id);
 
+    void deleteByIds(List<Long> ids);
+
     void update(DevopsServiceE devopsServiceE);
 
     Boolean checkName(Long projectId, Long envId, String name);
@@ -35,5 +37,7 @@ public interface DevopsServiceRepository {
 
     DevopsServiceE selectByNameAndEnvId(String name, Long envId);
 
+    List<DevopsServiceE> listByEnvId(Long envId);
+
     Boolean checkEnvHasService(Long envId);
 }
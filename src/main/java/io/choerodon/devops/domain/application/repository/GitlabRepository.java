@@ -37,6 +37,8 @@ public interface GitlabRepository {
 
     ProjectHook createWebHook(Integer projectId, Integer userId, ProjectHook projectHook);
 
+    ProjectHook updateWebHook(Integer projectId, Integer userId, ProjectHook projectHook);
+
     GitlabProjectDO createProject(Integer groupId, String projectName, Integer userId, boolean visibility);
 
     void createDeployKey(Integer projectId, String title, String key, boolean canPush, Integer userId);
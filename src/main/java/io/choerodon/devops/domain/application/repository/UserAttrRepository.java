@@ -1,5 +1,7 @@
 package io.choerodon.devops.domain.application.repository;
 
+import java.util.List;
+
 import io.choerodon.devops.domain.application.entity.UserAttrE;
 
 /**
@@ -12,4 +14,12 @@ public interface UserAttrRepository {
     UserAttrE queryById(Long id);
 
     Long queryUserIdByGitlabUserId(Long gitLabUserId);
+
+    /**
+     * 批量查询gitlab用户对应的用户
+     *
+     * @param gitlabUserIds gitlab用户id
+     * @return 存在的用户
+     */
+    List<UserAttrE> listByGitlabUserIds(List<Long> gitlabUserIds);
 }
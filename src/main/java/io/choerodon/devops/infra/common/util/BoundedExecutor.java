@@ -0,0 +1,138 @@
+package io.choerodon.devops.infra.common.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import io.choerodon.core.exception.CommonException;
+
+/**
+ * 有界线程池。
+ * 队列满时由调用线程执行；任务带上提交者的认证信息执行，结束后恢复执行线程原有的认证信息；
+ * 一次请求中的多个任务共用一个截止时间，超时或失败时抛出CommonException。
+ */
+public class BoundedExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    /**
+     * @param name          线程名前缀
+     * @param parallelism   线程数
+     * @param queueCapacity 等待队列长度
+     * @param timeoutMillis 一次请求的超时时间
+     */
+    public BoundedExecutor(String name, int parallelism, int queueCapacity, long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        int threads = Math.max(1, parallelism);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 提交有返回值的任务
+     *
+     * @param task 任务
+     * @param <T>  结果类型
+     * @return 结果
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        return executor.submit(() -> {
+            SecurityContext previous = SecurityContextHolder.getContext();
+            SecurityContextHolder.setContext(securityContext);
+            try {
+                return task.call();
+            } finally {
+                SecurityContextHolder.setContext(previous);
+            }
+        });
+    }
+
+    /**
+     * 提交不关心结果的任务，异常由任务自行处理
+     *
+     * @param task 任务
+     */
+    public void execute(Runnable task) {
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        executor.execute(() -> {
+            SecurityContext previous = SecurityContextHolder.getContext();
+            SecurityContextHolder.setContext(securityContext);
+            try {
+                task.run();
+            } finally {
+                SecurityContextHolder.setContext(previous);
+            }
+        });
+    }
+
+    /**
+     * 本次请求的截止时间
+     *
+     * @return System.nanoTime()下的截止时间
+     */
+    public long deadline() {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * 在截止时间前等待结果，超时时取消任务
+     *
+     * @param future    任务
+     * @param deadline  截止时间
+     * @param errorCode 失败时的错误码，超时时为errorCode.timeout
+     * @param <T>       结果类型
+     * @return 结果
+     */
+    public <T> T get(Future<T> future, long deadline, String errorCode) {
+        try {
+            return future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new CommonException(errorCode + ".timeout");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CommonException(errorCode, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommonException(errorCode, e);
+        }
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * 不再接收新任务，已提交的任务继续执行
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * 中断执行中的任务并丢弃队列中的任务
+     */
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+}
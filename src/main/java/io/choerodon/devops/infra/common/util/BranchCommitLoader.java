@@ -0,0 +1,137 @@
+package io.choerodon.devops.infra.common.util;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.infra.dataobject.DevopsBranchDO;
+import io.choerodon.devops.infra.dataobject.gitlab.CommitDO;
+import io.choerodon.devops.infra.feign.GitlabServiceClient;
+
+/**
+ * 查询分支自检出以来的提交。
+ * 多个分支的查询在有界线程池中并发执行，整体超时，任一分支失败或超时时抛出CommonException；
+ * 结果按(gitlab项目, 分支, 最新提交, 检出提交)缓存，分支有新提交时最新提交变化，缓存自然失效。
+ */
+@Component
+public class BranchCommitLoader implements DisposableBean {
+
+    private final GitlabServiceClient gitlabServiceClient;
+    private final BoundedExecutor executor;
+    private final Cache<Key, List<CommitDO>> commits;
+
+    public BranchCommitLoader(GitlabServiceClient gitlabServiceClient,
+                              @Value("${devops.branch-commit.parallelism:8}") int parallelism,
+                              @Value("${devops.branch-commit.queue-capacity:200}") int queueCapacity,
+                              @Value("${devops.branch-commit.timeout-millis:10000}") long timeoutMillis,
+                              @Value("${devops.branch-commit.cache-size:5000}") long cacheSize) {
+        this.gitlabServiceClient = gitlabServiceClient;
+        this.executor = new BoundedExecutor("branch-commit-loader", parallelism, queueCapacity, timeoutMillis);
+        this.commits = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    /**
+     * 查询分支自检出以来的提交，不含检出时的提交
+     *
+     * @param branches         分支
+     * @param gitlabProjectIds 应用id -> gitlab项目id
+     * @return 分支id -> 提交，任一分支查询失败时抛出error.branch.commit.query，超时时抛出error.branch.commit.query.timeout
+     */
+    public Map<Long, List<CommitDO>> listCommits(List<DevopsBranchDO> branches, Map<Long, Integer> gitlabProjectIds) {
+        Map<Long, List<CommitDO>> result = new HashMap<>();
+        Map<Long, Future<List<CommitDO>>> futures = new LinkedHashMap<>();
+        branches.forEach(branch -> {
+            Key key = new Key(gitlabProjectIds.get(branch.getAppId()), branch);
+            List<CommitDO> cached = key.cacheable() ? commits.getIfPresent(key) : null;
+            if (cached != null) {
+                result.put(branch.getId(), cached);
+                return;
+            }
+            //带上调用者的认证信息请求gitlab-service
+            futures.put(branch.getId(), executor.submit(() -> load(key, branch)));
+        });
+        long deadline = executor.deadline();
+        try {
+            futures.forEach((branchId, future) ->
+                    result.put(branchId, executor.get(future, deadline, "error.branch.commit.query")));
+        } finally {
+            futures.values().forEach(future -> future.cancel(true));
+        }
+        return result;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private List<CommitDO> load(Key key, DevopsBranchDO branch) {
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss zzz");
+        String sinceDate = simpleDateFormat.format(branch.getCheckoutDate());
+        ResponseEntity<List<CommitDO>> responseEntity =
+                gitlabServiceClient.getCommits(key.gitlabProjectId, branch.getBranchName(), sinceDate);
+        if (!responseEntity.getStatusCode().is2xxSuccessful()) {
+            throw new CommonException("error.branch.commit.query");
+        }
+        List<CommitDO> commitDOS = responseEntity.getBody() == null
+                ? Collections.emptyList()
+                : responseEntity.getBody().stream()
+                .filter(commitDO -> !commitDO.getId().equals(branch.getCheckoutCommit()))
+                .collect(Collectors.toList());
+        if (key.cacheable()) {
+            commits.put(key, Collections.unmodifiableList(commitDOS));
+        }
+        return commitDOS;
+    }
+
+    private static final class Key {
+
+        private final Integer gitlabProjectId;
+        private final String branchName;
+        private final String lastCommit;
+        private final String checkoutCommit;
+
+        Key(Integer gitlabProjectId, DevopsBranchDO branch) {
+            this.gitlabProjectId = gitlabProjectId;
+            this.branchName = branch.getBranchName();
+            this.lastCommit = branch.getLastCommit();
+            this.checkoutCommit = branch.getCheckoutCommit();
+        }
+
+        /**
+         * 没有最新提交时无法判断分支是否变化，不缓存
+         */
+        boolean cacheable() {
+            return lastCommit != null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(gitlabProjectId, key.gitlabProjectId)
+                    && Objects.equals(branchName, key.branchName)
+                    && Objects.equals(lastCommit, key.lastCommit)
+                    && Objects.equals(checkoutCommit, key.checkoutCommit);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(gitlabProjectId, branchName, lastCommit, checkoutCommit);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package io.choerodon.devops.infra.common.util;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 本节点已写入的devops_env_resource索引，(实例id, kind, name) -> (资源id, 资源详情id, reversion)。
+ * 用于在agent重复上报资源时跳过查询，按LRU淘汰，资源删除、资源同步清理和实例删除时失效。
+ * 其他节点的写入和删除不会反映到本节点，记录超过ttl后不再使用，以此限制不一致的时间。
+ */
+@Component
+public class EnvResourceReversionCache {
+
+    private final Map<Key, Entry> entries;
+    private final Map<String, Set<Key>> keysByKindAndName = new HashMap<>();
+    private final Map<Long, Set<Key>> keysByInstance = new HashMap<>();
+    private final long ttlNanos;
+
+    public EnvResourceReversionCache(@Value("${agent.resource-cache-size:20000}") int maxSize,
+                                     @Value("${agent.resource-cache-ttl-seconds:60}") long ttlSeconds) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.entries = new LinkedHashMap<Key, Entry>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > maxSize) {
+                    unindex(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 查询本节点最近一次写入的资源记录
+     *
+     * @param instanceId 实例id，Ingress为null
+     * @param kind       资源类型
+     * @param name       资源名
+     * @return 资源记录，不存在或已超过ttl返回null
+     */
+    public synchronized Entry get(Long instanceId, String kind, String name) {
+        Key key = new Key(instanceId, kind, name);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.writtenAt > ttlNanos) {
+            entries.remove(key);
+            unindex(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 记录资源写入结果，存在事务时在提交后生效，避免回滚后缓存了不存在的记录
+     *
+     * @param instanceId 实例id，Ingress为null
+     * @param kind       资源类型
+     * @param name       资源名
+     * @param resourceId 资源id
+     * @param detailId   资源详情id
+     * @param reversion  资源版本
+     */
+    public void put(Long instanceId, String kind, String name, Long resourceId, Long detailId, Long reversion) {
+        Key key = new Key(instanceId, kind, name);
+        Entry entry = new Entry(resourceId, detailId, reversion == null ? 0L : reversion);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(key, entry);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                put(key, entry);
+            }
+        });
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        if (entries.put(key, entry) == null) {
+            keysByKindAndName.computeIfAbsent(indexKey(key.kind, key.name), k -> new HashSet<>()).add(key);
+            if (key.instanceId != null) {
+                keysByInstance.computeIfAbsent(key.instanceId, k -> new HashSet<>()).add(key);
+            }
+        }
+    }
+
+    /**
+     * 资源按kind和name删除时，移除所有实例下的对应记录
+     *
+     * @param kind 资源类型
+     * @param name 资源名
+     */
+    public void invalidate(String kind, String name) {
+        invalidateAll(kind, Collections.singletonList(name));
+    }
+
+    /**
+     * 资源按kind和多个name删除时，移除所有实例下的对应记录
+     *
+     * @param kind  资源类型
+     * @param names 资源名
+     */
+    public synchronized void invalidateAll(String kind, Collection<String> names) {
+        names.forEach(name -> {
+            Set<Key> keys = keysByKindAndName.get(indexKey(kind, name));
+            if (keys != null) {
+                new ArrayList<>(keys).forEach(this::remove);
+            }
+        });
+    }
+
+    /**
+     * 实例删除时，移除该实例下的所有记录
+     *
+     * @param instanceId 实例id
+     */
+    public synchronized void invalidateInstance(Long instanceId) {
+        Set<Key> keys = keysByInstance.get(instanceId);
+        if (keys != null) {
+            new ArrayList<>(keys).forEach(this::remove);
+        }
+    }
+
+    private void remove(Key key) {
+        entries.remove(key);
+        unindex(key);
+    }
+
+    private void unindex(Key key) {
+        String indexKey = indexKey(key.kind, key.name);
+        Set<Key> keys = keysByKindAndName.get(indexKey);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByKindAndName.remove(indexKey);
+        }
+        if (key.instanceId != null) {
+            Set<Key> instanceKeys = keysByInstance.get(key.instanceId);
+            if (instanceKeys != null && instanceKeys.remove(key) && instanceKeys.isEmpty()) {
+                keysByInstance.remove(key.instanceId);
+            }
+        }
+    }
+
+    private static String indexKey(String kind, String name) {
+        return kind + "/" + name;
+    }
+
+    public static final class Entry {
+
+        private final Long resourceId;
+        private final Long detailId;
+        private final Long reversion;
+        private final long writtenAt = System.nanoTime();
+
+        Entry(Long resourceId, Long detailId, Long reversion) {
+            this.resourceId = resourceId;
+            this.detailId = detailId;
+            this.reversion = reversion;
+        }
+
+        public Long getResourceId() {
+            return resourceId;
+        }
+
+        public Long getDetailId() {
+            return detailId;
+        }
+
+        public Long getReversion() {
+            return reversion;
+        }
+    }
+
+    private static final class Key {
+
+        private final Long instanceId;
+        private final String kind;
+        private final String name;
+
+        Key(Long instanceId, String kind, String name) {
+            this.instanceId = instanceId;
+            this.kind = kind;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(instanceId, key.instanceId)
+                    && Objects.equals(kind, key.kind)
+                    && Objects.equals(name, key.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(instanceId, kind, name);
+        }
+    }
+}
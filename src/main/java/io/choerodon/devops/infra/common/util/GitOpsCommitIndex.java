@@ -0,0 +1,187 @@
+package io.choerodon.devops.infra.common.util;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * GitOps库中文件的最新提交索引。
+ * 每次同步开始时从上次同步的提交到本次提交遍历一次历史，建立 文件路径 -> 最新提交 的索引，
+ * 同步过程中的查询直接从内存中返回；范围内找不到的文件再补充遍历一次完整历史。
+ * 没有进行中的同步时，只沿该文件的历史查找最近一次提交，与git log -1 -- path一致。
+ */
+@Component
+public class GitOpsCommitIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GitOpsCommitIndex.class);
+
+    private final Map<String, FileCommitIndex> indexes = new ConcurrentHashMap<>();
+    private final GitOpsRepositoryPool gitOpsRepositoryPool;
+
+    @Autowired
+    public GitOpsCommitIndex(GitOpsRepositoryPool gitOpsRepositoryPool) {
+        this.gitOpsRepositoryPool = gitOpsRepositoryPool;
+    }
+
+    /**
+     * 同步开始时建立索引
+     *
+     * @param repoPath    本地库路径
+     * @param sinceCommit 上次同步的提交，为null时遍历完整历史
+     * @param untilCommit 本次同步的提交
+     */
+    public void open(String repoPath, String sinceCommit, String untilCommit) {
+        FileCommitIndex index = new FileCommitIndex(gitOpsRepositoryPool.getRepository(repoPath), untilCommit);
+        index.walk(sinceCommit);
+        indexes.put(repoPath, index);
+    }
+
+    /**
+     * 同步结束时释放索引
+     *
+     * @param repoPath 本地库路径
+     */
+    public void close(String repoPath) {
+        indexes.remove(repoPath);
+    }
+
+    /**
+     * 获取文件的最新提交
+     *
+     * @param repoPath 本地库路径
+     * @param filePath 文件在库中的路径
+     * @return 最新提交sha，找不到时返回空字符串
+     */
+    public String getLatestCommit(String repoPath, String filePath) {
+        FileCommitIndex index = indexes.get(repoPath);
+        if (index == null) {
+            return queryLatestCommit(gitOpsRepositoryPool.getRepository(repoPath), filePath);
+        }
+        return index.get(filePath);
+    }
+
+    private String queryLatestCommit(Repository repository, String filePath) {
+        if (repository == null) {
+            return "";
+        }
+        try {
+            ObjectId head = repository.resolve(GitOpsRepositoryPool.REMOTE_MASTER);
+            if (head == null) {
+                return "";
+            }
+            Iterator<RevCommit> commits = Git.wrap(repository).log()
+                    .add(head).addPath(filePath).setMaxCount(1).call().iterator();
+            return commits.hasNext() ? commits.next().name() : "";
+        } catch (IOException | GitAPIException e) {
+            LOGGER.info("query latest commit of {} in {} failed: {}",
+                    filePath, repository.getDirectory(), e.getMessage());
+            return "";
+        }
+    }
+
+    private static final class FileCommitIndex {
+
+        private final Repository repository;
+        private final String untilCommit;
+        private final Map<String, String> latestCommits = new ConcurrentHashMap<>();
+        private volatile boolean complete;
+
+        FileCommitIndex(Repository repository, String untilCommit) {
+            this.repository = repository;
+            this.untilCommit = untilCommit;
+        }
+
+        String get(String filePath) {
+            String commit = latestCommits.get(filePath);
+            if (commit == null && !complete) {
+                synchronized (this) {
+                    if (!complete) {
+                        walk(null);
+                    }
+                }
+                commit = latestCommits.get(filePath);
+            }
+            return commit == null ? "" : commit;
+        }
+
+        /**
+         * 从untilCommit向前遍历到sinceCommit(不含)，记录每个文件最近一次变更的提交。
+         * 合并提交只有在与所有父提交都不同时才记为该文件的变更，与git log -- path一致
+         */
+        void walk(String sinceCommit) {
+            if (repository == null) {
+                complete = true;
+                return;
+            }
+            try (RevWalk revWalk = new RevWalk(repository)) {
+                ObjectId until = repository.resolve(untilCommit);
+                if (until == null) {
+                    complete = true;
+                    return;
+                }
+                revWalk.markStart(revWalk.parseCommit(until));
+                ObjectId since = sinceCommit == null ? null : repository.resolve(sinceCommit);
+                if (since != null) {
+                    revWalk.markUninteresting(revWalk.parseCommit(since));
+                }
+                for (RevCommit commit : revWalk) {
+                    indexCommit(revWalk, commit);
+                }
+                if (since == null) {
+                    complete = true;
+                }
+            } catch (IOException e) {
+                LOGGER.info("build git commit index of {} failed: {}", repository.getDirectory(), e.getMessage());
+                complete = true;
+            }
+        }
+
+        private void indexCommit(RevWalk revWalk, RevCommit commit) throws IOException {
+            int parentCount = commit.getParentCount();
+            try (TreeWalk treeWalk = new TreeWalk(repository)) {
+                treeWalk.setRecursive(true);
+                treeWalk.setFilter(TreeFilter.ANY_DIFF);
+                if (parentCount == 0) {
+                    treeWalk.addTree(new EmptyTreeIterator());
+                } else {
+                    for (RevCommit parent : commit.getParents()) {
+                        treeWalk.addTree(revWalk.parseCommit(parent).getTree());
+                    }
+                }
+                int current = treeWalk.addTree(commit.getTree());
+                while (treeWalk.next()) {
+                    if (FileMode.MISSING.equals(treeWalk.getRawMode(current))
+                            || !differsFromAllParents(treeWalk, current)) {
+                        continue;
+                    }
+                    latestCommits.putIfAbsent(treeWalk.getPathString(), commit.name());
+                }
+            }
+        }
+
+        private boolean differsFromAllParents(TreeWalk treeWalk, int current) {
+            for (int i = 0; i < current; i++) {
+                if (treeWalk.idEqual(i, current) && treeWalk.getRawMode(i) == treeWalk.getRawMode(current)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package io.choerodon.devops.infra.common.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alibaba.fastjson.JSONObject;
+import io.kubernetes.client.models.V1Service;
+import io.kubernetes.client.models.V1beta1Ingress;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.yaml.snakeyaml.Yaml;
+
+import io.choerodon.devops.domain.application.valueobject.C7nHelmRelease;
+
+/**
+ * GitOps文件解析。
+ * 文件在固定大小的线程池中解析，每个文件得到一个不可变的解析结果，按传入的文件顺序返回；
+ * 单个文件的错误记录在其结果中，不影响其他文件的解析。
+ */
+@Component
+public class GitOpsManifestParser implements PublicMetrics, DisposableBean {
+
+    private static final String KIND = "kind";
+
+    private final BoundedExecutor executor;
+    private final AtomicLong parsedFiles = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong maxParseNanos = new AtomicLong();
+
+    public GitOpsManifestParser(@Value("${devops.gitops.parse-parallelism:4}") int parallelism,
+                                @Value("${devops.gitops.parse-queue-capacity:200}") int queueCapacity,
+                                @Value("${devops.gitops.parse-timeout-millis:60000}") long timeoutMillis) {
+        this.executor = new BoundedExecutor("gitops-parser", parallelism, queueCapacity, timeoutMillis);
+    }
+
+    /**
+     * 解析文件
+     *
+     * @param filePaths 文件路径
+     * @param source    文件内容来源
+     * @return 与filePaths顺序一致的解析结果
+     */
+    public List<ParsedFile> parse(List<String> filePaths, ManifestSource source) {
+        List<Future<ParsedFile>> futures = new ArrayList<>(filePaths.size());
+        for (String filePath : filePaths) {
+            futures.add(executor.submit(() -> parseFile(filePath, source)));
+        }
+        //单个文件的异常已在parseFile中记录为解析错误，整体超时或中断时中断本次解释
+        long deadline = executor.deadline();
+        List<ParsedFile> parsedFiles = new ArrayList<>(futures.size());
+        try {
+            futures.forEach(future -> parsedFiles.add(executor.get(future, deadline, "error.gitops.parse")));
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+        return parsedFiles;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long parsed = parsedFiles.get();
+        return Arrays.asList(
+                new Metric<>("gitops.parse.files", parsed),
+                new Metric<>("gitops.parse.failed", failedFiles.get()),
+                new Metric<>("gitops.parse.queue", executor.getQueueSize()),
+                new Metric<>("gitops.parse.time.avg",
+                        parsed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(parseNanos.get() / parsed)),
+                new Metric<>("gitops.parse.time.max", TimeUnit.NANOSECONDS.toMillis(maxParseNanos.get())));
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private ParsedFile parseFile(String filePath, ManifestSource source) {
+        long start = System.nanoTime();
+        //Yaml非线程安全，每个文件单独创建
+        Yaml yaml = new Yaml();
+        List<C7nHelmRelease> c7nHelmReleases = new ArrayList<>();
+        List<V1Service> v1Services = new ArrayList<>();
+        List<V1beta1Ingress> v1beta1Ingresses = new ArrayList<>();
+        StringBuilder error = new StringBuilder();
+        try (InputStream inputStream = source.open(filePath)) {
+            for (Object data : yaml.loadAll(inputStream)) {
+                JSONObject jsonObject = new JSONObject((Map<String, Object>) data);
+                Object kind = jsonObject.get(KIND);
+                String content = jsonObject.toJSONString();
+                switch (kind == null ? "" : kind.toString()) {
+                    case "C7NHelmRelease":
+                        addObject(yaml, content, C7nHelmRelease.class, c7nHelmReleases, error);
+                        break;
+                    case "Ingress":
+                        addObject(yaml, content, V1beta1Ingress.class, v1beta1Ingresses, error);
+                        break;
+                    case "Service":
+                        addObject(yaml, content, V1Service.class, v1Services, error);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (Exception e) {
+            error.append(e.getMessage());
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            parsedFiles.incrementAndGet();
+            parseNanos.addAndGet(elapsed);
+            maxParseNanos.accumulateAndGet(elapsed, Math::max);
+        }
+        if (error.length() > 0) {
+            failedFiles.incrementAndGet();
+            return ParsedFile.failed(filePath, error.toString());
+        }
+        return new ParsedFile(filePath, c7nHelmReleases, v1Services, v1beta1Ingresses, null);
+    }
+
+    private <T> void addObject(Yaml yaml, String content, Class<T> type, List<T> objects, StringBuilder error) {
+        try {
+            objects.add(yaml.loadAs(content, type));
+        } catch (Exception e) {
+            error.append(e.getMessage());
+        }
+    }
+
+    /**
+     * 文件内容来源
+     */
+    @FunctionalInterface
+    public interface ManifestSource {
+        InputStream open(String filePath) throws IOException;
+    }
+
+    /**
+     * 单个文件的解析结果
+     */
+    public static final class ParsedFile {
+
+        private final String filePath;
+        private final List<C7nHelmRelease> c7nHelmReleases;
+        private final List<V1Service> v1Services;
+        private final List<V1beta1Ingress> v1beta1Ingresses;
+        private final String error;
+
+        private ParsedFile(String filePath,
+                           List<C7nHelmRelease> c7nHelmReleases,
+                           List<V1Service> v1Services,
+                           List<V1beta1Ingress> v1beta1Ingresses,
+                           String error) {
+            this.filePath = filePath;
+            this.c7nHelmReleases = Collections.unmodifiableList(c7nHelmReleases);
+            this.v1Services = Collections.unmodifiableList(v1Services);
+            this.v1beta1Ingresses = Collections.unmodifiableList(v1beta1Ingresses);
+            this.error = error;
+        }
+
+        private static ParsedFile failed(String filePath, String error) {
+            return new ParsedFile(filePath, Collections.emptyList(), Collections.emptyList(),
+                    Collections.emptyList(), error);
+        }
+
+        public String getFilePath() {
+            return filePath;
+        }
+
+        public List<C7nHelmRelease> getC7nHelmReleases() {
+            return c7nHelmReleases;
+        }
+
+        public List<V1Service> getV1Services() {
+            return v1Services;
+        }
+
+        public List<V1beta1Ingress> getV1beta1Ingresses() {
+            return v1beta1Ingresses;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
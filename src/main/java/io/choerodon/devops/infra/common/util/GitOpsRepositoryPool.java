@@ -0,0 +1,356 @@
+package io.choerodon.devops.infra.common.util;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.TransportConfigCallback;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.JschConfigSessionFactory;
+import org.eclipse.jgit.transport.OpenSshConfig;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.SshTransport;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.domain.application.entity.gitlab.DiffE;
+
+/**
+ * GitOps环境库缓存。
+ * 每个环境的本地库只打开一次，SSH会话工厂按环境复用，按LRU和空闲时间淘汰，淘汰或环境停用时关闭本地库；
+ * 更新时只fetch，不检出工作区，文件内容直接从目标提交的树中以流的方式读取。
+ * 与上次同步提交的差异在本地计算，同步位置记录在本地库的refs/devops/devops-sync中。
+ * 同一环境的同步由数据库中的环境同步锁保证在各实例间串行执行。
+ */
+@Component
+public class GitOpsRepositoryPool implements DisposableBean {
+
+    public static final String REMOTE_MASTER = "refs/remotes/origin/master";
+    private static final Logger LOGGER = LoggerFactory.getLogger(GitOpsRepositoryPool.class);
+    private static final String MASTER = "master";
+    private static final String GIT_DIR = ".git";
+    private static final String SYNC_REF = "refs/devops/" + GitUtil.DEVOPS_GITOPS_TAG;
+    private static final RefSpec MASTER_REF_SPEC = new RefSpec("+refs/heads/master:" + REMOTE_MASTER);
+
+    private final Cache<String, Repository> repositories;
+    private final Cache<String, SshKeySessionFactory> sessionFactories;
+
+    public GitOpsRepositoryPool(@Value("${devops.gitops.repository-cache-size:200}") long cacheSize,
+                                @Value("${devops.gitops.repository-idle-minutes:60}") long idleMinutes) {
+        //关闭只释放文件句柄，被淘汰时仍在使用的库在下次读取时会重新打开pack文件
+        this.repositories = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(idleMinutes, TimeUnit.MINUTES)
+                .removalListener((RemovalListener<String, Repository>) notification -> {
+                    LOGGER.info("close gitops repository {}", notification.getKey());
+                    notification.getValue().close();
+                })
+                .build();
+        this.sessionFactories = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(idleMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * 环境本地库路径
+     *
+     * @param organizationCode 组织code
+     * @param projectCode      项目code
+     * @param envCode          环境code
+     * @return 本地库路径
+     */
+    public static String getRepositoryPath(String organizationCode, String projectCode, String envCode) {
+        return String.format("gitops/%s/%s/%s", organizationCode, projectCode, envCode);
+    }
+
+    /**
+     * 获取缓存的本地库，库不存在时返回null
+     *
+     * @param path 本地库路径
+     * @return 本地库
+     */
+    public Repository getRepository(String path) {
+        Repository repository = repositories.getIfPresent(path);
+        if (repository != null) {
+            return repository;
+        }
+        File gitDir = new File(path, GIT_DIR);
+        if (!gitDir.exists()) {
+            return null;
+        }
+        try {
+            return repositories.get(path, () -> new FileRepository(gitDir.getAbsolutePath()));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new CommonException("error.git.repository.open", e.getCause());
+        }
+    }
+
+    /**
+     * 环境停用时关闭本地库并移除SSH会话工厂
+     *
+     * @param path 本地库路径
+     */
+    public void evict(String path) {
+        repositories.invalidate(path);
+        sessionFactories.invalidate(path);
+    }
+
+    /**
+     * 将本地库更新到指定提交，本地已有该提交时不访问远程
+     *
+     * @param path   本地库路径
+     * @param url    远程库ssh地址
+     * @param sshKey 环境私钥
+     * @param commit 目标提交
+     * @return 目标提交
+     */
+    public RevCommit update(String path, String url, String sshKey, String commit) {
+        Repository repository = getRepository(path);
+        if (repository == null) {
+            cloneRepository(path, url, sshKey);
+            repository = getRepository(path);
+        }
+        RevCommit revCommit = parseCommit(repository, commit);
+        if (revCommit == null) {
+            fetch(repository, sshKey, path);
+            revCommit = parseCommit(repository, commit);
+        }
+        if (revCommit == null) {
+            throw new CommonException("error.git.commit.not.found");
+        }
+        return revCommit;
+    }
+
+    /**
+     * 一次遍历提交的树，找出指定文件对应的blob
+     *
+     * @param repository 本地库
+     * @param commit     提交
+     * @param filePaths  文件在库中的路径
+     * @return 文件路径 -> blob id，树中不存在的文件不包含在内
+     */
+    public Map<String, ObjectId> resolveFiles(Repository repository, RevCommit commit,
+                                              Collection<String> filePaths) {
+        Map<String, ObjectId> blobs = new HashMap<>(filePaths.size());
+        if (filePaths.isEmpty()) {
+            return blobs;
+        }
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathFilterGroup.createFromStrings(filePaths));
+            while (treeWalk.next()) {
+                if (treeWalk.getFileMode(0).getObjectType() == Constants.OBJ_BLOB) {
+                    blobs.put(treeWalk.getPathString(), treeWalk.getObjectId(0));
+                }
+            }
+        } catch (IOException e) {
+            throw new CommonException("error.git.tree.read", e);
+        }
+        return blobs;
+    }
+
+    /**
+     * 以流的方式读取blob，大文件不会整体载入内存。
+     * ObjectReader非线程安全，每个流单独打开一个，关闭流时一并释放
+     *
+     * @param repository 本地库
+     * @param blobId     blob id
+     * @return 文件内容
+     */
+    public InputStream openBlob(Repository repository, ObjectId blobId) throws IOException {
+        ObjectReader reader = repository.newObjectReader();
+        try {
+            return new FilterInputStream(reader.open(blobId, Constants.OBJ_BLOB).openStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        reader.close();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 获取上次同步的提交，优先使用数据库中记录的提交，本地库中没有该提交时使用本地记录的同步位置
+     *
+     * @param repository    本地库
+     * @param syncCommitSha 数据库中记录的上次同步提交，可为null
+     * @return 上次同步的提交，都没有记录时返回null
+     */
+    public RevCommit getSyncCommit(Repository repository, String syncCommitSha) {
+        RevCommit syncCommit = syncCommitSha == null ? null : parseCommit(repository, syncCommitSha);
+        return syncCommit != null ? syncCommit : parseCommit(repository, SYNC_REF);
+    }
+
+    /**
+     * 同步完成后在本地记录同步位置
+     *
+     * @param repository 本地库
+     * @param commit     本次同步的提交
+     */
+    public void setSyncCommit(Repository repository, RevCommit commit) {
+        try {
+            RefUpdate refUpdate = repository.updateRef(SYNC_REF);
+            refUpdate.setNewObjectId(commit);
+            refUpdate.setForceUpdate(true);
+            refUpdate.update();
+        } catch (IOException e) {
+            LOGGER.info("update sync ref of {} failed: {}", repository.getDirectory(), e.getMessage());
+        }
+    }
+
+    /**
+     * 在本地计算两次提交之间的文件变更，结果与gitlab compare接口的diffs一致
+     *
+     * @param repository 本地库
+     * @param base       上次同步的提交，为null时与空树比较
+     * @param target     本次同步的提交
+     * @return 文件变更
+     */
+    public List<DiffE> diff(Repository repository, RevCommit base, RevCommit target) {
+        List<DiffE> diffs = new ArrayList<>();
+        try (ObjectReader reader = repository.newObjectReader();
+             DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+            diffFormatter.setRepository(repository);
+            diffFormatter.setDetectRenames(true);
+            AbstractTreeIterator baseTree = base == null
+                    ? new EmptyTreeIterator() : new CanonicalTreeParser(null, reader, base.getTree());
+            AbstractTreeIterator targetTree = new CanonicalTreeParser(null, reader, target.getTree());
+            for (DiffEntry diffEntry : diffFormatter.scan(baseTree, targetTree)) {
+                DiffEntry.ChangeType changeType = diffEntry.getChangeType();
+                DiffE diffE = new DiffE();
+                diffE.setNewFile(changeType == DiffEntry.ChangeType.ADD);
+                diffE.setDeletedFile(changeType == DiffEntry.ChangeType.DELETE);
+                diffE.setRenamedFile(changeType == DiffEntry.ChangeType.RENAME);
+                diffE.setOldPath(changeType == DiffEntry.ChangeType.ADD
+                        ? diffEntry.getNewPath() : diffEntry.getOldPath());
+                diffE.setNewPath(changeType == DiffEntry.ChangeType.DELETE
+                        ? diffEntry.getOldPath() : diffEntry.getNewPath());
+                diffs.add(diffE);
+            }
+        } catch (IOException e) {
+            throw new CommonException("error.git.diff", e);
+        }
+        return diffs;
+    }
+
+    @Override
+    public void destroy() {
+        repositories.invalidateAll();
+        sessionFactories.invalidateAll();
+    }
+
+    private void cloneRepository(String path, String url, String sshKey) {
+        try (Git git = Git.cloneRepository()
+                .setURI(url)
+                .setBranch(MASTER)
+                .setNoCheckout(true)
+                .setDirectory(new File(path))
+                .setTransportConfigCallback(getTransportConfig(path, sshKey))
+                .call()) {
+            LOGGER.info("clone gitops repository {}", path);
+        } catch (GitAPIException e) {
+            throw new CommonException("error.git.clone", e);
+        }
+    }
+
+    private void fetch(Repository repository, String sshKey, String path) {
+        try (Git git = new Git(repository)) {
+            git.fetch()
+                    .setRemote("origin")
+                    .setRefSpecs(MASTER_REF_SPEC)
+                    .setTransportConfigCallback(getTransportConfig(path, sshKey))
+                    .call();
+        } catch (GitAPIException e) {
+            throw new CommonException("error.git.fetch", e);
+        }
+    }
+
+    private RevCommit parseCommit(Repository repository, String commit) {
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            ObjectId objectId = repository.resolve(commit);
+            return objectId == null ? null : revWalk.parseCommit(objectId);
+        } catch (MissingObjectException e) {
+            return null;
+        } catch (IOException e) {
+            throw new CommonException("error.git.commit.parse", e);
+        }
+    }
+
+    private TransportConfigCallback getTransportConfig(String path, String sshKey) {
+        SshKeySessionFactory cached = sessionFactories.getIfPresent(path);
+        SshKeySessionFactory sessionFactory = cached != null && cached.sshKey.equals(sshKey)
+                ? cached : new SshKeySessionFactory(sshKey);
+        if (sessionFactory != cached) {
+            sessionFactories.put(path, sessionFactory);
+        }
+        return transport -> ((SshTransport) transport).setSshSessionFactory(sessionFactory);
+    }
+
+    private static final class SshKeySessionFactory extends JschConfigSessionFactory {
+
+        private final String sshKey;
+
+        SshKeySessionFactory(String sshKey) {
+            this.sshKey = sshKey;
+        }
+
+        @Override
+        protected void configure(OpenSshConfig.Host host, Session session) {
+            session.setConfig("StrictHostKeyChecking", "no");
+        }
+
+        @Override
+        protected JSch createDefaultJSch(FS fs) throws JSchException {
+            JSch defaultJSch = super.createDefaultJSch(fs);
+            defaultJSch.getIdentityRepository().add(sshKey.getBytes());
+            return defaultJSch;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package io.choerodon.devops.infra.common.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * GitOps同步计数，通过actuator的/metrics暴露。
+ * skipped为已解释到最新提交或已有更新推送而合并掉的推送，locked为环境正在同步、交由saga重试的推送。
+ */
+@Component
+public class GitOpsSyncMetrics implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "gitops.sync.";
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong locked = new AtomicLong();
+
+    public void completed() {
+        completed.incrementAndGet();
+    }
+
+    public void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    public void locked() {
+        locked.incrementAndGet();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>(METRIC_PREFIX + "completed", completed.get()),
+                new Metric<>(METRIC_PREFIX + "skipped", skipped.get()),
+                new Metric<>(METRIC_PREFIX + "locked", locked.get()));
+    }
+}
@@ -4,18 +4,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
-import com.jcraft.jsch.JSch;
-import com.jcraft.jsch.JSchException;
-import com.jcraft.jsch.Session;
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.*;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.internal.storage.file.FileRepository;
 import org.eclipse.jgit.lib.Ref;
-import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.transport.*;
-import org.eclipse.jgit.util.FS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -39,7 +32,6 @@ public class GitUtil {
     private static final Logger LOGGER = LoggerFactory.getLogger(DevopsGitServiceImpl.class);
     private ResourceLoader resourceLoader = new DefaultResourceLoader();
     private String classPath;
-    private String sshKey;
     @Value("${template.version.MicroService}")
     private String microService;
     @Value("${template.version.MicroServiceFront}")
@@ -63,105 +55,6 @@ public class GitUtil {
         }
     }
 
-    public GitUtil(String sshKey) {
-        new GitUtil();
-        this.sshKey = sshKey;
-    }
-
-    public static String getLog(String repoPath, String fileName) {
-        String latestCommit = "";
-        File file = new File("gitops/operation/crockpro0803/yl3/.git");
-        try (Repository repository = new FileRepository(file.getAbsolutePath())) {
-            try (Git git = new Git(repository)) {
-                Iterable<RevCommit> logs = git.log().addPath(fileName).call();
-                for (RevCommit revCommit : logs) {
-                    latestCommit = revCommit.name();
-                    break;
-                }
-            }
-        } catch (Exception e) {
-            LOGGER.info(e.getMessage());
-        }
-        return latestCommit;
-    }
-
-    public void cloneBySsh(String path, String url) {
-        SshSessionFactory sshSessionFactory = new JschConfigSessionFactory() {
-            @Override
-            protected void configure(OpenSshConfig.Host host, Session session) {
-                session.setConfig("StrictHostKeyChecking", "no");
-            }
-
-            @Override
-            protected JSch createDefaultJSch(FS fs) throws JSchException {
-                JSch defaultJSch = super.createDefaultJSch(fs);
-                defaultJSch.getIdentityRepository().add(sshKey.getBytes());
-                return defaultJSch;
-            }
-        };
-        CloneCommand cloneCommand = Git.cloneRepository();
-        cloneCommand.setURI(url);
-        cloneCommand.setBranch(MASTER);
-        TransportConfigCallback transportConfigCallback = transport -> {
-            SshTransport sshTransport = (SshTransport) transport;
-            sshTransport.setSshSessionFactory(sshSessionFactory);
-        };
-        cloneCommand.setTransportConfigCallback(transportConfigCallback);
-        try {
-            cloneCommand.setDirectory(new File(path));
-            cloneCommand.call();
-        } catch (GitAPIException e) {
-            LOGGER.info(e.getMessage());
-            throw new CommonException(e.getMessage());
-        }
-    }
-
-    public void checkout(String path, String commit) {
-
-        File repoGitDir = new File(path);
-        try (Repository repository = new FileRepository(repoGitDir.getAbsolutePath())) {
-            try (Git git = new Git(repository)) {
-                CheckoutCommand checkoutCommand = git.checkout();
-                checkoutCommand.setName(commit);
-                checkoutCommand.call();
-            }
-        } catch (Exception e) {
-
-        }
-    }
-
-    public void pullBySsh(String path) {
-        SshSessionFactory sshSessionFactory = new JschConfigSessionFactory() {
-            @Override
-            protected void configure(OpenSshConfig.Host host, Session session) {
-                session.setConfig("StrictHostKeyChecking", "no");
-            }
-
-            @Override
-            protected JSch createDefaultJSch(FS fs) throws JSchException {
-                JSch defaultJSch = super.createDefaultJSch(fs);
-                defaultJSch.getIdentityRepository().add(sshKey.getBytes());
-                return defaultJSch;
-            }
-        };
-        File repoGitDir = new File(path);
-        try (Repository repository = new FileRepository(repoGitDir.getAbsolutePath())) {
-            try (Git git = new Git(repository)) {
-                PullCommand pullCmd = git.pull();
-                TransportConfigCallback transportConfigCallback = transport -> {
-                    SshTransport sshTransport = (SshTransport) transport;
-                    sshTransport.setSshSessionFactory(sshSessionFactory);
-                };
-                pullCmd.setTransportConfigCallback(transportConfigCallback);
-                pullCmd.setRemoteBranchName("master");
-                pullCmd.call();
-            }
-        } catch (Exception e) {
-
-        }
-    }
-
-
     /**
      * Git克隆
      */
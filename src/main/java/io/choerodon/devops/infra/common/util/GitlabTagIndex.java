@@ -0,0 +1,165 @@
+package io.choerodon.devops.infra.common.util;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.infra.dataobject.gitlab.TagDO;
+import io.choerodon.devops.infra.dataobject.gitlab.TagNodeDO;
+
+/**
+ * gitlab项目的tag索引，gitlab项目id -> 按版本号倒序排列的tag。
+ * 首次访问时从gitlab拉取全部tag，之后由平台创建、删除tag和tag_push webhook增量维护，按LRU淘汰并定期过期。
+ * 索引只在本实例内有效，每次使用前先向gitlab查询最近更新的一个tag，索引中没有该tag时重新拉取，
+ * 其他实例新建的tag因此能立即可见；其他实例删除的tag最迟在索引过期后消失。
+ */
+@Component
+public class GitlabTagIndex {
+
+    private static final Comparator<TagDO> TAG_ORDER = GitlabTagIndex::compareTag;
+
+    private final Cache<Integer, Tags> entries;
+
+    public GitlabTagIndex(@Value("${devops.tag-index.max-size:500}") long maxSize,
+                          @Value("${devops.tag-index.ttl-seconds:60}") long ttlSeconds) {
+        this.entries = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 查询gitlab项目排好序的tag
+     *
+     * @param gitlabProjectId gitlab项目id
+     * @param loader          索引不存在或已过时时拉取全部tag
+     * @param latestLoader    查询gitlab中最近更新的tag，没有tag时返回null
+     * @return 按版本号倒序排列的tag，不可修改
+     */
+    public List<TagDO> listTags(Integer gitlabProjectId, Supplier<List<TagDO>> loader,
+                                Supplier<TagDO> latestLoader) {
+        return get(gitlabProjectId, loader, latestLoader).sorted;
+    }
+
+    /**
+     * 校验gitlab项目中是否存在tag
+     *
+     * @param gitlabProjectId gitlab项目id
+     * @param tagName         tag名称
+     * @param loader          索引不存在或已过时时拉取全部tag
+     * @param latestLoader    查询gitlab中最近更新的tag，没有tag时返回null
+     * @return 是否存在
+     */
+    public boolean contains(Integer gitlabProjectId, String tagName, Supplier<List<TagDO>> loader,
+                            Supplier<TagDO> latestLoader) {
+        return get(gitlabProjectId, loader, latestLoader).byName.containsKey(tagName);
+    }
+
+    /**
+     * 已建立索引时加入新建的tag，同名tag被替换
+     *
+     * @param gitlabProjectId gitlab项目id
+     * @param tagDO           tag
+     */
+    public void put(Integer gitlabProjectId, TagDO tagDO) {
+        entries.asMap().computeIfPresent(gitlabProjectId, (key, tags) -> tags.with(tagDO));
+    }
+
+    public void remove(Integer gitlabProjectId, String tagName) {
+        entries.asMap().computeIfPresent(gitlabProjectId, (key, tags) -> tags.without(tagName));
+    }
+
+    /**
+     * 无法增量维护时丢弃索引，下次访问重新拉取
+     *
+     * @param gitlabProjectId gitlab项目id
+     */
+    public void invalidate(Integer gitlabProjectId) {
+        entries.invalidate(gitlabProjectId);
+    }
+
+    private Tags get(Integer gitlabProjectId, Supplier<List<TagDO>> loader, Supplier<TagDO> latestLoader) {
+        Tags cached = entries.getIfPresent(gitlabProjectId);
+        if (cached != null) {
+            if (cached.isCurrent(latestLoader.get())) {
+                return cached;
+            }
+            entries.asMap().remove(gitlabProjectId, cached);
+        }
+        try {
+            return entries.get(gitlabProjectId, () -> new Tags(loader.get()));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CommonException("error.tags.get", e.getCause());
+        }
+    }
+
+    private static int compareTag(TagDO a, TagDO b) {
+        TagNodeDO tagA = TagNodeDO.tagNameToTagNode(a.getName());
+        TagNodeDO tagB = TagNodeDO.tagNameToTagNode(b.getName());
+        if (tagA != null && tagB != null) {
+            return tagA.compareTo(tagB) * -1;
+        } else if (tagA == null && tagB != null) {
+            return 1;
+        } else if (tagA != null) {
+            return -1;
+        } else {
+            return a.getName().compareToIgnoreCase(b.getName());
+        }
+    }
+
+    private static final class Tags {
+
+        private final List<TagDO> sorted;
+        private final Map<String, TagDO> byName;
+
+        Tags(List<TagDO> tags) {
+            List<TagDO> list = new ArrayList<>(tags == null ? Collections.emptyList() : tags);
+            list.sort(TAG_ORDER);
+            this.sorted = Collections.unmodifiableList(list);
+            this.byName = Collections.unmodifiableMap(list.stream()
+                    .collect(Collectors.toMap(TagDO::getName, t -> t, (a, b) -> b)));
+        }
+
+        /**
+         * gitlab中最近更新的tag在索引中且指向同一提交时，认为索引没有遗漏新建的tag
+         */
+        boolean isCurrent(TagDO latest) {
+            if (latest == null) {
+                return sorted.isEmpty();
+            }
+            TagDO indexed = byName.get(latest.getName());
+            return indexed != null && Objects.equals(commitId(indexed), commitId(latest));
+        }
+
+        private static String commitId(TagDO tagDO) {
+            return tagDO.getCommit() == null ? null : tagDO.getCommit().getId();
+        }
+
+        Tags with(TagDO tagDO) {
+            List<TagDO> list = sorted.stream()
+                    .filter(t -> !t.getName().equals(tagDO.getName()))
+                    .collect(Collectors.toCollection(ArrayList::new));
+            list.add(tagDO);
+            return new Tags(list);
+        }
+
+        Tags without(String tagName) {
+            if (!byName.containsKey(tagName)) {
+                return this;
+            }
+            return new Tags(sorted.stream().filter(t -> !t.getName().equals(tagName)).collect(Collectors.toList()));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package io.choerodon.devops.infra.common.util;
+
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.domain.application.valueobject.PipelineResultV;
+import io.choerodon.devops.infra.common.util.enums.PipelineStatus;
+
+/**
+ * 流水线列表的查询执行器。
+ * 互不依赖的gitlab、iam请求在有界线程池中并发执行，整体超时；
+ * 成功和跳过的流水线按(gitlab项目, 流水线id)缓存其详情和job。失败、取消的流水线重试时沿用原id，不缓存；
+ * 列表中的状态与缓存不一致时不使用缓存，代码质量检查的状态可能在流水线结束后才上报，缓存定期过期。
+ */
+@Component
+public class PipelineViewLoader implements DisposableBean {
+
+    private static final Set<PipelineStatus> FINISHED = EnumSet.of(PipelineStatus.SUCCESS, PipelineStatus.SKIPPED);
+
+    private final BoundedExecutor executor;
+    private final Cache<Key, PipelineResultV> finishedPipelines;
+
+    public PipelineViewLoader(@Value("${devops.pipeline-view.parallelism:8}") int parallelism,
+                              @Value("${devops.pipeline-view.queue-capacity:200}") int queueCapacity,
+                              @Value("${devops.pipeline-view.timeout-millis:15000}") long timeoutMillis,
+                              @Value("${devops.pipeline-view.cache-size:5000}") long cacheSize,
+                              @Value("${devops.pipeline-view.cache-ttl-seconds:600}") long cacheTtlSeconds) {
+        this.executor = new BoundedExecutor("pipeline-view-loader", parallelism, queueCapacity, timeoutMillis);
+        this.finishedPipelines = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 带上调用者的认证信息执行请求
+     *
+     * @param task 请求
+     * @param <T>  结果类型
+     * @return 结果
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * 本次查询的截止时间
+     *
+     * @return System.nanoTime()下的截止时间
+     */
+    public long deadline() {
+        return executor.deadline();
+    }
+
+    public <T> T get(Future<T> future, long deadline) {
+        return executor.get(future, deadline, "error.pipeline.query");
+    }
+
+    /**
+     * 查询缓存的已结束流水线
+     *
+     * @param gitlabProjectId gitlab项目id
+     * @param pipelineId      流水线id
+     * @param status          流水线列表中的当前状态
+     * @return 流水线的副本，未缓存或缓存的状态与当前状态不一致时返回null
+     */
+    public PipelineResultV getFinished(Integer gitlabProjectId, Long pipelineId, PipelineStatus status) {
+        PipelineResultV cached = finishedPipelines.getIfPresent(new Key(gitlabProjectId, pipelineId));
+        if (cached == null || status == null || !status.toString().equals(cached.getStatus())) {
+            return null;
+        }
+        PipelineResultV pipelineResultV = new PipelineResultV();
+        BeanUtils.copyProperties(cached, pipelineResultV);
+        return pipelineResultV;
+    }
+
+    /**
+     * 流水线成功或跳过时缓存其副本，其余状态不缓存
+     *
+     * @param gitlabProjectId gitlab项目id
+     * @param status          流水线状态
+     * @param pipelineResultV 流水线
+     */
+    public void putIfFinished(Integer gitlabProjectId, PipelineStatus status, PipelineResultV pipelineResultV) {
+        if (!FINISHED.contains(status)) {
+            return;
+        }
+        PipelineResultV cached = new PipelineResultV();
+        BeanUtils.copyProperties(pipelineResultV, cached);
+        finishedPipelines.put(new Key(gitlabProjectId, pipelineResultV.getId()), cached);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static final class Key {
+
+        private final Integer gitlabProjectId;
+        private final Long pipelineId;
+
+        Key(Integer gitlabProjectId, Long pipelineId) {
+            this.gitlabProjectId = gitlabProjectId;
+            this.pipelineId = pipelineId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(gitlabProjectId, key.gitlabProjectId)
+                    && Objects.equals(pipelineId, key.pipelineId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(gitlabProjectId, pipelineId);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.choerodon.devops.infra.common.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.choerodon.core.exception.CommonException;
+
+/**
+ * devops_env_resource_detail资源信息的压缩与摘要。
+ * 压缩格式与MySQL的COMPRESS()一致：4字节小端序原文长度 + zlib数据，可直接用UNCOMPRESS()查看。
+ */
+public class ResourceDetailCodec {
+
+    private ResourceDetailCodec() {
+    }
+
+    /**
+     * 压缩资源信息
+     *
+     * @param message 资源信息
+     * @return 压缩后的内容
+     */
+    public static byte[] compress(String message) {
+        if (message == null) {
+            return null;
+        }
+        byte[] input = message.getBytes(StandardCharsets.UTF_8);
+        if (input.length == 0) {
+            return new byte[0];
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(input.length / 4 + 16);
+        outputStream.write(input.length & 0xFF);
+        outputStream.write((input.length >>> 8) & 0xFF);
+        outputStream.write((input.length >>> 16) & 0xFF);
+        outputStream.write((input.length >>> 24) & 0x3F);
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                outputStream.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 解压资源信息
+     *
+     * @param compressed 压缩后的内容
+     * @return 资源信息
+     */
+    public static String decompress(byte[] compressed) {
+        if (compressed == null) {
+            return null;
+        }
+        if (compressed.length == 0) {
+            return "";
+        }
+        if (compressed.length < 4) {
+            throw new CommonException("error.message.decompress");
+        }
+        int length = (compressed[0] & 0xFF)
+                | (compressed[1] & 0xFF) << 8
+                | (compressed[2] & 0xFF) << 16
+                | (compressed[3] & 0x3F) << 24;
+        byte[] output = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed, 4, compressed.length - 4);
+            int offset = 0;
+            //原文读满后继续读到zlib结尾，校验和缺失或内容超出长度都视为损坏
+            byte[] trailer = new byte[1];
+            while (!inflater.finished()) {
+                int count = offset < length
+                        ? inflater.inflate(output, offset, length - offset)
+                        : inflater.inflate(trailer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += count;
+            }
+            if (offset != length || !inflater.finished()) {
+                throw new CommonException("error.message.decompress");
+            }
+        } catch (DataFormatException e) {
+            throw new CommonException("error.message.decompress", e);
+        } finally {
+            inflater.end();
+        }
+        return new String(output, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 资源信息摘要，与MySQL的MD5()结果一致
+     *
+     * @param message 资源信息
+     * @return 32位小写md5
+     */
+    public static String hash(String message) {
+        if (message == null) {
+            return null;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(message.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hash = new StringBuilder(32);
+            for (byte b : digest) {
+                hash.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new CommonException("error.message.hash", e);
+        }
+    }
+}
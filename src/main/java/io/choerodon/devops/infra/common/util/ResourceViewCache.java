@@ -0,0 +1,124 @@
+package io.choerodon.devops.infra.common.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * 实例资源视图缓存，(资源详情id, reversion) -> 已解析并转换好的展示对象。
+ * 资源只有在reversion变化时内容才会变化，按LRU淘汰，命中情况通过actuator的/metrics暴露。
+ * 缓存的对象会被多个请求共享，使用方不能修改，放入返回结果前需复制。
+ */
+@Component
+public class ResourceViewCache implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "resource.view.cache.";
+
+    private final Map<Key, Object> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ResourceViewCache(@Value("${devops.resource-view-cache-size:5000}") int maxSize) {
+        this.entries = new LinkedHashMap<Key, Object>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 判断资源视图是否已缓存，不计入命中统计
+     *
+     * @param detailId  资源详情id
+     * @param reversion 资源版本
+     * @return 已缓存返回true
+     */
+    public synchronized boolean contains(Long detailId, Long reversion) {
+        return entries.containsKey(new Key(detailId, reversion));
+    }
+
+    /**
+     * 获取资源视图，未缓存时通过loader解析并放入缓存，loader返回null时不缓存
+     *
+     * @param detailId  资源详情id
+     * @param reversion 资源版本
+     * @param loader    解析资源视图
+     * @param <T>       视图类型
+     * @return 资源视图
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Long detailId, Long reversion, Supplier<T> loader) {
+        Key key = new Key(detailId, reversion);
+        synchronized (this) {
+            Object view = entries.get(key);
+            if (view != null) {
+                hits.incrementAndGet();
+                return (T) view;
+            }
+        }
+        misses.incrementAndGet();
+        T view = loader.get();
+        if (view != null) {
+            synchronized (this) {
+                entries.put(key, view);
+            }
+        }
+        return view;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return Arrays.asList(
+                new Metric<>(METRIC_PREFIX + "hit", hits.get()),
+                new Metric<>(METRIC_PREFIX + "miss", misses.get()),
+                new Metric<>(METRIC_PREFIX + "eviction", evictions.get()),
+                new Metric<>(METRIC_PREFIX + "size", size));
+    }
+
+    private static final class Key {
+
+        private final Long detailId;
+        private final Long reversion;
+
+        Key(Long detailId, Long reversion) {
+            this.detailId = detailId;
+            this.reversion = reversion == null ? 0L : reversion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(detailId, key.detailId) && Objects.equals(reversion, key.reversion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(detailId, reversion);
+        }
+    }
+}
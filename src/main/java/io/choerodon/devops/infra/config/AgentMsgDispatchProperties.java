@@ -0,0 +1,103 @@
+package io.choerodon.devops.infra.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * agent消息分发配置，按环境将消息分配到有序的处理队列
+ */
+@Component
+@ConfigurationProperties(prefix = "agent.dispatch")
+public class AgentMsgDispatchProperties {
+
+    /**
+     * 是否开启分队列处理，关闭时在websocket线程上同步处理
+     */
+    private Boolean enabled = true;
+
+    /**
+     * 处理队列数量，同一环境的消息始终落在同一队列
+     */
+    private Integer lanes = 16;
+
+    /**
+     * 单个队列的最大长度
+     */
+    private Integer queueCapacity = 2000;
+
+    /**
+     * 队列已满时是否丢弃resource_update消息，其余消息始终阻塞等待入队
+     */
+    private Boolean dropResourceUpdateWhenFull = true;
+
+    /**
+     * 是否合并同一对象在队列中尚未处理的resource_update消息
+     */
+    private Boolean coalesceResourceUpdate = true;
+
+    /**
+     * 关闭时等待已排队消息处理完的最长时间，毫秒
+     */
+    private Long shutdownTimeoutMillis = 10000L;
+
+    /**
+     * 最大耗时的统计窗口，毫秒，读取的是当前窗口与上一窗口中的最大值
+     */
+    private Long latencyWindowMillis = 60000L;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Integer getLanes() {
+        return lanes;
+    }
+
+    public void setLanes(Integer lanes) {
+        this.lanes = lanes;
+    }
+
+    public Integer getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(Integer queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public Boolean getDropResourceUpdateWhenFull() {
+        return dropResourceUpdateWhenFull;
+    }
+
+    public void setDropResourceUpdateWhenFull(Boolean dropResourceUpdateWhenFull) {
+        this.dropResourceUpdateWhenFull = dropResourceUpdateWhenFull;
+    }
+
+    public Boolean getCoalesceResourceUpdate() {
+        return coalesceResourceUpdate;
+    }
+
+    public void setCoalesceResourceUpdate(Boolean coalesceResourceUpdate) {
+        this.coalesceResourceUpdate = coalesceResourceUpdate;
+    }
+
+    public Long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    public void setShutdownTimeoutMillis(Long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    public Long getLatencyWindowMillis() {
+        return latencyWindowMillis;
+    }
+
+    public void setLatencyWindowMillis(Long latencyWindowMillis) {
+        this.latencyWindowMillis = latencyWindowMillis;
+    }
+}
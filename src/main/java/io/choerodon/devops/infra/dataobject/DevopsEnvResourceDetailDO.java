@@ -18,6 +18,8 @@ public class DevopsEnvResourceDetailDO {
     @GeneratedValue
     private Long id;
     private String message;
+    private byte[] compressedMessage;
+    private String messageHash;
     private Long objectVersionNumber;
 
     public Long getId() {
@@ -36,6 +38,22 @@ public class DevopsEnvResourceDetailDO {
         this.message = message;
     }
 
+    public byte[] getCompressedMessage() {
+        return compressedMessage;
+    }
+
+    public void setCompressedMessage(byte[] compressedMessage) {
+        this.compressedMessage = compressedMessage;
+    }
+
+    public String getMessageHash() {
+        return messageHash;
+    }
+
+    public void setMessageHash(String messageHash) {
+        this.messageHash = messageHash;
+    }
+
     public Long getObjectVersionNumber() {
         return objectVersionNumber;
     }
@@ -34,6 +34,8 @@ public class DevopsIngressDO extends AuditDomain {
     private String envName;
     @Transient
     private String namespace;
+    @Transient
+    private String serviceName;
 
     public DevopsIngressDO() {
     }
@@ -142,6 +144,14 @@ public class DevopsIngressDO extends AuditDomain {
         this.namespace = namespace;
     }
 
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public void setServiceName(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
     public String getStatus() {
         return status;
     }
@@ -38,6 +38,8 @@ public class DevopsMergeRequestDO {
 
     private String title;
 
+    private Integer commitCount;
+
     private Date createdAt;
 
     private Date updatedAt;
@@ -145,4 +147,12 @@ public class DevopsMergeRequestDO {
     public void setUpdatedAt(Date updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public Integer getCommitCount() {
+        return commitCount;
+    }
+
+    public void setCommitCount(Integer commitCount) {
+        this.commitCount = commitCount;
+    }
 }
@@ -359,4 +359,10 @@ public interface GitlabServiceClient {
             @RequestParam("projectId") Integer projectId,
             @RequestParam("userId") Integer userId,
             @RequestBody ProjectHook projectHook);
+
+    @PutMapping("/v1/hook")
+    ResponseEntity<ProjectHook> updateProjectHook(
+            @RequestParam("projectId") Integer projectId,
+            @RequestParam("userId") Integer userId,
+            @RequestBody ProjectHook projectHook);
 }
@@ -41,4 +41,6 @@ public interface ApplicationMapper extends BaseMapper<ApplicationDO> {
     Integer checkAppCanDisable(@Param("applicationId") Long applicationId);
 
     List<ApplicationDO> listByCode(@Param("code") String code);
+
+    List<ApplicationDO> listByIds(@Param("ids") List<Long> ids);
 }
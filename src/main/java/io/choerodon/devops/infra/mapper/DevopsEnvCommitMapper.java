@@ -1,7 +1,16 @@
 package io.choerodon.devops.infra.mapper;
 
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
 import io.choerodon.devops.infra.dataobject.DevopsEnvCommitDO;
 import io.choerodon.mybatis.common.BaseMapper;
 
 public interface DevopsEnvCommitMapper extends BaseMapper<DevopsEnvCommitDO> {
+
+    List<DevopsEnvCommitDO> listByEnvIdAndCommits(@Param("envId") Long envId,
+                                                  @Param("commits") List<String> commits);
+
+    int batchInsert(@Param("list") List<DevopsEnvCommitDO> commits, @Param("userId") Long userId);
 }
@@ -1,5 +1,9 @@
 package io.choerodon.devops.infra.mapper;
 
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
 import io.choerodon.devops.infra.dataobject.DevopsEnvFileResourceDO;
 import io.choerodon.mybatis.common.BaseMapper;
 
@@ -10,4 +14,10 @@ import io.choerodon.mybatis.common.BaseMapper;
  * Description:
  */
 public interface DevopsEnvFileResourceMapper extends BaseMapper<DevopsEnvFileResourceDO> {
+
+    int batchInsert(@Param("list") List<DevopsEnvFileResourceDO> fileResources, @Param("userId") Long userId);
+
+    int batchUpdateFilePath(List<DevopsEnvFileResourceDO> fileResources);
+
+    int deleteByIds(@Param("ids") List<Long> ids);
 }
@@ -16,7 +16,12 @@ import io.choerodon.mybatis.common.BaseMapper;
  */
 public interface DevopsEnvPodMapper extends BaseMapper<DevopsEnvPodDO> {
 
+    List<DevopsEnvPodDO> listByInstanceIds(@Param("instanceIds") List<Long> instanceIds);
+
     List<DevopsEnvPodDO> listAppPod(@Param("projectId") Long projectId,
                                     @Param("searchParam") Map<String, Object> searchParam,
                                     @Param("param") String param);
+
+    void deleteByNames(@Param("names") List<String> names,
+                       @Param("namespace") String namespace);
 }
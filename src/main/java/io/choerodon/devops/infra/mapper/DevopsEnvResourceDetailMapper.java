@@ -1,5 +1,9 @@
 package io.choerodon.devops.infra.mapper;
 
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
 import io.choerodon.devops.infra.dataobject.DevopsEnvResourceDetailDO;
 import io.choerodon.mybatis.common.BaseMapper;
 
@@ -8,4 +12,16 @@ import io.choerodon.mybatis.common.BaseMapper;
  */
 public interface DevopsEnvResourceDetailMapper extends BaseMapper<DevopsEnvResourceDetailDO> {
 
+    List<DevopsEnvResourceDetailDO> listByIds(@Param("ids") List<Long> ids);
+
+    int batchInsert(@Param("list") List<DevopsEnvResourceDetailDO> details, @Param("userId") Long userId);
+
+    int updateMessage(DevopsEnvResourceDetailDO detail);
+
+    int batchUpdate(List<DevopsEnvResourceDetailDO> details);
+
+    List<DevopsEnvResourceDetailDO> listUncompressed(@Param("fromId") Long fromId,
+                                                     @Param("size") Integer size);
+
+    int compressMessages(List<DevopsEnvResourceDetailDO> details);
 }
@@ -17,9 +17,26 @@ public interface DevopsEnvResourceMapper extends BaseMapper<DevopsEnvResourceDO>
                                                         @Param("kind") String kind,
                                                         @Param("name") String name);
 
+    List<DevopsEnvResourceDO> listByInstanceIdAndKindAndNames(@Param("instanceId") Long instanceId,
+                                                              @Param("resources") List<DevopsEnvResourceDO> resources);
+
+    List<DevopsEnvResourceDO> listByInstanceIds(@Param("instanceIds") List<Long> instanceIds);
+
+    List<DevopsEnvResourceDO> listByKindAndNames(@Param("kind") String kind,
+                                                 @Param("names") List<String> names);
+
     List<DevopsEnvResourceDO> listByEnvAndType(@Param("envId") Long envId,
                                                @Param("type") String type);
 
     DevopsEnvResourceDO queryLatestJob(@Param("kind") String kind,
                                        @Param("name") String name);
+
+    void deleteByKindAndNames(@Param("kind") String kind,
+                              @Param("names") List<String> names);
+
+    int batchInsert(@Param("list") List<DevopsEnvResourceDO> resources, @Param("userId") Long userId);
+
+    int updateReversion(@Param("id") Long id, @Param("reversion") Long reversion);
+
+    int batchUpdateReversion(List<DevopsEnvResourceDO> resources);
 }
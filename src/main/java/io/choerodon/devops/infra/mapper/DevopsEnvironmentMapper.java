@@ -1,5 +1,7 @@
 package io.choerodon.devops.infra.mapper;
 
+import org.apache.ibatis.annotations.Param;
+
 import io.choerodon.devops.infra.dataobject.DevopsEnvironmentDO;
 import io.choerodon.mybatis.common.BaseMapper;
 
@@ -8,4 +10,7 @@ import io.choerodon.mybatis.common.BaseMapper;
  */
 public interface DevopsEnvironmentMapper extends BaseMapper<DevopsEnvironmentDO> {
 
+    int lockSync(@Param("envId") Long envId, @Param("expireSeconds") Integer expireSeconds);
+
+    int unlockSync(@Param("envId") Long envId);
 }
@@ -23,5 +23,10 @@ public interface DevopsIngressMapper extends BaseMapper<DevopsIngressDO> {
             @Param("searchParam") Map<String, Object> searchParam,
             @Param("param") String param);
 
+    List<DevopsIngressDO> listByServiceNames(@Param("namespace") String namespace,
+                                             @Param("serviceNames") List<String> serviceNames);
+
     Boolean checkEnvHasIngress(@Param("envId") Long envId);
+
+    void deleteByIds(@Param("ids") List<Long> ids);
 }
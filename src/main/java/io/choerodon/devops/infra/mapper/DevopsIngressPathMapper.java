@@ -22,4 +22,6 @@ public interface DevopsIngressPathMapper extends BaseMapper<DevopsIngressPathDO>
                                                         @Param("serviceId") Long serviceId);
 
     boolean checkDomainAndPath(@Param("ingressId") Long ingressId, @Param("domain") String domain, @Param("path") String path);
+
+    void deleteByIngressIds(@Param("ingressIds") List<Long> ingressIds);
 }
@@ -1,6 +1,8 @@
 package io.choerodon.devops.infra.mapper;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.ibatis.annotations.Param;
 
@@ -21,4 +23,10 @@ public interface DevopsMergeRequestMapper extends BaseMapper<DevopsMergeRequestD
 
     List<DevopsMergeRequestDO> getByProjectIdAndState(@Param("projectId") Integer gitLabProjectId,
                                                       @Param("state") String state);
+
+    List<Map<String, Object>> countByState(@Param("projectId") Integer gitLabProjectId);
+
+    List<DevopsMergeRequestDO> listBySourceBranches(@Param("sourceBranches") Map<Long, Set<String>> sourceBranches);
+
+    int updateCommitCount(@Param("id") Long id, @Param("commitCount") Integer commitCount);
 }
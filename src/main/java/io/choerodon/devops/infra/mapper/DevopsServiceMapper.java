@@ -36,4 +36,6 @@ public interface DevopsServiceMapper extends BaseMapper<DevopsServiceDO> {
                           @Param("param") String param);
 
     Boolean checkEnvHasService(@Param("envId") Long envId);
+
+    void deleteByIds(@Param("ids") List<Long> ids);
 }
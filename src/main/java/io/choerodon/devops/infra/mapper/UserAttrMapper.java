@@ -1,5 +1,9 @@
 package io.choerodon.devops.infra.mapper;
 
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
 import io.choerodon.devops.infra.dataobject.UserAttrDO;
 import io.choerodon.mybatis.common.BaseMapper;
 
@@ -8,4 +12,5 @@ import io.choerodon.mybatis.common.BaseMapper;
  */
 public interface UserAttrMapper extends BaseMapper<UserAttrDO> {
 
+    List<UserAttrDO> listByGitlabUserIds(@Param("gitlabUserIds") List<Long> gitlabUserIds);
 }
@@ -1,26 +1,68 @@
 package io.choerodon.devops.infra.persistence.impl;
 
-import org.springframework.beans.factory.annotation.Autowired;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Future;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import io.choerodon.devops.domain.application.repository.AgileRepository;
 import io.choerodon.devops.domain.application.valueobject.Issue;
 import io.choerodon.devops.domain.application.valueobject.ProjectInfo;
+import io.choerodon.devops.infra.common.util.BoundedExecutor;
 import io.choerodon.devops.infra.feign.AgileServiceClient;
 
+/**
+ * agile-service没有批量查询问题的接口，多个问题的查询在有界线程池中并发执行，整体超时
+ */
 @Component
-public class AgileRepositoryImpl implements AgileRepository {
+public class AgileRepositoryImpl implements AgileRepository, DisposableBean {
+
+    private final AgileServiceClient agileServiceClient;
+    private final BoundedExecutor executor;
 
-    @Autowired
-    private AgileServiceClient agileServiceClient;
+    public AgileRepositoryImpl(AgileServiceClient agileServiceClient,
+                               @Value("${devops.agile-issue.parallelism:8}") int parallelism,
+                               @Value("${devops.agile-issue.queue-capacity:200}") int queueCapacity,
+                               @Value("${devops.agile-issue.timeout-millis:10000}") long timeoutMillis) {
+        this.agileServiceClient = agileServiceClient;
+        this.executor = new BoundedExecutor("agile-issue-loader", parallelism, queueCapacity, timeoutMillis);
+    }
 
     @Override
     public Issue queryIssue(Long projectId, Long issueId) {
         return agileServiceClient.queryIssue(projectId, issueId).getBody();
     }
 
+    @Override
+    public Map<Long, Issue> listIssues(Long projectId, List<Long> issueIds) {
+        Map<Long, Future<Issue>> futures = new LinkedHashMap<>();
+        //带上调用者的认证信息请求agile-service
+        issueIds.stream().filter(Objects::nonNull).distinct().forEach(issueId ->
+                futures.put(issueId, executor.submit(() -> queryIssue(projectId, issueId))));
+        long deadline = executor.deadline();
+        Map<Long, Issue> issues = new HashMap<>(futures.size());
+        try {
+            futures.forEach((issueId, future) -> issues.put(issueId,
+                    executor.get(future, deadline, "error.issue.query")));
+        } finally {
+            futures.values().forEach(future -> future.cancel(true));
+        }
+        return issues;
+    }
+
     @Override
     public ProjectInfo queryProjectInfo(Long projectId) {
         return agileServiceClient.queryProjectInfo(projectId).getBody();
     }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
 }
@@ -1,5 +1,6 @@
 package io.choerodon.devops.infra.persistence.impl;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -227,4 +228,12 @@ public class ApplicationRepositoryImpl implements ApplicationRepository {
             return null;
         }
     }
+
+    @Override
+    public List<ApplicationE> listByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return ConvertHelper.convertList(applicationMapper.listByIds(ids), ApplicationE.class);
+    }
 }
@@ -0,0 +1,213 @@
+package io.choerodon.devops.infra.persistence.impl;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.domain.application.entity.ProjectE;
+import io.choerodon.devops.domain.application.entity.iam.UserE;
+import io.choerodon.devops.domain.application.repository.IamRepository;
+import io.choerodon.devops.domain.application.valueobject.Organization;
+
+/**
+ * 带缓存的IamRepository，按id缓存项目、组织和用户。
+ * 同一key的并发未命中只调用一次iam-service，用户、项目、组织变更时由iam事件失效，其余依靠过期时间刷新。
+ * queryById与批量查询用户走iam-service不同的接口，分别缓存。
+ */
+@Primary
+@Component
+public class CachedIamRepositoryImpl implements IamRepository, PublicMetrics {
+
+    private final IamRepositoryImpl iamRepository;
+    private final LoadingCache<Long, ProjectE> projects;
+    private final LoadingCache<Long, Organization> organizations;
+    private final LoadingCache<Long, Optional<UserE>> users;
+    private final LoadingCache<Long, UserE> usersById;
+
+    public CachedIamRepositoryImpl(IamRepositoryImpl iamRepository,
+                                   @Value("${devops.iam-cache.max-size:5000}") long maxSize,
+                                   @Value("${devops.iam-cache.project-ttl-seconds:300}") long projectTtl,
+                                   @Value("${devops.iam-cache.organization-ttl-seconds:600}") long organizationTtl,
+                                   @Value("${devops.iam-cache.user-ttl-seconds:300}") long userTtl) {
+        this.iamRepository = iamRepository;
+        this.projects = newBuilder(maxSize, projectTtl).build(new CacheLoader<Long, ProjectE>() {
+            @Override
+            public ProjectE load(Long projectId) {
+                return iamRepository.queryIamProject(projectId);
+            }
+        });
+        this.organizations = newBuilder(maxSize, organizationTtl).build(new CacheLoader<Long, Organization>() {
+            @Override
+            public Organization load(Long organizationId) {
+                return iamRepository.queryOrganizationById(organizationId);
+            }
+        });
+        this.users = newBuilder(maxSize, userTtl).build(new CacheLoader<Long, Optional<UserE>>() {
+            @Override
+            public Optional<UserE> load(Long userId) {
+                return loadAll(Collections.singletonList(userId)).get(userId);
+            }
+
+            @Override
+            public Map<Long, Optional<UserE>> loadAll(Iterable<? extends Long> userIds) {
+                List<Long> ids = new ArrayList<>();
+                userIds.forEach(ids::add);
+                Map<Long, UserE> found = iamRepository.listUsersByIds(ids).stream()
+                        .filter(userE -> userE.getId() != null)
+                        .collect(Collectors.toMap(UserE::getId, userE -> userE, (a, b) -> a));
+                //不存在的用户也缓存，避免重复查询
+                Map<Long, Optional<UserE>> result = new HashMap<>(ids.size());
+                ids.forEach(id -> result.put(id, Optional.ofNullable(found.get(id))));
+                return result;
+            }
+        });
+        this.usersById = newBuilder(maxSize, userTtl).build(new CacheLoader<Long, UserE>() {
+            @Override
+            public UserE load(Long userId) {
+                return iamRepository.queryById(userId);
+            }
+        });
+    }
+
+    @Override
+    public ProjectE queryIamProject(Long projectId) {
+        return projectId == null ? iamRepository.queryIamProject(null) : get(projects, projectId);
+    }
+
+    @Override
+    public Organization queryOrganization() {
+        return iamRepository.queryOrganization();
+    }
+
+    @Override
+    public Organization queryOrganizationById(Long organizationId) {
+        return organizationId == null
+                ? iamRepository.queryOrganizationById(null) : get(organizations, organizationId);
+    }
+
+    @Override
+    public UserE queryByLoginName(String userName) {
+        return iamRepository.queryByLoginName(userName);
+    }
+
+    @Override
+    public List<ProjectE> listIamProjectByOrgId(Long organizationId) {
+        return iamRepository.listIamProjectByOrgId(organizationId);
+    }
+
+    @Override
+    public UserE queryById(Long id) {
+        try {
+            return id == null ? iamRepository.queryById(null) : get(usersById, id);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public UserE queryByProjectAndId(Long projectId, Long id) {
+        return iamRepository.queryByProjectAndId(projectId, id);
+    }
+
+    @Override
+    public List<UserE> listUsersByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> userIds = ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        try {
+            return users.getAll(userIds).values().stream()
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .collect(Collectors.toList());
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    @Override
+    public UserE queryUserByUserId(Long id) {
+        return id == null ? null : get(users, id).orElse(null);
+    }
+
+    public void evictProject(Long projectId) {
+        if (projectId != null) {
+            projects.invalidate(projectId);
+        }
+    }
+
+    public void evictOrganization(Long organizationId) {
+        if (organizationId != null) {
+            organizations.invalidate(organizationId);
+        }
+    }
+
+    public void evictUser(Long userId) {
+        if (userId != null) {
+            users.invalidate(userId);
+            usersById.invalidate(userId);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        addMetrics(metrics, "project", projects);
+        addMetrics(metrics, "organization", organizations);
+        addMetrics(metrics, "user", users);
+        addMetrics(metrics, "user-by-id", usersById);
+        return metrics;
+    }
+
+    private static void addMetrics(List<Metric<?>> metrics, String name, LoadingCache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        String prefix = "iam.cache." + name;
+        metrics.add(new Metric<>(prefix + ".size", cache.size()));
+        metrics.add(new Metric<>(prefix + ".hit", stats.hitCount()));
+        metrics.add(new Metric<>(prefix + ".miss", stats.missCount()));
+        metrics.add(new Metric<>(prefix + ".hit-rate", stats.hitRate()));
+        metrics.add(new Metric<>(prefix + ".eviction", stats.evictionCount()));
+        metrics.add(new Metric<>(prefix + ".load.avg",
+                TimeUnit.NANOSECONDS.toMillis((long) stats.averageLoadPenalty())));
+    }
+
+    private static CacheBuilder<Object, Object> newBuilder(long maxSize, long ttlSeconds) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats();
+    }
+
+    private static <K, V> V get(LoadingCache<K, V> cache, K key) {
+        try {
+            return cache.get(key);
+        } catch (InvalidCacheLoadException e) {
+            //iam-service返回空内容时不缓存
+            return null;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static RuntimeException unwrap(Exception e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new CommonException("error.iam.cache.load", cause);
+    }
+}
@@ -1,7 +1,11 @@
 package io.choerodon.devops.infra.persistence.impl;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import com.google.common.collect.Lists;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -11,11 +15,14 @@ import io.choerodon.devops.domain.application.entity.DevopsEnvCommitE;
 import io.choerodon.devops.domain.application.repository.DevopsEnvCommitRepository;
 import io.choerodon.devops.infra.dataobject.DevopsEnvCommitDO;
 import io.choerodon.devops.infra.mapper.DevopsEnvCommitMapper;
+import io.choerodon.mybatis.helper.AuditHelper;
 
 
 @Component
 public class DevopsEnvCommitRepositoryImpl implements DevopsEnvCommitRepository {
 
+    private static final int BATCH_SIZE = 500;
+
     @Autowired
     private DevopsEnvCommitMapper devopsEnvCommitMapper;
 
@@ -50,4 +57,29 @@ public class DevopsEnvCommitRepositoryImpl implements DevopsEnvCommitRepository
         return ConvertHelper.convertList(devopsEnvCommitMapper.select(devopsEnvCommitDO), DevopsEnvCommitE.class);
     }
 
+    @Override
+    public List<DevopsEnvCommitE> batchCreateIfAbsent(Long envId, List<DevopsEnvCommitE> commits) {
+        Map<String, DevopsEnvCommitE> commitMap = new LinkedHashMap<>();
+        commits.forEach(t -> commitMap.putIfAbsent(t.getCommitSha(), t));
+        if (commitMap.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<DevopsEnvCommitDO> devopsEnvCommitDOS = new ArrayList<>(commitMap.size());
+        for (List<String> batch : Lists.partition(new ArrayList<>(commitMap.keySet()), BATCH_SIZE)) {
+            devopsEnvCommitDOS.addAll(devopsEnvCommitMapper.listByEnvIdAndCommits(envId, batch));
+        }
+        devopsEnvCommitDOS.forEach(t -> commitMap.remove(t.getCommitSha()));
+        List<DevopsEnvCommitDO> newDevopsEnvCommitDOS =
+                ConvertHelper.convertList(new ArrayList<>(commitMap.values()), DevopsEnvCommitDO.class);
+        //批量插入不经过审计拦截器，显式写入创建人和更新人
+        Long userId = AuditHelper.audit().getUser();
+        for (List<DevopsEnvCommitDO> batch : Lists.partition(newDevopsEnvCommitDOS, BATCH_SIZE)) {
+            if (devopsEnvCommitMapper.batchInsert(batch, userId) != batch.size()) {
+                throw new CommonException("error.devops.env.commit.create");
+            }
+        }
+        devopsEnvCommitDOS.addAll(newDevopsEnvCommitDOS);
+        return ConvertHelper.convertList(devopsEnvCommitDOS, DevopsEnvCommitE.class);
+    }
+
 }
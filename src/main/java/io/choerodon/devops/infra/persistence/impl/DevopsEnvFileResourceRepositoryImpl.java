@@ -2,14 +2,17 @@ package io.choerodon.devops.infra.persistence.impl;
 
 import java.util.List;
 
+import com.google.common.collect.Lists;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import io.choerodon.core.convertor.ConvertHelper;
+import io.choerodon.core.exception.CommonException;
 import io.choerodon.devops.domain.application.entity.DevopsEnvFileResourceE;
 import io.choerodon.devops.domain.application.repository.DevopsEnvFileResourceRepository;
 import io.choerodon.devops.infra.dataobject.DevopsEnvFileResourceDO;
 import io.choerodon.devops.infra.mapper.DevopsEnvFileResourceMapper;
+import io.choerodon.mybatis.helper.AuditHelper;
 
 /**
  * Creator: Runge
@@ -20,6 +23,8 @@ import io.choerodon.devops.infra.mapper.DevopsEnvFileResourceMapper;
 @Component
 public class DevopsEnvFileResourceRepositoryImpl implements DevopsEnvFileResourceRepository {
 
+    private static final int BATCH_SIZE = 500;
+
     @Autowired
     private DevopsEnvFileResourceMapper devopsEnvFileResourceMapper;
 
@@ -79,4 +84,47 @@ public class DevopsEnvFileResourceRepositoryImpl implements DevopsEnvFileResourc
         devopsEnvFileResourceDO.setResourceType(resourceType);
         devopsEnvFileResourceMapper.delete(devopsEnvFileResourceDO);
     }
+
+    @Override
+    public List<DevopsEnvFileResourceE> listByEnvId(Long envId) {
+        DevopsEnvFileResourceDO devopsEnvFileResourceDO = new DevopsEnvFileResourceDO();
+        devopsEnvFileResourceDO.setEnvId(envId);
+        return ConvertHelper.convertList(
+                devopsEnvFileResourceMapper.select(devopsEnvFileResourceDO), DevopsEnvFileResourceE.class);
+    }
+
+    @Override
+    public void batchCreate(List<DevopsEnvFileResourceE> devopsEnvFileResourceES) {
+        if (devopsEnvFileResourceES.isEmpty()) {
+            return;
+        }
+        List<DevopsEnvFileResourceDO> devopsEnvFileResourceDOS =
+                ConvertHelper.convertList(devopsEnvFileResourceES, DevopsEnvFileResourceDO.class);
+        //批量插入不经过审计拦截器，显式写入创建人和更新人
+        Long userId = AuditHelper.audit().getUser();
+        for (List<DevopsEnvFileResourceDO> batch : Lists.partition(devopsEnvFileResourceDOS, BATCH_SIZE)) {
+            if (devopsEnvFileResourceMapper.batchInsert(batch, userId) != batch.size()) {
+                throw new CommonException("error.file.resource.insert");
+            }
+        }
+    }
+
+    @Override
+    public void batchUpdateFilePath(List<DevopsEnvFileResourceE> devopsEnvFileResourceES) {
+        if (devopsEnvFileResourceES.isEmpty()) {
+            return;
+        }
+        List<DevopsEnvFileResourceDO> devopsEnvFileResourceDOS =
+                ConvertHelper.convertList(devopsEnvFileResourceES, DevopsEnvFileResourceDO.class);
+        Lists.partition(devopsEnvFileResourceDOS, BATCH_SIZE)
+                .forEach(batch -> devopsEnvFileResourceMapper.batchUpdateFilePath(batch));
+    }
+
+    @Override
+    public void deleteByIds(List<Long> fileResourceIds) {
+        if (fileResourceIds.isEmpty()) {
+            return;
+        }
+        Lists.partition(fileResourceIds, BATCH_SIZE).forEach(devopsEnvFileResourceMapper::deleteByIds);
+    }
 }
@@ -1,9 +1,11 @@
 package io.choerodon.devops.infra.persistence.impl;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.collect.Lists;
 import io.kubernetes.client.JSON;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.stereotype.Service;
@@ -25,6 +27,7 @@ import io.choerodon.mybatis.pagehelper.domain.PageRequest;
 @Service
 public class DevopsEnvPodRepositoryImpl implements DevopsEnvPodRepository {
 
+    private static final int BATCH_SIZE = 500;
     private static JSON json = new JSON();
     private DevopsEnvPodMapper devopsEnvPodMapper;
 
@@ -66,6 +69,14 @@ public class DevopsEnvPodRepositoryImpl implements DevopsEnvPodRepository {
         return ConvertHelper.convertList(devopsEnvPodMapper.select(devopsEnvPodDO), DevopsEnvPodE.class);
     }
 
+    @Override
+    public List<DevopsEnvPodE> listByInstanceIds(List<Long> instanceIds) {
+        List<DevopsEnvPodDO> devopsEnvPodDOS = new ArrayList<>();
+        Lists.partition(instanceIds, BATCH_SIZE)
+                .forEach(t -> devopsEnvPodDOS.addAll(devopsEnvPodMapper.listByInstanceIds(t)));
+        return ConvertHelper.convertList(devopsEnvPodDOS, DevopsEnvPodE.class);
+    }
+
     @Override
     public Page<DevopsEnvPodE> listAppPod(Long projectId, PageRequest pageRequest, String searchParam) {
         if (pageRequest.getSort() != null) {
@@ -103,4 +114,9 @@ public class DevopsEnvPodRepositoryImpl implements DevopsEnvPodRepository {
             devopsEnvPodMapper.delete(devopsEnvPodDOs.get(0));
         }
     }
+
+    @Override
+    public void deleteByNames(List<String> names, String namespace) {
+        Lists.partition(names, BATCH_SIZE).forEach(t -> devopsEnvPodMapper.deleteByNames(t, namespace));
+    }
 }
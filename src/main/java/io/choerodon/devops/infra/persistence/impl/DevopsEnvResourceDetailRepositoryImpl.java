@@ -1,13 +1,21 @@
 package io.choerodon.devops.infra.persistence.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import io.choerodon.core.convertor.ConvertHelper;
 import io.choerodon.core.exception.CommonException;
 import io.choerodon.devops.domain.application.entity.DevopsEnvResourceDetailE;
 import io.choerodon.devops.domain.application.repository.DevopsEnvResourceDetailRepository;
+import io.choerodon.devops.infra.common.util.ResourceDetailCodec;
 import io.choerodon.devops.infra.dataobject.DevopsEnvResourceDetailDO;
 import io.choerodon.devops.infra.mapper.DevopsEnvResourceDetailMapper;
+import io.choerodon.mybatis.helper.AuditHelper;
 
 /**
  * Created by younger on 2018/4/24.
@@ -15,39 +23,123 @@ import io.choerodon.devops.infra.mapper.DevopsEnvResourceDetailMapper;
 @Service
 public class DevopsEnvResourceDetailRepositoryImpl implements DevopsEnvResourceDetailRepository {
 
+    private static final int BATCH_SIZE = 500;
+
     private DevopsEnvResourceDetailMapper devopsEnvResourceDetailMapper;
+    private boolean compressMessage;
 
-    public DevopsEnvResourceDetailRepositoryImpl(DevopsEnvResourceDetailMapper devopsEnvResourceDetailMapper) {
+    public DevopsEnvResourceDetailRepositoryImpl(DevopsEnvResourceDetailMapper devopsEnvResourceDetailMapper,
+                                                 @Value("${agent.compress-resource-detail:true}")
+                                                         boolean compressMessage) {
         this.devopsEnvResourceDetailMapper = devopsEnvResourceDetailMapper;
+        this.compressMessage = compressMessage;
     }
 
 
     @Override
     public DevopsEnvResourceDetailE create(DevopsEnvResourceDetailE devopsEnvResourceDetailE) {
-        DevopsEnvResourceDetailDO devopsEnvResourceDetailDO =
-                ConvertHelper.convert(devopsEnvResourceDetailE, DevopsEnvResourceDetailDO.class);
+        DevopsEnvResourceDetailDO devopsEnvResourceDetailDO = encode(devopsEnvResourceDetailE);
         if (devopsEnvResourceDetailMapper.insert(devopsEnvResourceDetailDO) != 1) {
             throw new CommonException("error.message.insert");
         }
+        devopsEnvResourceDetailDO.setMessage(devopsEnvResourceDetailE.getMessage());
         return ConvertHelper.convert(devopsEnvResourceDetailDO, DevopsEnvResourceDetailE.class);
     }
 
     @Override
     public DevopsEnvResourceDetailE query(Long messageId) {
-        return ConvertHelper.convert(
-                devopsEnvResourceDetailMapper.selectByPrimaryKey(messageId),
-                DevopsEnvResourceDetailE.class);
+        return decode(devopsEnvResourceDetailMapper.selectByPrimaryKey(messageId));
     }
 
     @Override
     public void update(DevopsEnvResourceDetailE devopsEnvResourceDetailE) {
-        DevopsEnvResourceDetailDO devopsEnvResourceDetailDO = ConvertHelper.convert(
-                devopsEnvResourceDetailE, DevopsEnvResourceDetailDO.class);
-        devopsEnvResourceDetailDO.setObjectVersionNumber(
-                devopsEnvResourceDetailMapper.selectByPrimaryKey(
-                        devopsEnvResourceDetailDO.getId()).getObjectVersionNumber());
-        if (devopsEnvResourceDetailMapper.updateByPrimaryKeySelective(devopsEnvResourceDetailDO) != 1) {
-            throw new CommonException("error.message.update");
+        devopsEnvResourceDetailMapper.updateMessage(encode(devopsEnvResourceDetailE));
+    }
+
+    @Override
+    public List<DevopsEnvResourceDetailE> listByIds(List<Long> messageIds) {
+        List<DevopsEnvResourceDetailE> devopsEnvResourceDetailES = new ArrayList<>();
+        for (List<Long> batch : Lists.partition(messageIds, BATCH_SIZE)) {
+            devopsEnvResourceDetailMapper.listByIds(batch)
+                    .forEach(t -> devopsEnvResourceDetailES.add(decode(t)));
+        }
+        return devopsEnvResourceDetailES;
+    }
+
+    @Override
+    public List<DevopsEnvResourceDetailE> batchCreate(List<DevopsEnvResourceDetailE> devopsEnvResourceDetailES) {
+        if (devopsEnvResourceDetailES.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<DevopsEnvResourceDetailDO> devopsEnvResourceDetailDOS = devopsEnvResourceDetailES.stream()
+                .map(this::encode).collect(Collectors.toList());
+        //批量插入不经过审计拦截器，显式写入创建人和更新人
+        Long userId = AuditHelper.audit().getUser();
+        for (List<DevopsEnvResourceDetailDO> batch : Lists.partition(devopsEnvResourceDetailDOS, BATCH_SIZE)) {
+            if (devopsEnvResourceDetailMapper.batchInsert(batch, userId) != batch.size()) {
+                throw new CommonException("error.message.insert");
+            }
         }
+        List<DevopsEnvResourceDetailE> devopsEnvResourceDetailList = new ArrayList<>();
+        for (int i = 0; i < devopsEnvResourceDetailDOS.size(); i++) {
+            DevopsEnvResourceDetailDO devopsEnvResourceDetailDO = devopsEnvResourceDetailDOS.get(i);
+            devopsEnvResourceDetailDO.setMessage(devopsEnvResourceDetailES.get(i).getMessage());
+            devopsEnvResourceDetailList.add(
+                    ConvertHelper.convert(devopsEnvResourceDetailDO, DevopsEnvResourceDetailE.class));
+        }
+        return devopsEnvResourceDetailList;
+    }
+
+    @Override
+    public void batchUpdate(List<DevopsEnvResourceDetailE> devopsEnvResourceDetailES) {
+        if (devopsEnvResourceDetailES.isEmpty()) {
+            return;
+        }
+        List<DevopsEnvResourceDetailDO> devopsEnvResourceDetailDOS = devopsEnvResourceDetailES.stream()
+                .map(this::encode).collect(Collectors.toList());
+        Lists.partition(devopsEnvResourceDetailDOS, BATCH_SIZE)
+                .forEach(batch -> devopsEnvResourceDetailMapper.batchUpdate(batch));
+    }
+
+    @Override
+    public Long compressMessages(Long fromId, Integer size) {
+        if (!compressMessage) {
+            return null;
+        }
+        List<DevopsEnvResourceDetailDO> devopsEnvResourceDetailDOS =
+                devopsEnvResourceDetailMapper.listUncompressed(fromId, size);
+        if (devopsEnvResourceDetailDOS.isEmpty()) {
+            return null;
+        }
+        devopsEnvResourceDetailDOS.forEach(t -> {
+            t.setMessageHash(ResourceDetailCodec.hash(t.getMessage()));
+            t.setCompressedMessage(ResourceDetailCodec.compress(t.getMessage()));
+            t.setMessage(null);
+        });
+        devopsEnvResourceDetailMapper.compressMessages(devopsEnvResourceDetailDOS);
+        return devopsEnvResourceDetailDOS.get(devopsEnvResourceDetailDOS.size() - 1).getId();
+    }
+
+    /**
+     * 按存储方式转换为DO，开启压缩时只保存压缩内容，摘要用于跳过内容未变化的更新
+     */
+    private DevopsEnvResourceDetailDO encode(DevopsEnvResourceDetailE devopsEnvResourceDetailE) {
+        DevopsEnvResourceDetailDO devopsEnvResourceDetailDO =
+                ConvertHelper.convert(devopsEnvResourceDetailE, DevopsEnvResourceDetailDO.class);
+        String message = devopsEnvResourceDetailDO.getMessage();
+        devopsEnvResourceDetailDO.setMessageHash(ResourceDetailCodec.hash(message));
+        if (compressMessage && message != null) {
+            devopsEnvResourceDetailDO.setCompressedMessage(ResourceDetailCodec.compress(message));
+            devopsEnvResourceDetailDO.setMessage(null);
+        }
+        return devopsEnvResourceDetailDO;
+    }
+
+    private DevopsEnvResourceDetailE decode(DevopsEnvResourceDetailDO devopsEnvResourceDetailDO) {
+        if (devopsEnvResourceDetailDO != null && devopsEnvResourceDetailDO.getCompressedMessage() != null) {
+            devopsEnvResourceDetailDO.setMessage(
+                    ResourceDetailCodec.decompress(devopsEnvResourceDetailDO.getCompressedMessage()));
+        }
+        return ConvertHelper.convert(devopsEnvResourceDetailDO, DevopsEnvResourceDetailE.class);
     }
 }
@@ -1,15 +1,20 @@
 package io.choerodon.devops.infra.persistence.impl;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
+import com.google.common.collect.Lists;
 import org.springframework.stereotype.Service;
 
 import io.choerodon.core.convertor.ConvertHelper;
 import io.choerodon.core.exception.CommonException;
 import io.choerodon.devops.domain.application.entity.DevopsEnvResourceE;
 import io.choerodon.devops.domain.application.repository.DevopsEnvResourceRepository;
+import io.choerodon.devops.infra.common.util.EnvResourceReversionCache;
 import io.choerodon.devops.infra.dataobject.DevopsEnvResourceDO;
 import io.choerodon.devops.infra.mapper.DevopsEnvResourceMapper;
+import io.choerodon.mybatis.helper.AuditHelper;
 
 /**
  * Created by younger on 2018/4/24.
@@ -17,10 +22,15 @@ import io.choerodon.devops.infra.mapper.DevopsEnvResourceMapper;
 @Service
 public class DevopsEnvResourceRepositoryImpl implements DevopsEnvResourceRepository {
 
+    private static final int BATCH_SIZE = 500;
+
     private DevopsEnvResourceMapper devopsEnvResourceMapper;
+    private EnvResourceReversionCache envResourceReversionCache;
 
-    public DevopsEnvResourceRepositoryImpl(DevopsEnvResourceMapper devopsEnvResourceMapper) {
+    public DevopsEnvResourceRepositoryImpl(DevopsEnvResourceMapper devopsEnvResourceMapper,
+                                           EnvResourceReversionCache envResourceReversionCache) {
         this.devopsEnvResourceMapper = devopsEnvResourceMapper;
+        this.envResourceReversionCache = envResourceReversionCache;
     }
 
     @Override
@@ -30,6 +40,7 @@ public class DevopsEnvResourceRepositoryImpl implements DevopsEnvResourceReposit
         if (devopsEnvResourceMapper.insert(devopsEnvResourceDO) != 1) {
             throw new CommonException("error.resource.insert");
         }
+        devopsEnvResourceE.setId(devopsEnvResourceDO.getId());
     }
 
     @Override
@@ -55,6 +66,26 @@ public class DevopsEnvResourceRepositoryImpl implements DevopsEnvResourceReposit
         return ConvertHelper.convert(devopsEnvResourceDO, DevopsEnvResourceE.class);
     }
 
+    @Override
+    public List<DevopsEnvResourceE> listByInstanceIdAndKindAndNames(Long instanceId,
+                                                                    List<DevopsEnvResourceE> resources) {
+        if (resources.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<DevopsEnvResourceDO> devopsEnvResourceDOS = new ArrayList<>();
+        for (List<DevopsEnvResourceE> batch : Lists.partition(resources, BATCH_SIZE)) {
+            List<DevopsEnvResourceDO> kindAndNames = batch.stream().map(t -> {
+                DevopsEnvResourceDO devopsEnvResourceDO = new DevopsEnvResourceDO();
+                devopsEnvResourceDO.setKind(t.getKind());
+                devopsEnvResourceDO.setName(t.getName());
+                return devopsEnvResourceDO;
+            }).collect(Collectors.toList());
+            devopsEnvResourceDOS.addAll(
+                    devopsEnvResourceMapper.listByInstanceIdAndKindAndNames(instanceId, kindAndNames));
+        }
+        return ConvertHelper.convertList(devopsEnvResourceDOS, DevopsEnvResourceE.class);
+    }
+
     @Override
     public void update(DevopsEnvResourceE devopsEnvResourceE) {
         DevopsEnvResourceDO devopsEnvResourceDO = ConvertHelper.convert(
@@ -67,12 +98,70 @@ public class DevopsEnvResourceRepositoryImpl implements DevopsEnvResourceReposit
         }
     }
 
+    @Override
+    public void batchCreate(List<DevopsEnvResourceE> devopsEnvResourceES) {
+        if (devopsEnvResourceES.isEmpty()) {
+            return;
+        }
+        List<DevopsEnvResourceDO> devopsEnvResourceDOS =
+                ConvertHelper.convertList(devopsEnvResourceES, DevopsEnvResourceDO.class);
+        //批量插入不经过审计拦截器，显式写入创建人和更新人
+        Long userId = AuditHelper.audit().getUser();
+        for (List<DevopsEnvResourceDO> batch : Lists.partition(devopsEnvResourceDOS, BATCH_SIZE)) {
+            if (devopsEnvResourceMapper.batchInsert(batch, userId) != batch.size()) {
+                throw new CommonException("error.resource.insert");
+            }
+        }
+    }
+
+    @Override
+    public boolean updateReversion(Long id, Long reversion) {
+        return devopsEnvResourceMapper.updateReversion(id, reversion) == 1;
+    }
+
+    @Override
+    public void batchUpdateReversion(List<DevopsEnvResourceE> devopsEnvResourceES) {
+        if (devopsEnvResourceES.isEmpty()) {
+            return;
+        }
+        List<DevopsEnvResourceDO> devopsEnvResourceDOS =
+                ConvertHelper.convertList(devopsEnvResourceES, DevopsEnvResourceDO.class);
+        Lists.partition(devopsEnvResourceDOS, BATCH_SIZE)
+                .forEach(batch -> devopsEnvResourceMapper.batchUpdateReversion(batch));
+    }
+
     @Override
     public void deleteByKindAndName(String kind, String name) {
         DevopsEnvResourceDO devopsEnvResourceDO = new DevopsEnvResourceDO();
         devopsEnvResourceDO.setKind(kind);
         devopsEnvResourceDO.setName(name);
         devopsEnvResourceMapper.delete(devopsEnvResourceDO);
+        envResourceReversionCache.invalidate(kind, name);
+    }
+
+    @Override
+    public void deleteByKindAndNames(String kind, List<String> names) {
+        if (names.isEmpty()) {
+            return;
+        }
+        Lists.partition(names, BATCH_SIZE).forEach(t -> devopsEnvResourceMapper.deleteByKindAndNames(kind, t));
+        envResourceReversionCache.invalidateAll(kind, names);
+    }
+
+    @Override
+    public List<DevopsEnvResourceE> listByInstanceIds(List<Long> instanceIds) {
+        List<DevopsEnvResourceDO> devopsEnvResourceDOS = new ArrayList<>();
+        Lists.partition(instanceIds, BATCH_SIZE)
+                .forEach(batch -> devopsEnvResourceDOS.addAll(devopsEnvResourceMapper.listByInstanceIds(batch)));
+        return ConvertHelper.convertList(devopsEnvResourceDOS, DevopsEnvResourceE.class);
+    }
+
+    @Override
+    public List<DevopsEnvResourceE> listByKindAndNames(String kind, List<String> names) {
+        List<DevopsEnvResourceDO> devopsEnvResourceDOS = new ArrayList<>();
+        Lists.partition(names, BATCH_SIZE)
+                .forEach(batch -> devopsEnvResourceDOS.addAll(devopsEnvResourceMapper.listByKindAndNames(kind, batch)));
+        return ConvertHelper.convertList(devopsEnvResourceDOS, DevopsEnvResourceE.class);
     }
 
     @Override
@@ -114,4 +114,14 @@ public class DevopsEnvironmentRepositoryImpl implements DevopsEnvironmentReposit
         devopsEnvironmentMapper.selectOne(devopsEnvironmentDO);
         return ConvertHelper.convert(devopsEnvironmentMapper.selectOne(devopsEnvironmentDO), DevopsEnvironmentE.class);
     }
+
+    @Override
+    public Boolean lockSync(Long envId, Integer expireSeconds) {
+        return devopsEnvironmentMapper.lockSync(envId, expireSeconds) == 1;
+    }
+
+    @Override
+    public void unlockSync(Long envId) {
+        devopsEnvironmentMapper.unlockSync(envId);
+    }
 }
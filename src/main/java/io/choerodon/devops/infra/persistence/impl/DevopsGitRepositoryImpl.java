@@ -1,10 +1,8 @@
 package io.choerodon.devops.infra.persistence.impl;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import io.kubernetes.client.JSON;
 import org.apache.commons.lang.StringUtils;
@@ -27,13 +25,13 @@ import io.choerodon.devops.domain.application.entity.iam.UserE;
 import io.choerodon.devops.domain.application.repository.*;
 import io.choerodon.devops.domain.application.valueobject.Organization;
 import io.choerodon.devops.infra.common.util.GitUserNameUtil;
+import io.choerodon.devops.infra.common.util.GitlabTagIndex;
 import io.choerodon.devops.infra.common.util.TypeUtil;
 import io.choerodon.devops.infra.dataobject.ApplicationDO;
 import io.choerodon.devops.infra.dataobject.DevopsBranchDO;
 import io.choerodon.devops.infra.dataobject.gitlab.BranchDO;
 import io.choerodon.devops.infra.dataobject.gitlab.CommitDO;
 import io.choerodon.devops.infra.dataobject.gitlab.TagDO;
-import io.choerodon.devops.infra.dataobject.gitlab.TagNodeDO;
 import io.choerodon.devops.infra.feign.GitlabServiceClient;
 import io.choerodon.devops.infra.mapper.ApplicationMapper;
 import io.choerodon.devops.infra.mapper.DevopsBranchMapper;
@@ -74,15 +72,23 @@ public class DevopsGitRepositoryImpl implements DevopsGitRepository {
     private DevopsMergeRequestMapper devopsMergeRequestMapper;
     @Autowired
     private DevopsMergeRequestRepository devopsMergeRequestRepository;
+    @Autowired
+    private GitlabTagIndex gitlabTagIndex;
 
     @Override
     public void createTag(Integer gitLabProjectId, String tag, String ref, Integer userId) {
-        gitlabServiceClient.createTag(gitLabProjectId, tag, ref, userId);
+        ResponseEntity<TagDO> tagResponseEntity = gitlabServiceClient.createTag(gitLabProjectId, tag, ref, userId);
+        if (tagResponseEntity.getStatusCode().is2xxSuccessful() && tagResponseEntity.getBody() != null) {
+            gitlabTagIndex.put(gitLabProjectId, tagResponseEntity.getBody());
+        } else {
+            gitlabTagIndex.invalidate(gitLabProjectId);
+        }
     }
 
     @Override
     public void deleteTag(Integer gitLabProjectId, String tag, Integer userId) {
         gitlabServiceClient.deleteTag(gitLabProjectId, tag, userId);
+        gitlabTagIndex.remove(gitLabProjectId, tag);
     }
 
     @Override
@@ -110,6 +116,21 @@ public class DevopsGitRepositoryImpl implements DevopsGitRepository {
         }
     }
 
+    @Override
+    public Map<Long, UserE> listUsersByGitlabUserIds(List<Long> gitlabUserIds) {
+        Map<Long, Long> userIds = userAttrRepository.listByGitlabUserIds(gitlabUserIds).stream()
+                .collect(Collectors.toMap(UserAttrE::getGitlabUserId, UserAttrE::getId, (a, b) -> a));
+        Map<Long, UserE> users = iamRepository.listUsersByIds(new ArrayList<>(new HashSet<>(userIds.values())))
+                .stream().collect(Collectors.toMap(UserE::getId, t -> t, (a, b) -> a));
+        Map<Long, UserE> result = new HashMap<>();
+        userIds.forEach((gitlabUserId, userId) -> {
+            if (users.containsKey(userId)) {
+                result.put(gitlabUserId, users.get(userId));
+            }
+        });
+        return result;
+    }
+
     @Override
     public String getGitlabUrl(Long projectId, Long appId) {
         ApplicationE applicationE = applicationRepository.query(appId);
@@ -186,27 +207,37 @@ public class DevopsGitRepositoryImpl implements DevopsGitRepository {
     @Override
     public Page<TagDTO> getTags(Long appId, String path, Integer page, String params, Integer size, Integer userId) {
         Integer projectId = getGitLabId(appId);
-        List<TagDO> tagTotalList = getGitLabTags(projectId, userId);
         Page<TagDTO> tagsPage = new Page<>();
-        List<TagDO> tagList = tagTotalList.stream()
-                .filter(t -> filterTag(t, params))
+        Map<String, Object> maps = StringUtils.isEmpty(params) ? null : json.deserialize(params, Map.class);
+        List<TagDO> tagList = gitlabTagIndex.listTags(projectId,
+                () -> getGitLabTags(projectId, userId), () -> getLatestGitLabTag(projectId, userId)).stream()
+                .filter(t -> filterTag(t, maps))
                 .collect(Collectors.toCollection(ArrayList::new));
         int totalPageSizes = tagList.size() / size + (tagList.size() % size == 0 ? 0 : 1);
         if (page > totalPageSizes - 1 && page > 0) {
             page = totalPageSizes - 1;
         }
         List<TagDTO> tagDTOS = tagList.stream()
-                .sorted(this::sortTag)
                 .skip(page.longValue() * size).limit(size)
                 .map(TagDTO::new)
-                .parallel()
-                .peek(t -> {
-                    UserE commitUserE = iamRepository.queryByLoginName(t.getCommit()
-                            .getAuthorName().equals("root") ? "admin" : t.getCommit().getAuthorName());
-                    t.setCommitUserImage(commitUserE.getImageUrl());
-                    t.getCommit().setUrl(String.format("%s/commit/%s?view=parallel", path, t.getCommit().getId()));
-                })
                 .collect(Collectors.toCollection(ArrayList::new));
+        //同一作者只查询一次头像
+        Map<String, UserE> authors = new HashMap<>();
+        tagDTOS.stream().map(t -> getAuthorLoginName(t.getCommit())).distinct().forEach(loginName -> {
+            UserE userE = iamRepository.queryByLoginName(loginName);
+            if (userE != null) {
+                authors.put(loginName, userE);
+            }
+        });
+        tagDTOS.forEach(t -> {
+            //索引中的tag在请求间共享，复制commit后再设置地址
+            CommitDO commitDO = new CommitDO();
+            BeanUtils.copyProperties(t.getCommit(), commitDO);
+            commitDO.setUrl(String.format("%s/commit/%s?view=parallel", path, commitDO.getId()));
+            t.setCommit(commitDO);
+            UserE commitUserE = authors.get(getAuthorLoginName(commitDO));
+            t.setCommitUserImage(commitUserE == null ? null : commitUserE.getImageUrl());
+        });
         tagsPage.setSize(size);
         tagsPage.setTotalElements(tagList.size());
         tagsPage.setTotalPages(totalPageSizes);
@@ -216,10 +247,13 @@ public class DevopsGitRepositoryImpl implements DevopsGitRepository {
         return tagsPage;
     }
 
-    private Boolean filterTag(TagDO tagDO, String params) {
+    private String getAuthorLoginName(CommitDO commitDO) {
+        return commitDO.getAuthorName().equals("root") ? "admin" : commitDO.getAuthorName();
+    }
+
+    private Boolean filterTag(TagDO tagDO, Map<String, Object> maps) {
         Integer index = 0;
-        if (!StringUtils.isEmpty(params)) {
-            Map<String, Object> maps = json.deserialize(params, Map.class);
+        if (maps != null) {
             String param = TypeUtil.cast(maps.get(TypeUtil.PARAM)).toString();
             if (!param.equals("")) {
                 if (tagDO.getName().contains(param) || tagDO.getCommit().getShortId().contains(param)
@@ -291,7 +325,27 @@ public class DevopsGitRepositoryImpl implements DevopsGitRepository {
     @Override
     public List<TagDO> getTagList(Long appId, Integer userId) {
         Integer projectId = getGitLabId(appId);
-        return getGitLabTags(projectId, userId);
+        return new ArrayList<>(gitlabTagIndex.listTags(projectId,
+                () -> getGitLabTags(projectId, userId), () -> getLatestGitLabTag(projectId, userId)));
+    }
+
+    @Override
+    public Boolean containsTag(Long appId, String tagName, Integer userId) {
+        Integer projectId = getGitLabId(appId);
+        return gitlabTagIndex.contains(projectId, tagName,
+                () -> getGitLabTags(projectId, userId), () -> getLatestGitLabTag(projectId, userId));
+    }
+
+    /**
+     * gitlab按更新时间倒序返回tag，只取第一个用于校验tag索引是否过时
+     */
+    private TagDO getLatestGitLabTag(Integer projectId, Integer userId) {
+        ResponseEntity<List<TagDO>> tagResponseEntity = gitlabServiceClient.getPageTags(projectId, 1, 1, userId);
+        if (tagResponseEntity.getStatusCode() != HttpStatus.OK) {
+            throw new CommonException("error.tags.get");
+        }
+        List<TagDO> tags = tagResponseEntity.getBody();
+        return tags == null || tags.isEmpty() ? null : tags.get(0);
     }
 
     @Override
@@ -359,20 +413,10 @@ public class DevopsGitRepositoryImpl implements DevopsGitRepository {
     public Map<String, Object> getMergeRequestList(Long projectId, Integer gitLabProjectId,
                                                    String state,
                                                    PageRequest pageRequest) {
-        List<DevopsMergeRequestE> allMergeRequest = devopsMergeRequestRepository
-                .getByGitlabProjectId(gitLabProjectId);
-        final int[] count = {0, 0, 0};
-        if (allMergeRequest != null && !allMergeRequest.isEmpty()) {
-            allMergeRequest.forEach(devopsMergeRequestE -> {
-                if ("merged".equals(devopsMergeRequestE.getState())) {
-                    count[0]++;
-                } else if ("opened".equals(devopsMergeRequestE.getState())) {
-                    count[1]++;
-                } else if ("closed".equals(devopsMergeRequestE.getState())) {
-                    count[2]++;
-                }
-            });
-        }
+        Map<String, Integer> counts = devopsMergeRequestRepository.countByState(gitLabProjectId);
+        int mergeCount = counts.getOrDefault("merged", 0);
+        int openCount = counts.getOrDefault("opened", 0);
+        int closeCount = counts.getOrDefault("closed", 0);
         Page<DevopsMergeRequestE> page = devopsMergeRequestRepository
                 .getByGitlabProjectId(gitLabProjectId, pageRequest);
         if (StringUtil.isNotEmpty(state)) {
@@ -382,42 +426,44 @@ public class DevopsGitRepositoryImpl implements DevopsGitRepository {
         List<MergeRequestDTO> pageContent = new ArrayList<>();
         List<DevopsMergeRequestE> content = page.getContent();
         if (content != null && !content.isEmpty()) {
-            content.forEach(devopsMergeRequestE -> {
-                MergeRequestDTO mergeRequestDTO = devopsMergeRequestToMergeRequest(
-                        devopsMergeRequestE);
-                pageContent.add(mergeRequestDTO);
-            });
+            Map<Long, UserE> users = listUsersByGitlabUserIds(content.stream()
+                    .flatMap(t -> Stream.of(t.getAuthorId(), t.getAssigneeId()))
+                    .collect(Collectors.toList()));
+            Map<Long, List<CommitDO>> commits = devopsMergeRequestRepository.listCommits(content,
+                    devopsGitRepository.getGitlabUserId());
+            content.forEach(devopsMergeRequestE -> pageContent.add(devopsMergeRequestToMergeRequest(
+                    devopsMergeRequestE, users, commits.get(devopsMergeRequestE.getId()))));
         }
-        int total = count[0] + count[1] + count[2];
+        int total = mergeCount + openCount + closeCount;
         Page<MergeRequestDTO> pageResult = new Page<>();
         BeanUtils.copyProperties(page, pageResult);
         pageResult.setContent(pageContent);
         Map<String, Object> result = new HashMap<>();
-        result.put("mergeCount", count[0]);
-        result.put("openCount", count[1]);
-        result.put("closeCount", count[2]);
+        result.put("mergeCount", mergeCount);
+        result.put("openCount", openCount);
+        result.put("closeCount", closeCount);
         result.put("totalCount", total);
         result.put("pageResult", pageResult);
         return result;
     }
 
-    private MergeRequestDTO devopsMergeRequestToMergeRequest(DevopsMergeRequestE devopsMergeRequestE) {
+    private MergeRequestDTO devopsMergeRequestToMergeRequest(DevopsMergeRequestE devopsMergeRequestE,
+                                                             Map<Long, UserE> users,
+                                                             List<CommitDO> commitDOS) {
         MergeRequestDTO mergeRequestDTO = new MergeRequestDTO();
         BeanUtils.copyProperties(devopsMergeRequestE, mergeRequestDTO);
         mergeRequestDTO.setProjectId(devopsMergeRequestE.getProjectId().intValue());
         mergeRequestDTO.setId(devopsMergeRequestE.getId().intValue());
         mergeRequestDTO.setIid(devopsMergeRequestE.getGitlabMergeRequestId().intValue());
-        Long authorUserId = devopsGitRepository
-                .getUserIdByGitlabUserId(devopsMergeRequestE.getAuthorId());
-        Long assigneeId = devopsGitRepository
-                .getUserIdByGitlabUserId(devopsMergeRequestE.getAssigneeId());
-        Long gitlabMergeRequestId = devopsMergeRequestE.getGitlabMergeRequestId();
-        Integer gitlabUserId = devopsGitRepository.getGitlabUserId();
-        List<CommitDO> commitDOS = gitlabServiceClient.listCommits(
-                devopsMergeRequestE.getProjectId().intValue(),
-                gitlabMergeRequestId.intValue(), gitlabUserId).getBody();
         mergeRequestDTO.setCommits(ConvertHelper.convertList(commitDOS, CommitDTO.class));
-        UserE authorUser = iamRepository.queryUserByUserId(authorUserId);
+        Integer commitCount = devopsMergeRequestE.getCommitCount();
+        if (commitCount == null) {
+            //webhook保存提交数量之前的数据，用本次查询的提交补上
+            commitCount = commitDOS.size();
+            devopsMergeRequestRepository.updateCommitCount(devopsMergeRequestE.getId(), commitCount);
+        }
+        mergeRequestDTO.setCommitCount(commitCount);
+        UserE authorUser = users.get(devopsMergeRequestE.getAuthorId());
         if (authorUser != null) {
             AuthorDTO authorDTO = new AuthorDTO();
             authorDTO.setUsername(authorUser.getLoginName());
@@ -426,12 +472,12 @@ public class DevopsGitRepositoryImpl implements DevopsGitRepository {
             authorDTO.setWebUrl(authorUser.getImageUrl());
             mergeRequestDTO.setAuthor(authorDTO);
         }
-        UserE assigneeUser = iamRepository.queryUserByUserId(assigneeId);
+        UserE assigneeUser = users.get(devopsMergeRequestE.getAssigneeId());
         if (assigneeUser != null) {
             AssigneeDTO assigneeDTO = new AssigneeDTO();
             assigneeDTO.setUsername(assigneeUser.getLoginName());
             assigneeDTO.setName(assigneeUser.getRealName());
-            assigneeDTO.setId(assigneeId.intValue());
+            assigneeDTO.setId(assigneeUser.getId() == null ? null : assigneeUser.getId().intValue());
             assigneeDTO.setWebUrl(assigneeUser.getImageUrl());
             mergeRequestDTO.setAssignee(assigneeDTO);
         }
@@ -469,18 +515,4 @@ public class DevopsGitRepositoryImpl implements DevopsGitRepository {
         devopsBranchDO.setAppId(appId);
         return ConvertHelper.convertList(devopsBranchMapper.select(devopsBranchDO), DevopsBranchE.class);
     }
-
-    private Integer sortTag(TagDO a, TagDO b) {
-        TagNodeDO tagA = TagNodeDO.tagNameToTagNode(a.getName());
-        TagNodeDO tagB = TagNodeDO.tagNameToTagNode(b.getName());
-        if (tagA != null && tagB != null) {
-            return tagA.compareTo(tagB) * -1;
-        } else if (tagA == null && tagB != null) {
-            return 1;
-        } else if (tagA != null) {
-            return -1;
-        } else {
-            return a.getName().compareToIgnoreCase(b.getName());
-        }
-    }
 }
@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import com.google.common.collect.Lists;
 import com.google.gson.Gson;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Value;
@@ -44,6 +45,7 @@ import io.choerodon.websocket.helper.EnvSession;
 @Component
 public class DevopsIngressRepositoryImpl implements DevopsIngressRepository {
     private static final String DOMAIN_NAME_EXIST_ERROR = "error.domain.name.exist";
+    private static final int BATCH_SIZE = 500;
     private static final Gson gson = new Gson();
     @Value("${agent.version}")
     private String agentExpectVersion;
@@ -201,6 +203,14 @@ public class DevopsIngressRepositoryImpl implements DevopsIngressRepository {
         devopsIngressPathMapper.delete(new DevopsIngressPathDO(ingressId));
     }
 
+    @Override
+    public void deleteIngressByIds(List<Long> ingressIds) {
+        Lists.partition(ingressIds, BATCH_SIZE).forEach(t -> {
+            devopsIngressMapper.deleteByIds(t);
+            devopsIngressPathMapper.deleteByIngressIds(t);
+        });
+    }
+
     @Override
     public Long setStatus(Long envId, String name, String status) {
         DevopsIngressDO ingressDO = new DevopsIngressDO(name);
@@ -219,6 +229,14 @@ public class DevopsIngressRepositoryImpl implements DevopsIngressRepository {
         return devopsIngressMapper.queryIngressNameByServiceId(serviceId);
     }
 
+    @Override
+    public List<DevopsIngressDO> listByServiceNames(String namespace, List<String> serviceNames) {
+        List<DevopsIngressDO> devopsIngressDOS = new ArrayList<>();
+        Lists.partition(serviceNames, BATCH_SIZE)
+                .forEach(t -> devopsIngressDOS.addAll(devopsIngressMapper.listByServiceNames(namespace, t)));
+        return devopsIngressDOS;
+    }
+
     @Override
     public Boolean checkIngressName(Long envId, String name) {
         DevopsIngressDO devopsIngressDO = new DevopsIngressDO(name);
@@ -1,11 +1,19 @@
 package io.choerodon.devops.infra.persistence.impl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
 import io.choerodon.core.convertor.ConvertHelper;
@@ -15,7 +23,11 @@ import io.choerodon.core.exception.CommonException;
 import io.choerodon.devops.api.dto.DevopsMergeRequestDTO;
 import io.choerodon.devops.domain.application.entity.DevopsMergeRequestE;
 import io.choerodon.devops.domain.application.repository.DevopsMergeRequestRepository;
+import io.choerodon.devops.infra.common.util.BoundedExecutor;
+import io.choerodon.devops.infra.common.util.TypeUtil;
 import io.choerodon.devops.infra.dataobject.DevopsMergeRequestDO;
+import io.choerodon.devops.infra.dataobject.gitlab.CommitDO;
+import io.choerodon.devops.infra.feign.GitlabServiceClient;
 import io.choerodon.devops.infra.mapper.DevopsMergeRequestMapper;
 import io.choerodon.mybatis.pagehelper.PageHelper;
 import io.choerodon.mybatis.pagehelper.domain.PageRequest;
@@ -23,12 +35,24 @@ import io.choerodon.mybatis.pagehelper.domain.Sort;
 
 
 @Service
-public class DevopsMergeRequestRepositoryImpl implements DevopsMergeRequestRepository {
+public class DevopsMergeRequestRepositoryImpl implements DevopsMergeRequestRepository, DisposableBean {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DevopsMergeRequestRepositoryImpl.class);
+    private static final String ERROR_COMMITS_GET = "error.merge.request.commits.get";
 
     @Autowired
     DevopsMergeRequestMapper devopsMergeRequestMapper;
+    @Autowired
+    private GitlabServiceClient gitlabServiceClient;
+
+    private final BoundedExecutor executor;
+
+    public DevopsMergeRequestRepositoryImpl(
+            @Value("${devops.merge-request-commit.parallelism:4}") int parallelism,
+            @Value("${devops.merge-request-commit.queue-capacity:200}") int queueCapacity,
+            @Value("${devops.merge-request-commit.timeout-millis:10000}") long timeoutMillis) {
+        this.executor = new BoundedExecutor("merge-request-commit", parallelism, queueCapacity, timeoutMillis);
+    }
 
     @Override
     public Integer create(DevopsMergeRequestE devopsMergeRequestE) {
@@ -49,6 +73,15 @@ public class DevopsMergeRequestRepositoryImpl implements DevopsMergeRequestRepos
                 devopsMergeRequestMapper.select(devopsMergeRequestDO)), DevopsMergeRequestE.class);
     }
 
+    @Override
+    public List<DevopsMergeRequestE> listBySourceBranches(Map<Long, Set<String>> sourceBranches) {
+        if (sourceBranches.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return ConvertHelper.convertList(devopsMergeRequestMapper.listBySourceBranches(sourceBranches),
+                DevopsMergeRequestE.class);
+    }
+
     @Override
     public DevopsMergeRequestE queryByAppIdAndGitlabId(Long projectId, Long gitlabMergeRequestId) {
         DevopsMergeRequestDO devopsMergeRequestDO = new DevopsMergeRequestDO();
@@ -111,5 +144,64 @@ public class DevopsMergeRequestRepositoryImpl implements DevopsMergeRequestRepos
                 throw new CommonException("error.update.merge.request");
             }
         }
+        //提交数量在后台查询，不阻塞webhook的处理
+        Integer gitlabUserId = TypeUtil.objToInteger(devopsMergeRequestE.getAuthorId());
+        executor.execute(() -> saveCommitCount(projectId, gitlabMergeRequestId, gitlabUserId));
+    }
+
+    private void saveCommitCount(Long gitlabProjectId, Long gitlabMergeRequestId, Integer gitlabUserId) {
+        try {
+            Integer commitCount = queryCommits(gitlabProjectId, gitlabMergeRequestId, gitlabUserId).size();
+            DevopsMergeRequestE devopsMergeRequestE = queryByAppIdAndGitlabId(gitlabProjectId, gitlabMergeRequestId);
+            if (devopsMergeRequestE != null) {
+                updateCommitCount(devopsMergeRequestE.getId(), commitCount);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("save commit count of merge request {} in gitlab project {} failed",
+                    gitlabMergeRequestId, gitlabProjectId, e);
+        }
+    }
+
+    @Override
+    public Map<String, Integer> countByState(Integer gitlabProjectId) {
+        Map<String, Integer> counts = new HashMap<>();
+        devopsMergeRequestMapper.countByState(gitlabProjectId).forEach(row -> counts.put(
+                TypeUtil.objToString(row.get("state")), TypeUtil.objToInteger(row.get("count"))));
+        return counts;
+    }
+
+    @Override
+    public Map<Long, List<CommitDO>> listCommits(List<DevopsMergeRequestE> devopsMergeRequestES,
+                                                 Integer gitlabUserId) {
+        long deadline = executor.deadline();
+        Map<Long, Future<List<CommitDO>>> futures = new LinkedHashMap<>();
+        devopsMergeRequestES.forEach(t -> futures.put(t.getId(), executor.submit(() ->
+                queryCommits(t.getProjectId(), t.getGitlabMergeRequestId(), gitlabUserId))));
+        Map<Long, List<CommitDO>> commits = new HashMap<>();
+        try {
+            futures.forEach((id, future) -> commits.put(id, executor.get(future, deadline, ERROR_COMMITS_GET)));
+        } finally {
+            futures.values().forEach(future -> future.cancel(true));
+        }
+        return commits;
+    }
+
+    @Override
+    public void updateCommitCount(Long id, Integer commitCount) {
+        devopsMergeRequestMapper.updateCommitCount(id, commitCount);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private List<CommitDO> queryCommits(Long gitlabProjectId, Long gitlabMergeRequestId, Integer gitlabUserId) {
+        ResponseEntity<List<CommitDO>> responseEntity = gitlabServiceClient.listCommits(
+                gitlabProjectId.intValue(), gitlabMergeRequestId.intValue(), gitlabUserId);
+        if (!responseEntity.getStatusCode().is2xxSuccessful()) {
+            throw new CommonException(ERROR_COMMITS_GET);
+        }
+        return responseEntity.getBody() == null ? new ArrayList<>() : responseEntity.getBody();
     }
 }
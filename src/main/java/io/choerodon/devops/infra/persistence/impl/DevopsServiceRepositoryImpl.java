@@ -31,6 +31,7 @@ import io.choerodon.mybatis.pagehelper.domain.PageRequest;
 @Component
 public class DevopsServiceRepositoryImpl implements DevopsServiceRepository {
 
+    private static final int BATCH_SIZE = 500;
     private static JSON json = new JSON();
     private DevopsServiceMapper devopsServiceMapper;
 
@@ -126,6 +127,11 @@ public class DevopsServiceRepositoryImpl implements DevopsServiceRepository {
         devopsServiceMapper.deleteByPrimaryKey(id);
     }
 
+    @Override
+    public void deleteByIds(List<Long> ids) {
+        Lists.partition(ids, BATCH_SIZE).forEach(t -> devopsServiceMapper.deleteByIds(t));
+    }
+
     @Override
     public void update(DevopsServiceE devopsServiceE) {
         if (devopsServiceMapper.updateByPrimaryKey(
@@ -155,6 +161,13 @@ public class DevopsServiceRepositoryImpl implements DevopsServiceRepository {
         return ConvertHelper.convert(devopsServiceMapper.selectOne(devopsServiceDO), DevopsServiceE.class);
     }
 
+    @Override
+    public List<DevopsServiceE> listByEnvId(Long envId) {
+        DevopsServiceDO devopsServiceDO = new DevopsServiceDO();
+        devopsServiceDO.setEnvId(envId);
+        return ConvertHelper.convertList(devopsServiceMapper.select(devopsServiceDO), DevopsServiceE.class);
+    }
+
     @Override
     public Boolean checkEnvHasService(Long envId) {
         return devopsServiceMapper.checkEnvHasService(envId);
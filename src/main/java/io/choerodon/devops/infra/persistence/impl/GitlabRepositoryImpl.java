@@ -134,6 +134,16 @@ public class GitlabRepositoryImpl implements GitlabRepository {
         return projectHookResponseEntity.getBody();
     }
 
+    @Override
+    public ProjectHook updateWebHook(Integer projectId, Integer userId, ProjectHook projectHook) {
+        ResponseEntity<ProjectHook> projectHookResponseEntity = gitlabServiceClient
+                .updateProjectHook(projectId, userId, projectHook);
+        if (!projectHookResponseEntity.getStatusCode().is2xxSuccessful()) {
+            throw new CommonException("error.projecthook.update");
+        }
+        return projectHookResponseEntity.getBody();
+    }
+
     @Override
     public GitlabProjectDO createProject(Integer groupId, String projectName, Integer userId, boolean visibility) {
         ResponseEntity<GitlabProjectDO> responseEntity = gitlabServiceClient
@@ -1,5 +1,11 @@
 package io.choerodon.devops.infra.persistence.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
 import org.springframework.stereotype.Component;
 
 import io.choerodon.core.convertor.ConvertHelper;
@@ -14,6 +20,8 @@ import io.choerodon.devops.infra.mapper.UserAttrMapper;
 @Component
 public class UserAttrRepositoryImpl implements UserAttrRepository {
 
+    private static final int BATCH_SIZE = 500;
+
     private UserAttrMapper userAttrMapper;
 
     public UserAttrRepositoryImpl(UserAttrMapper userAttrMapper) {
@@ -40,4 +48,12 @@ public class UserAttrRepositoryImpl implements UserAttrRepository {
         return userAttrMapper.selectOne(userAttrDO).getId();
     }
 
+    @Override
+    public List<UserAttrE> listByGitlabUserIds(List<Long> gitlabUserIds) {
+        List<Long> ids = gitlabUserIds.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        List<UserAttrDO> userAttrDOS = new ArrayList<>();
+        Lists.partition(ids, BATCH_SIZE).forEach(t -> userAttrDOS.addAll(userAttrMapper.listByGitlabUserIds(t)));
+        return ConvertHelper.convertList(userAttrDOS, UserAttrE.class);
+    }
+
 }
@@ -26,4 +26,10 @@ databaseChangeLog(logicalFilePath: 'dba/devops_app_instance.groovy') {
             column(name: "status")
         }
     }
-}
\ No newline at end of file
+
+    changeSet(author: 'younger', id: '2018-08-10-add-index') {
+        createIndex(indexName: "idx_env_id", tableName: "devops_app_instance") {
+            column(name: "env_id")
+        }
+    }
+}
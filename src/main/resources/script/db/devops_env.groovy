@@ -66,4 +66,10 @@ databaseChangeLog(logicalFilePath: 'dba/devops_env.groovy') {
                     column(name: 'agent_sync_commit', type: 'BIGINT UNSIGNED', remarks: 'senv_commit_agent_sync_id', afterColumn: 'devops_sync_commit')
                 }
             }
-}
\ No newline at end of file
+
+    changeSet(author: 'younger', id: '2018-08-20-add-column') {
+        addColumn(tableName: 'devops_env') {
+            column(name: 'sync_lock_expire', type: 'DATETIME', remarks: 'gitops同步锁的过期时间', afterColumn: 'agent_sync_commit')
+        }
+    }
+}
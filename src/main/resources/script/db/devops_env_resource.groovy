@@ -20,4 +20,16 @@ databaseChangeLog(logicalFilePath: 'dba/devops_env_resource.groovy') {
             column(name: "last_update_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
         }
     }
-}
\ No newline at end of file
+
+    changeSet(author: 'younger', id: '2018-08-10-add-index') {
+        createIndex(indexName: "idx_instance_kind_name", tableName: "devops_env_resource") {
+            column(name: "app_instance_id")
+            column(name: "kind")
+            column(name: "name")
+        }
+        createIndex(indexName: "idx_kind_name", tableName: "devops_env_resource") {
+            column(name: "kind")
+            column(name: "name")
+        }
+    }
+}
@@ -15,4 +15,11 @@ databaseChangeLog(logicalFilePath: 'dba/devops_env_resource_detail.groovy') {
             column(name: "last_update_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
         }
     }
-}
\ No newline at end of file
+
+    changeSet(author: 'younger', id: '2018-08-13-add-column') {
+        addColumn(tableName: 'devops_env_resource_detail') {
+            column(name: 'compressed_message', type: 'MEDIUMBLOB', remarks: '压缩后的资源信息', afterColumn: 'message')
+            column(name: 'message_hash', type: 'CHAR(32)', remarks: '资源信息md5', afterColumn: 'compressed_message')
+        }
+    }
+}
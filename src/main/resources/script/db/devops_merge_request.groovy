@@ -53,4 +53,14 @@ databaseChangeLog(logicalFilePath: 'dba/devops_merge_request.groovy') {
             column(name: "gitlab_merge_request_id",type: 'BIGINT UNSIGNED')
         }
     }
+
+    changeSet(author: 'runge', id: '2018-08-14-add-column') {
+        addColumn(tableName: 'devops_merge_request') {
+            column(name: 'commit_count', type: 'INT UNSIGNED', remarks: '提交数量', afterColumn: 'title')
+        }
+        createIndex(indexName: "idx_project_state", tableName: "devops_merge_request") {
+            column(name: "project_id")
+            column(name: "state")
+        }
+    }
 }
\ No newline at end of file
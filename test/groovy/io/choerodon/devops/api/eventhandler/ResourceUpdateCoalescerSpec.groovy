@@ -0,0 +1,98 @@
+package io.choerodon.devops.api.eventhandler
+
+import spock.lang.Specification
+
+import io.choerodon.devops.infra.config.AgentMsgDispatchProperties
+
+class ResourceUpdateCoalescerSpec extends Specification {
+
+    def coalescer = new ResourceUpdateCoalescer(new AgentMsgDispatchProperties())
+    def queue = []
+
+    def "ResourceVersion reads the object's own metadata"() {
+        expect:
+        ResourceUpdateCoalescer.resourceVersion(payload) == version
+
+        where:
+        payload                                                                                           || version
+        '{"metadata":{"name":"a","resourceVersion":"12"}}'                                                || 12L
+        '{"metadata":{"ownerReferences":[{"resourceVersion":"99"}],"resourceVersion":"12"}}'              || 12L
+        '{"metadata":{"annotations":{"x":"\\"resourceVersion\\":\\"99\\""},"resourceVersion":"12"}}'      || 12L
+        '{"status":{"resourceVersion":"99"},"metadata":{"name":"a"}}'                                     || null
+        '{"spec":{"a":[1,{"b":2}]},"metadata":{"resourceVersion":"12"},"status":{"broken'                || 12L
+        'not json'                                                                                        || null
+    }
+
+    def "Newer update moves to the tail and supersedes the queued one"() {
+        given:
+        offer("pod-a", 1)
+        queue << "sync"
+        offer("pod-a", 2)
+
+        expect:
+        drain() == ["sync", "pod-a:2"]
+    }
+
+    def "Older update is dropped and the queued one keeps its position"() {
+        given:
+        offer("pod-a", 5)
+        queue << "delete"
+        offer("pod-a", 3)
+
+        expect:
+        drain() == ["pod-a:5", "delete"]
+    }
+
+    def "Update without resourceVersion replaces the queued one"() {
+        given:
+        offer("pod-a", 5)
+        offer("pod-a", null)
+
+        expect:
+        drain() == ["pod-a:null"]
+    }
+
+    def "Sealed update is processed and later updates queue after it"() {
+        given:
+        offer("pod-a", 1)
+        coalescer.seal(1L, "pod-a")
+        queue << "delete"
+        offer("pod-a", 2)
+
+        expect:
+        drain() == ["pod-a:1", "delete", "pod-a:2"]
+    }
+
+    def "Discarded update leaves the queued one valid"() {
+        given:
+        offer("pod-a", 1)
+        def rejected = coalescer.offer(1L, "pod-a", payload(2))
+        coalescer.discard(rejected)
+        offer("pod-a", 3)
+
+        expect:
+        drain() == ["pod-a:3"]
+    }
+
+    private void offer(String key, Long version) {
+        def update = coalescer.offer(1L, key, payload(version))
+        if (update != null) {
+            queue << [key: key, update: update]
+            coalescer.enqueued(update)
+        }
+    }
+
+    private List<String> drain() {
+        queue.collect {
+            if (it instanceof String) {
+                return it
+            }
+            def payload = coalescer.take(it.update)
+            payload == null ? null : "${it.key}:${ResourceUpdateCoalescer.resourceVersion(payload)}".toString()
+        }.findAll { it != null }
+    }
+
+    private static String payload(Long version) {
+        version == null ? '{"metadata":{"name":"a"}}' : "{\"metadata\":{\"name\":\"a\",\"resourceVersion\":\"${version}\"}}"
+    }
+}
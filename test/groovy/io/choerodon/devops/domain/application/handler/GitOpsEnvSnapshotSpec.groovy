@@ -0,0 +1,84 @@
+package io.choerodon.devops.domain.application.handler
+
+import spock.lang.Specification
+
+import io.choerodon.devops.domain.application.entity.DevopsEnvFileResourceE
+import io.choerodon.devops.domain.application.repository.DevopsEnvFileResourceRepository
+
+class GitOpsEnvSnapshotSpec extends Specification {
+
+    def repository = Mock(DevopsEnvFileResourceRepository)
+    def snapshot = new GitOpsEnvSnapshot(1L, [], [], [], [
+            fileResource(1L, "a.yaml", 10L, "Service"),
+            fileResource(2L, "b.yaml", 20L, "Ingress"),
+            fileResource(3L, "c.yaml", 30L, "C7NHelmRelease"),
+            fileResource(4L, "c.yaml", 40L, "Service")
+    ], [])
+
+    def "Apply writes only the recorded changes"() {
+        given:
+        snapshot.saveFileResource("a.yaml", 10L, "Service")
+        snapshot.saveFileResource("moved.yaml", 20L, "Ingress")
+        snapshot.deleteFileResource(30L, "C7NHelmRelease")
+        snapshot.saveFileResource("new.yaml", 50L, "Service")
+        snapshot.saveFileResource("temp.yaml", 60L, "Ingress")
+        snapshot.deleteFileResource(60L, "Ingress")
+
+        when:
+        snapshot.apply(repository)
+
+        then:
+        1 * repository.deleteByIds([3L])
+        1 * repository.batchUpdateFilePath({ it*.id == [2L] && it*.filePath == ["moved.yaml"] })
+        1 * repository.batchCreate({
+            it*.resourceId == [50L] && it*.filePath == ["new.yaml"] && it*.environment*.id == [1L]
+        })
+        0 * repository._
+    }
+
+    def "Resource moved and then deleted is only deleted"() {
+        given:
+        snapshot.saveFileResource("moved.yaml", 20L, "Ingress")
+        snapshot.deleteFileResource(20L, "Ingress")
+
+        when:
+        snapshot.apply(repository)
+
+        then:
+        1 * repository.deleteByIds([2L])
+        1 * repository.batchUpdateFilePath([])
+        1 * repository.batchCreate([])
+    }
+
+    def "Apply clears the recorded changes"() {
+        given:
+        snapshot.saveFileResource("new.yaml", 50L, "Service")
+        snapshot.apply(repository)
+
+        when:
+        snapshot.apply(repository)
+
+        then:
+        1 * repository.deleteByIds([])
+        1 * repository.batchUpdateFilePath([])
+        1 * repository.batchCreate([])
+    }
+
+    def "File resources are listed as they were before the run"() {
+        given:
+        snapshot.deleteFileResource(30L, "C7NHelmRelease")
+
+        expect:
+        snapshot.listFileResources("c.yaml")*.resourceId == [30L, 40L]
+        snapshot.listFileResources("missing.yaml").isEmpty()
+    }
+
+    private static DevopsEnvFileResourceE fileResource(Long id, String filePath, Long resourceId, String resourceType) {
+        def fileResource = new DevopsEnvFileResourceE()
+        fileResource.id = id
+        fileResource.filePath = filePath
+        fileResource.resourceId = resourceId
+        fileResource.resourceType = resourceType
+        fileResource
+    }
+}
@@ -0,0 +1,74 @@
+package io.choerodon.devops.infra.common.util
+
+import org.eclipse.jgit.api.Git
+import org.eclipse.jgit.revwalk.RevCommit
+import spock.lang.Specification
+
+class GitOpsCommitIndexSpec extends Specification {
+
+    def pool = new GitOpsRepositoryPool(10, 60)
+    def index = new GitOpsCommitIndex(pool)
+    File dir
+    Git git
+    RevCommit first
+    RevCommit second
+    RevCommit third
+
+    def setup() {
+        dir = File.createTempDir()
+        git = Git.init().setDirectory(dir).call()
+        first = commit(["a.yaml": "a1", "b.yaml": "b1"])
+        second = commit(["a.yaml": "a2"])
+        third = commit(["c.yaml": "c1"])
+        def refUpdate = git.repository.updateRef(GitOpsRepositoryPool.REMOTE_MASTER)
+        refUpdate.setNewObjectId(third)
+        refUpdate.update()
+    }
+
+    def cleanup() {
+        git.close()
+        pool.destroy()
+        dir.deleteDir()
+    }
+
+    def "Index over the full history returns each file's latest commit"() {
+        given:
+        index.open(dir.path, null, third.name())
+
+        expect:
+        index.getLatestCommit(dir.path, "a.yaml") == second.name()
+        index.getLatestCommit(dir.path, "b.yaml") == first.name()
+        index.getLatestCommit(dir.path, "c.yaml") == third.name()
+        index.getLatestCommit(dir.path, "missing.yaml") == ""
+    }
+
+    def "File outside the synced range is found by walking the full history"() {
+        given:
+        index.open(dir.path, second.name(), third.name())
+
+        expect:
+        index.getLatestCommit(dir.path, "c.yaml") == third.name()
+        index.getLatestCommit(dir.path, "b.yaml") == first.name()
+        index.getLatestCommit(dir.path, "a.yaml") == second.name()
+    }
+
+    def "Without an open index the latest commit follows remote master"() {
+        given:
+        index.open(dir.path, null, first.name())
+        index.close(dir.path)
+
+        expect:
+        index.getLatestCommit(dir.path, "a.yaml") == second.name()
+        index.getLatestCommit(dir.path, "missing.yaml") == ""
+        index.getLatestCommit(new File(dir, "missing").path, "a.yaml") == ""
+    }
+
+    private RevCommit commit(Map<String, String> files) {
+        files.each { path, content ->
+            new File(dir, path).text = content
+            git.add().addFilepattern(path).call()
+        }
+        git.commit().setMessage("update").setAuthor("test", "test@example.com")
+                .setCommitter("test", "test@example.com").call()
+    }
+}
@@ -0,0 +1,105 @@
+package io.choerodon.devops.infra.common.util
+
+import org.eclipse.jgit.api.Git
+import org.eclipse.jgit.revwalk.RevCommit
+import spock.lang.Specification
+
+class GitOpsRepositoryPoolSpec extends Specification {
+
+    static final String RELEASE = "apiVersion: choerodon.io/v1alpha1\nkind: C7NHelmRelease\n" +
+            "metadata:\n  name: release\nspec:\n  chartName: app\n  chartVersion: 0.1.0\n"
+
+    def pool = new GitOpsRepositoryPool(10, 60)
+    File dir
+    Git git
+
+    def setup() {
+        dir = File.createTempDir()
+        git = Git.init().setDirectory(dir).call()
+    }
+
+    def cleanup() {
+        git.close()
+        pool.destroy()
+        dir.deleteDir()
+    }
+
+    def "Diff against an empty base lists every file as new"() {
+        given:
+        def commit = commit(["a.yaml": "a", "dir/b.yaml": "b"])
+
+        when:
+        def diffs = pool.diff(pool.getRepository(dir.path), null, commit)
+
+        then:
+        diffs.collect { [it.oldPath, it.newPath, it.newFile, it.deletedFile, it.renamedFile] } as Set == [
+                ["a.yaml", "a.yaml", true, false, false],
+                ["dir/b.yaml", "dir/b.yaml", true, false, false]
+        ] as Set
+    }
+
+    def "Diff maps add, delete, modify and rename like gitlab compare"() {
+        given:
+        def base = commit(["keep.yaml": "keep", "change.yaml": "v1", "remove.yaml": "remove", "old.yaml": RELEASE])
+        new File(dir, "remove.yaml").delete()
+        new File(dir, "old.yaml").delete()
+        git.rm().addFilepattern("remove.yaml").addFilepattern("old.yaml").call()
+        def target = commit(["change.yaml": "v2", "add.yaml": "add", "new.yaml": RELEASE])
+
+        when:
+        def diffs = pool.diff(pool.getRepository(dir.path), base, target)
+
+        then:
+        diffs.collect { [it.oldPath, it.newPath, it.newFile, it.deletedFile, it.renamedFile] } as Set == [
+                ["add.yaml", "add.yaml", true, false, false],
+                ["change.yaml", "change.yaml", false, false, false],
+                ["remove.yaml", "remove.yaml", false, true, false],
+                ["old.yaml", "new.yaml", false, false, true]
+        ] as Set
+    }
+
+    def "ResolveFiles returns blobs only for files in the commit"() {
+        given:
+        def commit = commit(["a.yaml": "a", "dir/b.yaml": "b"])
+        def repository = pool.getRepository(dir.path)
+
+        when:
+        def blobs = pool.resolveFiles(repository, commit, ["a.yaml", "dir/b.yaml", "missing.yaml"])
+
+        then:
+        blobs.keySet() == ["a.yaml", "dir/b.yaml"] as Set
+        pool.openBlob(repository, blobs["dir/b.yaml"]).text == "b"
+        pool.resolveFiles(repository, commit, []).isEmpty()
+    }
+
+    def "GetRepository returns null when the local repository does not exist"() {
+        expect:
+        pool.getRepository(new File(dir, "missing").path) == null
+    }
+
+    def "Sync commit falls back to the local sync ref"() {
+        given:
+        def first = commit(["a.yaml": "a"])
+        def second = commit(["a.yaml": "b"])
+        def repository = pool.getRepository(dir.path)
+
+        when:
+        pool.setSyncCommit(repository, first)
+
+        then:
+        pool.getSyncCommit(repository, null) == first
+        pool.getSyncCommit(repository, second.name()) == second
+        pool.getSyncCommit(repository, "0" * 40) == first
+    }
+
+    private RevCommit commit(Map<String, String> files) {
+        files.each { path, content ->
+            def file = new File(dir, path)
+            file.parentFile.mkdirs()
+            file.text = content
+            git.add().addFilepattern(path).call()
+        }
+        git.commit().setMessage("update").setAuthor("test", "test@example.com")
+                .setCommitter("test", "test@example.com").call()
+    }
+}
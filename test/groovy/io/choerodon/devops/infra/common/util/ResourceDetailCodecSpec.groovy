@@ -0,0 +1,87 @@
+package io.choerodon.devops.infra.common.util
+
+import java.nio.charset.StandardCharsets
+
+import spock.lang.Specification
+
+import io.choerodon.core.exception.CommonException
+
+class ResourceDetailCodecSpec extends Specification {
+
+    def "Compress and decompress round trip"() {
+        expect:
+        ResourceDetailCodec.decompress(ResourceDetailCodec.compress(message)) == message
+
+        where:
+        message << [
+                "",
+                '{"kind":"Pod","metadata":{"name":"a"}}',
+                '{"metadata":{"annotations":{"描述":"部署资源 ✓ 😀"}}}',
+                '{"status":"' + ("Running 运行中 " * 100000) + '"}'
+        ]
+    }
+
+    def "Null stays null"() {
+        expect:
+        ResourceDetailCodec.compress(null) == null
+        ResourceDetailCodec.decompress(null) == null
+        ResourceDetailCodec.hash(null) == null
+    }
+
+    def "Compressed header holds the utf-8 length like MySQL COMPRESS()"() {
+        given:
+        def message = "部署" * 1000
+        def length = message.getBytes(StandardCharsets.UTF_8).length
+
+        when:
+        def compressed = ResourceDetailCodec.compress(message)
+
+        then:
+        compressed.length < length
+        (compressed[0] & 0xFF | (compressed[1] & 0xFF) << 8 | (compressed[2] & 0xFF) << 16) == length
+        compressed[3] == 0
+    }
+
+    def "Decompress rejects truncated input"() {
+        given:
+        def compressed = ResourceDetailCodec.compress('{"status":"' + ("Running " * 1000) + '"}')
+
+        when:
+        ResourceDetailCodec.decompress(Arrays.copyOf(compressed, size(compressed)))
+
+        then:
+        def e = thrown(CommonException)
+        e.code == "error.message.decompress"
+
+        where:
+        size << [
+                { byte[] b -> 3 },
+                { byte[] b -> 4 },
+                { byte[] b -> b.length.intdiv(2) },
+                { byte[] b -> b.length - 1 }
+        ]
+    }
+
+    def "Decompress rejects corrupted data"() {
+        given:
+        def compressed = ResourceDetailCodec.compress("resource")
+        compressed[4] = (byte) 0xFF
+
+        when:
+        ResourceDetailCodec.decompress(compressed)
+
+        then:
+        thrown(CommonException)
+    }
+
+    def "Hash matches MySQL MD5()"() {
+        expect:
+        ResourceDetailCodec.hash(message) == hash
+
+        where:
+        message     || hash
+        ""          || "d41d8cd98f00b204e9800998ecf8427e"
+        "hello"     || "5d41402abc4b2a76b9719d911017c592"
+        "部署 资源" || "dcc10341200f3e21fa1a86b29e52167c"
+    }
+}
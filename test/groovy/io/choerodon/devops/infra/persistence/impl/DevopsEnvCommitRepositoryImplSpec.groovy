@@ -0,0 +1,76 @@
+package io.choerodon.devops.infra.persistence.impl
+
+import org.springframework.context.support.GenericApplicationContext
+import spock.lang.Specification
+
+import io.choerodon.core.convertor.ApplicationContextHelper
+import io.choerodon.devops.domain.application.convertor.DevopsEnvCommitConvertor
+import io.choerodon.devops.domain.application.entity.DevopsEnvCommitE
+import io.choerodon.devops.infra.dataobject.DevopsEnvCommitDO
+import io.choerodon.devops.infra.mapper.DevopsEnvCommitMapper
+
+class DevopsEnvCommitRepositoryImplSpec extends Specification {
+
+    def mapper = Mock(DevopsEnvCommitMapper)
+    def repository = new DevopsEnvCommitRepositoryImpl()
+
+    def setupSpec() {
+        def context = new GenericApplicationContext()
+        context.beanFactory.registerSingleton("devopsEnvCommitConvertor", new DevopsEnvCommitConvertor())
+        context.refresh()
+        new ApplicationContextHelper().setApplicationContext(context)
+    }
+
+    def setup() {
+        repository.devopsEnvCommitMapper = mapper
+    }
+
+    def "BatchCreateIfAbsent inserts only the missing commits once"() {
+        given:
+        def inserted = []
+
+        when:
+        def commits = repository.batchCreateIfAbsent(1L, [commit("a"), commit("b"), commit("b"), commit("c")])
+
+        then:
+        1 * mapper.listByEnvIdAndCommits(1L, ["a", "b", "c"]) >> [existing(7L, "a")]
+        1 * mapper.batchInsert(_, _) >> { List args -> inserted = args[0]; args[0].size() }
+        inserted*.commitSha == ["b", "c"]
+        commits*.commitSha == ["a", "b", "c"]
+        commits*.id == [7L, null, null]
+    }
+
+    def "BatchCreateIfAbsent skips the insert when every commit exists"() {
+        when:
+        def commits = repository.batchCreateIfAbsent(1L, [commit("a")])
+
+        then:
+        1 * mapper.listByEnvIdAndCommits(1L, ["a"]) >> [existing(7L, "a")]
+        0 * mapper.batchInsert(_, _)
+        commits*.id == [7L]
+    }
+
+    def "BatchCreateIfAbsent does nothing for no commits"() {
+        when:
+        def commits = repository.batchCreateIfAbsent(1L, [])
+
+        then:
+        0 * mapper._
+        commits.isEmpty()
+    }
+
+    private static DevopsEnvCommitE commit(String sha) {
+        def commit = new DevopsEnvCommitE()
+        commit.envId = 1L
+        commit.commitSha = sha
+        commit
+    }
+
+    private static DevopsEnvCommitDO existing(Long id, String sha) {
+        def commit = new DevopsEnvCommitDO()
+        commit.id = id
+        commit.envId = 1L
+        commit.commitSha = sha
+        commit
+    }
+}
@@ -0,0 +1,61 @@
+package io.choerodon.devops.infra.persistence.impl
+
+import spock.lang.Specification
+
+import io.choerodon.devops.infra.common.util.ResourceDetailCodec
+import io.choerodon.devops.infra.dataobject.DevopsEnvResourceDetailDO
+import io.choerodon.devops.infra.mapper.DevopsEnvResourceDetailMapper
+
+class DevopsEnvResourceDetailRepositoryImplSpec extends Specification {
+
+    def mapper = Mock(DevopsEnvResourceDetailMapper)
+
+    def "CompressMessages writes compressed content and hash and returns the last id"() {
+        given:
+        def repository = new DevopsEnvResourceDetailRepositoryImpl(mapper, true)
+        def written = []
+
+        when:
+        def lastId = repository.compressMessages(0L, 2)
+
+        then:
+        1 * mapper.listUncompressed(0L, 2) >> [detail(3L, '{"kind":"Pod"}'), detail(7L, '{"描述":"部署"}')]
+        1 * mapper.compressMessages(_) >> { List args -> written = args[0]; 2 }
+        lastId == 7L
+        written*.message == [null, null]
+        written*.messageHash == [ResourceDetailCodec.hash('{"kind":"Pod"}'), ResourceDetailCodec.hash('{"描述":"部署"}')]
+        written.collect { ResourceDetailCodec.decompress(it.compressedMessage) } == ['{"kind":"Pod"}', '{"描述":"部署"}']
+    }
+
+    def "CompressMessages stops when nothing is left"() {
+        given:
+        def repository = new DevopsEnvResourceDetailRepositoryImpl(mapper, true)
+
+        when:
+        def lastId = repository.compressMessages(7L, 2)
+
+        then:
+        1 * mapper.listUncompressed(7L, 2) >> []
+        0 * mapper.compressMessages(_)
+        lastId == null
+    }
+
+    def "CompressMessages does nothing when compression is disabled"() {
+        given:
+        def repository = new DevopsEnvResourceDetailRepositoryImpl(mapper, false)
+
+        when:
+        def lastId = repository.compressMessages(0L, 2)
+
+        then:
+        0 * mapper._
+        lastId == null
+    }
+
+    private static DevopsEnvResourceDetailDO detail(Long id, String message) {
+        def detail = new DevopsEnvResourceDetailDO()
+        detail.id = id
+        detail.message = message
+        detail
+    }
+}